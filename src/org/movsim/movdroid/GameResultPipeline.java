@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.movsim.movdroid.highscore.Leaderboard;
+import org.movsim.movdroid.util.HighscoreEntry;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * <p>
+ * End-of-game processing off the UI thread: ranking the result against the highscore index, looking up the player name
+ * and persisting the result run on a background executor, the leaderboard is then handed to the {@link Listener} on the UI
+ * thread.
+ * </p>
+ * <p>
+ * The result view opens right away and registers as listener; it is called immediately if the leaderboard is already
+ * available. Only the latest submitted result is reported. All methods must be called on the UI thread.
+ * </p>
+ */
+public final class GameResultPipeline {
+
+    public interface Listener {
+        /**
+         * @param leaderboard
+         *            the leaderboards including the latest result, or null if the highscores cannot be read
+         */
+        public void leaderboardReady(Leaderboard leaderboard);
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    // UI thread state
+    private static int generation;
+    private static boolean pending;
+    private static Leaderboard leaderboard;
+    private static Listener listener;
+
+    private GameResultPipeline() {
+    }
+
+    /**
+     * Ranks and stores the game result in the background.
+     * 
+     * @param context
+     *            the application context
+     * @param projectName
+     * @param result
+     */
+    public static void submit(final Context context, final String projectName, final HighscoreEntry result) {
+        final int submitted = ++generation;
+        pending = true;
+        leaderboard = null;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Leaderboard ranked = null;
+                try {
+                    ranked = new HighScoreForGame(context, projectName, result).getLeaderboard();
+                } catch (RuntimeException e) {
+                    // e.g. no profile provider, the view must not wait forever
+                    e.printStackTrace();
+                }
+                final Leaderboard ready = ranked;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (submitted != generation) {
+                            return;
+                        }
+                        pending = false;
+                        leaderboard = ready;
+                        if (listener != null) {
+                            listener.leaderboardReady(ready);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sets the listener, which is called at once if the latest leaderboard is already available.
+     */
+    public static void setListener(Listener listener) {
+        GameResultPipeline.listener = listener;
+        if (!pending) {
+            listener.leaderboardReady(leaderboard);
+        }
+    }
+
+    /**
+     * Removes the listener if it is the current one.
+     */
+    public static void removeListener(Listener listener) {
+        if (GameResultPipeline.listener == listener) {
+            GameResultPipeline.listener = null;
+        }
+    }
+}
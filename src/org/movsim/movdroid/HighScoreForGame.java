@@ -26,125 +26,114 @@
 package org.movsim.movdroid;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
 
-import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.highscore.HighscoreStore;
+import org.movsim.movdroid.highscore.Leaderboard;
+import org.movsim.movdroid.highscore.PlayerIdentity;
 import org.movsim.movdroid.util.HighscoreEntry;
+import org.movsim.movdroid.util.HighscoreEntry.Quantity;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.database.Cursor;
-import android.provider.ContactsContract.Profile;
 
-@SuppressLint("NewApi")
 public class HighScoreForGame {
     private static final int MAX_RANK_FOR_HIGHSCORE = 100;
-    private MovSimDroidActivity movSimDroidActivity;
-    private TreeSet<HighscoreEntry> sortedResults;
+    private static final String LEGACY_ENDING = "_highscore.txt";
+    private Context context;
+    private Leaderboard leaderboard;
     private int rank;
 
-    public HighScoreForGame(MovSimDroidActivity movSimDroidActivity, HighscoreEntry highscoreEntry) {
-        this.movSimDroidActivity = movSimDroidActivity;
-        String highscoreFilename = ProjectMetaData.getInstance().getProjectName() + "_highscore.txt";
-        sortedResults = new TreeSet<HighscoreEntry>(new Comparator<HighscoreEntry>() {
-            @Override
-            public int compare(HighscoreEntry o1, HighscoreEntry o2) {
-                Double d1 = Double.valueOf(o1.getQuantity(HighscoreEntry.Quantity.totalSimulationTime));
-                Double d2 = Double.valueOf(o2.getQuantity(HighscoreEntry.Quantity.totalSimulationTime));
-                return d1.compareTo(d2);
-            }
-        });
-        sortedResults.addAll(readHighscore(highscoreFilename));
-
-        rank = determineRanking(highscoreEntry, sortedResults);
-        if (rank <= MAX_RANK_FOR_HIGHSCORE) {
-            Integer apiLevel = Integer.valueOf(android.os.Build.VERSION.SDK_INT);
-            if (apiLevel < 14) {
-                highscoreEntry.setPlayerName("Me");
-            } else {
-                Cursor cursor = movSimDroidActivity.getContentResolver().query(Profile.CONTENT_URI, null, null, null,
-                        null);
-                int count = cursor.getCount();
-                String[] columnNames = cursor.getColumnNames();
-                boolean b = cursor.moveToFirst();
-                int position = cursor.getPosition();
-                if (count == 1 && position == 0) {
-                    for (int j = 0; j < columnNames.length; j++) {
-                        String columnName = columnNames[j];
-                        if (columnName.equals("display_name")) {
-                            String columnValue = cursor.getString(cursor.getColumnIndex(columnName));
-                            highscoreEntry.setPlayerName(columnValue);
-                        }
-                    }
+    /**
+     * Ranks and stores the result. Reads and writes the highscore files, must not be called on the UI thread.
+     */
+    public HighScoreForGame(Context context, String projectName, HighscoreEntry highscoreEntry) {
+        this.context = context;
+        HighscoreStore store;
+        try {
+            store = HighscoreStore.open(context.getFilesDir(), projectName);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            // the former csv file is imported whenever it is still there, also if an earlier import was interrupted
+            final File legacyFile = new File(context.getFilesDir(), projectName + LEGACY_ENDING);
+            if (legacyFile.exists()) {
+                try {
+                    importLegacyHighscore(store, legacyFile);
+                } catch (IOException e) {
+                    // retried with the next result, the file is kept
+                    e.printStackTrace();
                 }
-                cursor.close();
+            } else if (store.isCreated()) {
+                seedHighscore(store, projectName + LEGACY_ENDING);
             }
-        }
 
-        sortedResults.add(highscoreEntry);
+            // ranked once, the player name only depends on the rank by simulation time
+            final int[] ranks = Leaderboard.rank(store, highscoreEntry);
+            rank = ranks[Quantity.totalSimulationTime.ordinal()];
+            if (rank <= MAX_RANK_FOR_HIGHSCORE) {
+                highscoreEntry.setPlayerName(PlayerIdentity.getDisplayName(context));
+            }
 
-        writeFile(highscoreFilename, sortedResults);
+            leaderboard = Leaderboard.read(store, MAX_RANK_FOR_HIGHSCORE, highscoreEntry, ranks, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            store.close();
+        }
     }
 
-    private int determineRanking(HighscoreEntry resultEntry, TreeSet<HighscoreEntry> sortedResults) {
-        int ranking = 1;
-        for (HighscoreEntry entry : sortedResults) {
-            if (sortedResults.comparator().compare(resultEntry, entry) < 0) {
-                return ranking;
-            }
-            ++ranking;
-
+    /**
+     * Moves the highscores of the former csv file into the new store. The file is deleted as soon as its entries are
+     * synced to the log, before the index is compacted.
+     */
+    private void importLegacyHighscore(HighscoreStore store, File legacyFile) throws IOException {
+        final List<HighscoreEntry> highscore = readHighscore(new FileInputStream(legacyFile));
+        if (!highscore.isEmpty()) {
+            store.addAll(highscore);
+        }
+        legacyFile.delete();
+        if (!highscore.isEmpty()) {
+            store.compact();
         }
-        return ranking;
     }
 
-    private void writeFile(String highscoreFilename, Iterable<HighscoreEntry> highscores) {
+    /**
+     * Adds the seed highscores from the assets, if any, to a newly created store.
+     */
+    private void seedHighscore(HighscoreStore store, String filename) throws IOException {
+        final InputStream in;
         try {
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(movSimDroidActivity.openFileOutput(
-                    highscoreFilename, Context.MODE_PRIVATE)));
-            for (HighscoreEntry entry : highscores) {
-                writer.write(entry.toString());
-                writer.newLine();
-            }
-            writer.flush();
-            writer.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+            in = context.getAssets().open(filename);
+        } catch (IOException e) {
+            // no seed highscores for this game
+            return;
+        }
+        final List<HighscoreEntry> highscore = readHighscore(in);
+        if (!highscore.isEmpty()) {
+            store.addAll(highscore);
+            store.compact();
         }
     }
 
-    private List<HighscoreEntry> readHighscore(String filename) {
-        List<HighscoreEntry> highscore = new LinkedList<HighscoreEntry>();
-
+    private static List<HighscoreEntry> readHighscore(InputStream in) throws IOException {
+        final List<HighscoreEntry> highscore = new ArrayList<HighscoreEntry>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    movSimDroidActivity.openFileInput(filename)));
             String line;
             while ((line = reader.readLine()) != null) {
                 highscore.add(new HighscoreEntry(line));
             }
-        } catch (IOException e1) {
-            BufferedReader reader;
-            try {
-                reader = new BufferedReader(new InputStreamReader(movSimDroidActivity.getAssets().open(filename)));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    highscore.add(new HighscoreEntry(line));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return new LinkedList<HighscoreEntry>();
-            }
+        } finally {
+            reader.close();
         }
-
         return highscore;
     }
 
@@ -152,8 +141,11 @@ public class HighScoreForGame {
         return rank;
     }
 
-    public List<HighscoreEntry> getSortedResults() {
-        return (List<HighscoreEntry>) new ArrayList<HighscoreEntry>(sortedResults);
+    /**
+     * @return the leaderboards including the latest result, null if the highscores cannot be read
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
     }
 
 }
@@ -25,9 +25,11 @@
  */
 package org.movsim.movdroid;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
+import org.movsim.movdroid.highscore.Leaderboard;
 import org.movsim.movdroid.util.HighscoreEntry;
 import org.movsim.movdroid.util.HighscoreEntry.Quantity;
 
@@ -36,13 +38,16 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
+import android.widget.Spinner;
 import android.widget.TextView;
 
 import com.actionbarsherlock.app.SherlockActivity;
 
-public class HighScoreView extends SherlockActivity {
+public class HighScoreView extends SherlockActivity implements GameResultPipeline.Listener {
 
     /**
      * This static class holds the Views in the rows of the ListView, so that
@@ -56,6 +61,12 @@ public class HighScoreView extends SherlockActivity {
     }
 
     private ListView highscoreListView;
+    private ResultsAdapter resultsAdapter;
+    private Leaderboard leaderboard;
+    /** set when the pipeline has reported, with or without a leaderboard */
+    private boolean leaderboardReported;
+    /** the quantity the list is ranked by */
+    private Quantity metric = Quantity.totalSimulationTime;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -66,18 +77,75 @@ public class HighScoreView extends SherlockActivity {
         Bundle bundle = this.getIntent().getExtras();
         String message = bundle.getString("message");
         String highscore = bundle.getString("highscore");
-        String rank = bundle.getString("rank");
-        List<HighscoreEntry> sortedResults = SimulationFinished.getResults();
 
         ((TextView) findViewById(R.id.text)).setText(message);
-        ((TextView) findViewById(R.id.rank)).setText("Rank: "+ rank);
+        // placeholder until the result is ranked
+        ((TextView) findViewById(R.id.rank)).setText(R.string.rank_pending);
         if (highscore != null) {
             ((TextView) findViewById(R.id.highscore)).setText(highscore);
         }
 
         highscoreListView = (ListView) findViewById(R.id.highscoreListView);
-        ResultsAdapter resultsAdapter = new ResultsAdapter(this, R.layout.row, (List<HighscoreEntry>) sortedResults);
+        resultsAdapter = new ResultsAdapter(this, R.layout.row, new ArrayList<HighscoreEntry>());
         highscoreListView.setAdapter(resultsAdapter);
+        initMetricSpinner();
+        GameResultPipeline.setListener(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        GameResultPipeline.removeListener(this);
+        super.onDestroy();
+    }
+
+    @Override
+    public void leaderboardReady(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+        leaderboardReported = true;
+        showMetric(metric);
+    }
+
+    private void initMetricSpinner() {
+        final Quantity[] quantities = Quantity.values();
+        final List<String> labels = new ArrayList<String>(quantities.length);
+        for (Quantity quantity : quantities) {
+            labels.add(quantity.getLabel());
+        }
+        final ArrayAdapter<String> adapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, labels);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        final Spinner metricSpinner = (Spinner) findViewById(R.id.metricSpinner);
+        metricSpinner.setAdapter(adapter);
+        metricSpinner.setSelection(metric.ordinal());
+        metricSpinner.setOnItemSelectedListener(new OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                showMetric(quantities[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+        showMetric(metric);
+    }
+
+    /**
+     * Shows the leaderboard ranked by the given quantity. The entries come presorted from the highscore index.
+     */
+    private void showMetric(Quantity quantity) {
+        metric = quantity;
+        resultsAdapter.setNotifyOnChange(false);
+        resultsAdapter.clear();
+        if (leaderboard != null) {
+            for (HighscoreEntry entry : leaderboard.getTop(quantity)) {
+                resultsAdapter.add(entry);
+            }
+            ((TextView) findViewById(R.id.rank)).setText(getString(R.string.rank) + leaderboard.getRank(quantity));
+        } else if (leaderboardReported) {
+            // the highscores cannot be read, the result has no rank
+            ((TextView) findViewById(R.id.rank)).setText(R.string.rank_unknown);
+        }
+        resultsAdapter.notifyDataSetChanged();
     }
 
     private class ResultsAdapter extends ArrayAdapter<HighscoreEntry> {
@@ -122,9 +190,8 @@ public class HighScoreView extends SherlockActivity {
                     viewholder.textTopValue.setText(String.valueOf(position + 1));
                 }
                 if (viewholder.textBottomValue != null) {
-                    viewholder.textBottomValue.setText(String.format(Locale.US, "%.1f",
-                            entry.getQuantity(Quantity.totalSimulationTime))
-                            + " [s]");
+                    viewholder.textBottomValue.setText(String.format(Locale.US, "%.1f", entry.getQuantity(metric)) + " ["
+                            + metric.getUnit() + "]");
                 }
 
             }
@@ -25,13 +25,10 @@
  */
 package org.movsim.movdroid;
 
-import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.interaction.SetSleepTime;
 import org.movsim.simulator.SimulationRunnable;
 import org.movsim.simulator.Simulator;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
-import org.movsim.simulator.roadnetwork.RoadSegment;
-import org.movsim.simulator.roadnetwork.TrafficLight;
-import org.movsim.simulator.roadnetwork.VariableMessageSignBase;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -46,8 +43,6 @@ public class MovSimActionBar {
     private Simulator simulator;
     private RoadNetwork roadNetwork;
     private SimulationRunnable simulationRunnable;
-    private ProjectMetaData projectMetaData;
-    private boolean diversionOn = false;
     private MovSimDroidActivity movSimDroidActivity;
 
     public MovSimActionBar(MovSimDroidActivity movSimDroidActivity, Simulator simulator) {
@@ -56,7 +51,6 @@ public class MovSimActionBar {
         res = movSimDroidActivity.getResources();
         roadNetwork = simulator.getRoadNetwork();
         simulationRunnable = simulator.getSimulationRunnable();
-        projectMetaData = ProjectMetaData.getInstance();
 
         initActiomBar(movSimDroidActivity);
     }
@@ -76,6 +70,10 @@ public class MovSimActionBar {
 
     public void selectAction(MenuItem item) {
         final CharSequence title = item.getTitle();
+        if (movSimDroidActivity.isScenarioLoading() && !isInfoAction(title)) {
+            // the simulation cannot be started or changed before the scenario is loaded
+            return;
+        }
         if (title.equals(res.getString(R.string.start))) {
             actionStart(item);
         } else if (title.equals(res.getString(R.string.pause))) {
@@ -92,34 +90,35 @@ public class MovSimActionBar {
             actionInfo();
         } else if (title.equals(res.getString(R.string.action))) {
             actionInteraction();
+        } else if (title.equals(res.getString(R.string.record_trajectories))) {
+            movSimDroidActivity.startTrajectoryRecording();
+        } else if (title.equals(res.getString(R.string.stop_recording))) {
+            movSimDroidActivity.stopTrajectoryRecording();
+        } else if (title.equals(res.getString(R.string.automatic_control))) {
+            movSimDroidActivity.startAutomaticControl();
+        } else if (title.equals(res.getString(R.string.manual_control))) {
+            movSimDroidActivity.stopAutomaticControl();
+        } else if (title.equals(res.getString(R.string.performance_overlay))) {
+            movSimDroidActivity.togglePerformanceOverlay();
+        } else if (title.equals(res.getString(R.string.dump_telemetry))) {
+            movSimDroidActivity.dumpTelemetry();
+        } else if (title.equals(res.getString(R.string.check_allocations))) {
+            movSimDroidActivity.checkAllocations();
         }
     }
 
+    private boolean isInfoAction(CharSequence title) {
+        return title.equals(res.getString(R.string.info)) || title.equals(res.getString(R.string.movsimInfo))
+                || title.equals(res.getString(R.string.performance_overlay))
+                || title.equals(res.getString(R.string.dump_telemetry));
+    }
+
     private void actionInteraction() {
         movSimDroidActivity.runOnUiThread(new Runnable() {
 
             @Override
             public void run() {
-                for (RoadSegment roadSegment : roadNetwork) {
-                    if (projectMetaData.getProjectName().equals("routing")) {
-                        if (roadNetwork.hasVariableMessageSign() && roadSegment.userId().equals("1")) {
-                            VariableMessageSignBase variableMessageSign = movSimDroidActivity.getVariableMessageSign();
-                            if (diversionOn == false) {
-                                diversionOn = true;
-                                roadSegment.addVariableMessageSign(variableMessageSign);
-                            } else {
-                                diversionOn = false;
-                                roadSegment.removeVariableMessageSign(variableMessageSign);
-                            }
-                        }
-                    }
-                    if (roadSegment.trafficLights() != null) {
-                        for (final TrafficLight trafficLight : roadSegment.trafficLights()) {
-                            trafficLight.nextState();
-                            movSimDroidActivity.getMovSimTrafficView().forceRepaintBackground();
-                        }
-                    }
-                }
+                movSimDroidActivity.getMovSimTrafficView().toggleInteractiveElements();
             }
         });
 
@@ -131,7 +130,7 @@ public class MovSimActionBar {
         if (sleepTime > 500) {
             sleepTime = 500;
         }
-        simulationRunnable.setSleepTime(sleepTime);
+        setSleepTime(sleepTime);
     }
 
     private void actionFaster() {
@@ -140,22 +139,36 @@ public class MovSimActionBar {
         if (sleepTime < 0) {
             sleepTime = 0;
         }
-        simulationRunnable.setSleepTime(sleepTime);
+        setSleepTime(sleepTime);
+    }
+
+    /**
+     * Changes the speed at once and submits the change as an intervention, so it is logged for the session record.
+     * Applying it again with the next time step is harmless, and the next press already sees the new speed.
+     */
+    private void setSleepTime(int sleepTime) {
+        if (sleepTime != simulationRunnable.sleepTime()) {
+            simulationRunnable.setSleepTime(sleepTime);
+            movSimDroidActivity.getMovSimTrafficView().submit(new SetSleepTime(simulationRunnable, sleepTime));
+        }
     }
 
     private void actionRestart() {
         simulationRunnable.pause();
+        movSimDroidActivity.stopTrajectoryRecording();
+        movSimDroidActivity.getInterventions().clear();
+        movSimDroidActivity.getDiversions().clear();
         movSimDroidActivity.createInputStreams();
         roadNetwork.clear();
         simulator.initialize();
         simulationRunnable.start();
         simulationRunnable.pause();
+        movSimDroidActivity.getMovSimTrafficView().clearGeometryCache();
         movSimDroidActivity.getMovSimTrafficView().forceRepaintBackground();
         reset();
     }
 
     private void reset() {
-        diversionOn = false;
         movSimDroidActivity.getMenu().getItem(0).setIcon(R.drawable.ic_action_start).setTitle(R.string.start);
     }
 
@@ -25,26 +25,64 @@
  */
 package org.movsim.movdroid;
 
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Level;
 import org.movsim.input.ProjectMetaData;
+import org.movsim.input.model.SimulationInput;
 import org.movsim.movdroid.graphics.MovSimTrafficView;
+import org.movsim.movdroid.graphics.SpatioTemporalView;
+import org.movsim.movdroid.highscore.PlayerIdentity;
+import org.movsim.movdroid.control.ControlLoop;
+import org.movsim.movdroid.control.RunResult;
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.movdroid.interaction.InteractiveSimulator;
+import org.movsim.movdroid.interaction.InterventionQueue;
+import org.movsim.movdroid.interaction.SessionRecord;
+import org.movsim.movdroid.metrics.LaneMetrics;
+import org.movsim.movdroid.metrics.NetworkTotals;
+import org.movsim.movdroid.metrics.SpatioTemporalSampler;
+import org.movsim.movdroid.metrics.VirtualDetectors;
+import org.movsim.movdroid.recording.GhostRecorder;
+import org.movsim.movdroid.recording.GhostRun;
+import org.movsim.movdroid.recording.TrajectoryFormat;
+import org.movsim.movdroid.recording.TrajectoryRecorder;
+import org.movsim.movdroid.scenario.ScenarioLoader;
+import org.movsim.movdroid.scenario.ScenarioLoader.Stage;
+import org.movsim.movdroid.telemetry.AllocationCheck;
+import org.movsim.movdroid.telemetry.Telemetry;
 import org.movsim.movdroid.util.FormatUtil;
 import org.movsim.movdroid.util.OnFirstBoot;
+import org.movsim.movdroid.util.StartupTrace;
+import org.movsim.movdroid.util.ViewConfig;
 import org.movsim.simulator.SimulationRun;
 import org.movsim.simulator.SimulationRunnable;
 import org.movsim.simulator.Simulator;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
-import org.movsim.simulator.roadnetwork.VariableMessageSignBase;
 import org.movsim.simulator.roadnetwork.VariableMessageSignDiversion;
 import org.movsim.utilities.Units;
 
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Bundle;
+import android.os.Environment;
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.Toast;
 
 import com.actionbarsherlock.app.ActionBar.OnNavigationListener;
 import com.actionbarsherlock.app.SherlockActivity;
@@ -56,52 +94,119 @@ import com.actionbarsherlock.view.Window;
 import de.mindpipe.android.logging.log4j.LogConfigurator;
 
 public class MovSimDroidActivity extends SherlockActivity implements OnNavigationListener,
-        SimulationRun.CompletionCallback, SimulationRunnable.UpdateStatusCallback {
-
-    // MovSim core uses slf4j as a logging facade for log4j.
-    static {
-        final LogConfigurator logConfigurator = new LogConfigurator();
-
-        logConfigurator.setUseFileAppender(false);
-        logConfigurator.setUseLogCatAppender(true);
-        // logConfigurator.setFileName(Environment.getExternalStorageDirectory() + "myapp.log");
-        logConfigurator.setRootLevel(Level.INFO);
-        // Set log level of a specific logger
-        logConfigurator.setLevel("org.apache", Level.INFO);
-        logConfigurator.configure();
-    }
+        SimulationRun.CompletionCallback, SimulationRunnable.UpdateStatusCallback, ScenarioLoader.Callback {
 
     private ProjectMetaData projectMetaData;
     private Simulator simulator;
+    private InteractiveSimulator interactiveSimulator;
+    private InterventionQueue interventions;
     private SimulationRunnable simulationRunnable;
 
-    private VariableMessageSignBase variableMessageSign = new VariableMessageSignDiversion();
+    private final Diversions diversions = new Diversions(new VariableMessageSignDiversion());
+    private MenuItem controlItem;
     private MovSimTrafficView trafficView;
+    private SpatioTemporalView spatioTemporalView;
+    private LinearLayout contentLayout;
     private Menu menu;
     private RoadNetwork roadNetwork;
+    private NetworkTotals networkTotals;
+    private LaneMetrics laneMetrics;
+    private SpatioTemporalSampler spatioTemporalSampler;
+    private VirtualDetectors virtualDetectors;
+    private TrajectoryRecorder trajectoryRecorder;
+    private GhostRecorder ghostRecorder;
+    private MenuItem recordItem;
     private Resources res;
     private String projectName;
     private String projectPath;
     private MovSimActionBar movsimActionBar;
     private int navigationItemPosition;
+    private ScenarioLoader scenarioLoader;
+    private static boolean loggingConfigured;
+    // number of session records kept in the movsim directory, the oldest ones are deleted
+    private static final int MAX_SESSION_RECORDS = 20;
+    // reads and writes the session records and ghost runs off the simulation and UI threads
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private static final int ALLOCATION_CHECK_WARM_UP_FRAMES = 50;
+    private static final int ALLOCATION_CHECK_FRAMES = 200;
+    // scenario of the running allocation check, -1 if there is none
+    private int allocationCheckScenario = -1;
+    private AllocationCheck.Report allocationCheckReport;
+    private boolean allocationCheckFailed;
 
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
         requestWindowFeature(Window.FEATURE_ACTION_BAR_OVERLAY);
+        requestWindowFeature(Window.FEATURE_PROGRESS);
         super.onCreate(savedInstanceState);
         res = getResources();
+        // the allocation check is a development tool, offered in debuggable builds only
+        AllocationCheck.setEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
 
         // Replace parser from MovSim. -> Default values from DTD are not set. -> update xml files from MovSim before!
         System.setProperty("org.xml.sax.driver", "org.xmlpull.v1.sax2.Driver");
 
+        StartupTrace.begin(StartupTrace.SIMULATOR);
         setupSimulator();
+        StartupTrace.end(StartupTrace.SIMULATOR);
 
+        // the view draws on the simulator's runnable, so it is created after the simulator
+        StartupTrace.begin(StartupTrace.VIEW);
+        trafficView = new MovSimTrafficView(this, simulator, projectMetaData);
+        trafficView.setVirtualDetectors(virtualDetectors);
+        trafficView.setLaneMetrics(laneMetrics);
+        trafficView.setDiversions(diversions);
+        trafficView.setInterventionQueue(interventions);
+        spatioTemporalView = new SpatioTemporalView(this, spatioTemporalSampler, trafficView);
+        simulationRunnable.addUpdateStatusCallback(spatioTemporalView);
+        contentLayout = new LinearLayout(this);
+        contentLayout.addView(trafficView);
+        contentLayout.addView(spatioTemporalView);
+        layoutPanels(res.getConfiguration().orientation);
+        setContentView(contentLayout);
+        StartupTrace.end(StartupTrace.VIEW);
+
+        // start loading the first scenario right away, it is read and parsed while the first frame is laid out and drawn
+        scenarioLoader = new ScenarioLoader(getAssets(), simulator, trafficView, this);
+        configureLogging(scenarioLoader);
+        StartupTrace.begin(StartupTrace.SCENARIO);
+        selectScenario(0);
+
+        StartupTrace.begin(StartupTrace.ACTION_BAR);
         movsimActionBar = new MovSimActionBar(this, simulator);
+        StartupTrace.end(StartupTrace.ACTION_BAR);
 
-        trafficView = new MovSimTrafficView(this, simulator, projectMetaData);
+        PlayerIdentity.refreshInBackground(getApplicationContext());
+    }
 
-        setContentView(trafficView);
+    /**
+     * MovSim core uses slf4j as a logging facade for log4j. Log4j is configured off the UI thread on the scenario loader's
+     * worker, before the first scenario is loaded, so that the load times of the first scenario are logged.
+     */
+    private static void configureLogging(ScenarioLoader scenarioLoader) {
+        synchronized (MovSimDroidActivity.class) {
+            if (loggingConfigured) {
+                return;
+            }
+            loggingConfigured = true;
+        }
+        scenarioLoader.runOnWorker(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.begin(StartupTrace.LOGGING);
+                final LogConfigurator logConfigurator = new LogConfigurator();
+
+                logConfigurator.setUseFileAppender(false);
+                logConfigurator.setUseLogCatAppender(true);
+                // logConfigurator.setFileName(Environment.getExternalStorageDirectory() + "myapp.log");
+                logConfigurator.setRootLevel(Level.INFO);
+                // Set log level of a specific logger
+                logConfigurator.setLevel("org.apache", Level.INFO);
+                logConfigurator.configure();
+                StartupTrace.end(StartupTrace.LOGGING);
+            }
+        });
     }
 
     private void setupSimulator() {
@@ -110,13 +215,39 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
         projectMetaData.setParseFromInputstream(true);
         projectMetaData.setInstantaneousFileOutput(false);
 
-        simulator = new Simulator(projectMetaData);
+        interactiveSimulator = new InteractiveSimulator(projectMetaData);
+        interventions = interactiveSimulator.getInterventions();
+        simulator = interactiveSimulator;
 
         simulationRunnable = simulator.getSimulationRunnable();
         simulationRunnable.setCompletionCallback(this);
         simulationRunnable.addUpdateStatusCallback(this);
 
         roadNetwork = simulator.getRoadNetwork();
+        networkTotals = new NetworkTotals(roadNetwork);
+        simulationRunnable.addUpdateStatusCallback(networkTotals);
+        laneMetrics = new LaneMetrics(roadNetwork);
+        simulationRunnable.addUpdateStatusCallback(laneMetrics);
+        spatioTemporalSampler = new SpatioTemporalSampler(roadNetwork);
+        simulationRunnable.addUpdateStatusCallback(spatioTemporalSampler);
+        virtualDetectors = new VirtualDetectors(roadNetwork);
+        simulationRunnable.addUpdateStatusCallback(virtualDetectors);
+        trajectoryRecorder = new TrajectoryRecorder(roadNetwork);
+        simulationRunnable.addUpdateStatusCallback(trajectoryRecorder);
+        ghostRecorder = new GhostRecorder(roadNetwork, simulationRunnable);
+        simulationRunnable.addUpdateStatusCallback(ghostRecorder);
+    }
+
+    /**
+     * The time-space diagram is shown next to the traffic view in landscape and below it in portrait.
+     */
+    private void layoutPanels(int orientation) {
+        final boolean landscape = orientation == Configuration.ORIENTATION_LANDSCAPE;
+        contentLayout.setOrientation(landscape ? LinearLayout.HORIZONTAL : LinearLayout.VERTICAL);
+        final int width = landscape ? 0 : LinearLayout.LayoutParams.MATCH_PARENT;
+        final int height = landscape ? LinearLayout.LayoutParams.MATCH_PARENT : 0;
+        trafficView.setLayoutParams(new LinearLayout.LayoutParams(width, height, 3));
+        spatioTemporalView.setLayoutParams(new LinearLayout.LayoutParams(width, height, 1));
     }
 
     @Override
@@ -136,6 +267,15 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
         subMenu1.add(res.getString(R.string.slower));
         subMenu1.add(res.getString(R.string.info));
         subMenu1.add(res.getString(R.string.movsimInfo));
+        recordItem = subMenu1.add(res.getString(trajectoryRecorder.isRecording() ? R.string.stop_recording
+                : R.string.record_trajectories));
+        controlItem = subMenu1.add(res.getString(interactiveSimulator.getControlLoop() != null ? R.string.manual_control
+                : R.string.automatic_control));
+        subMenu1.add(res.getString(R.string.performance_overlay));
+        subMenu1.add(res.getString(R.string.dump_telemetry));
+        if (AllocationCheck.isEnabled()) {
+            subMenu1.add(res.getString(R.string.check_allocations));
+        }
 
         MenuItem subMenu1Item = subMenu1.getItem();
         subMenu1Item.setIcon(R.drawable.abs__ic_menu_moreoverflow_holo_dark);
@@ -152,55 +292,95 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
 
     @Override
     public boolean onNavigationItemSelected(int itemPosition, long itemId) {
+        if (itemPosition == navigationItemPosition && projectName != null) {
+            // initial selection of the scenario already loading since onCreate
+            return true;
+        }
+        cancelAllocationCheck();
+        selectScenario(itemPosition);
+        return true;
+    }
+
+    private void selectScenario(int itemPosition) {
         this.navigationItemPosition = itemPosition;
         if (simulationRunnable != null) {
             simulationRunnable.pause();
         }
+        stopTrajectoryRecording();
+        stopAutomaticControl();
+        interventions.clear();
+        diversions.clear();
+        ghostRecorder.reset();
+        trafficView.setGhostRun(null);
         OnFirstBoot.show(this, "start", itemPosition + "start.accepted",
                 res.getStringArray(R.array.infoScenario)[itemPosition], res.getString(R.string.onFirstBoot_title));
         // project selection
         projectName = res.getStringArray(R.array.projectName)[itemPosition];
         projectPath = res.getStringArray(R.array.projectPath)[itemPosition];
-        createInputStreams();
-        simulator.loadScenarioFromXml(projectName, projectPath);
+        if (menu != null) {
+            menu.getItem(0).setIcon(R.drawable.ic_action_start).setTitle(R.string.start);
+        }
+        scenarioLoader.load(projectName, projectPath);
+    }
+
+    @Override
+    public void loadingProgress(Stage stage) {
+        setSupportProgressBarVisibility(true);
+        // the progress bar ranges from 0 to 10000
+        setSupportProgress(stage.getProgress() * 100);
+        getSupportActionBar().setSubtitle(stage.getLabel());
+    }
+
+    @Override
+    public void scenarioLoaded(String projectName, String projectPath) {
+        StartupTrace.end(StartupTrace.SCENARIO);
         simulationRunnable.start();
         simulationRunnable.pause();
-        if (projectName.equals("routing")) {
-            roadNetwork.setHasVariableMessageSign(true);
+        setSupportProgress(10000);
+        setSupportProgressBarVisibility(false);
+        getSupportActionBar().setSubtitle(null);
+        final ViewConfig viewConfig = getViewConfig();
+        roadNetwork.setHasVariableMessageSign(viewConfig.hasVariableMessageSign());
+        spatioTemporalSampler.setRoute(viewConfig.getSpatioTemporalRoute(), viewConfig.getSpatioTemporalDx(),
+                viewConfig.getSpatioTemporalDt());
+        spatioTemporalView.setVisibility(viewConfig.hasSpatioTemporalRoute() ? View.VISIBLE : View.GONE);
+        virtualDetectors.setDetectors(viewConfig.getDetectors(), viewConfig.getDetectorSampleInterval());
+        if (viewConfig.isGame()) {
+            loadGhostRun(projectName);
         }
-        trafficView.resetGraphicproperties();
-        trafficView.forceRepaintBackground();
+        scenarioLoader.prefetchNeighbours(navigationItemPosition, res.getStringArray(R.array.projectName),
+                res.getStringArray(R.array.projectPath));
         if (menu != null) {
             menu.getItem(0).setIcon(R.drawable.ic_action_start).setTitle(R.string.start);
-            
+
             // Set visibility of interaction button
-            if (itemPosition == 0 || itemPosition == 1) {
+            if (navigationItemPosition == 0 || navigationItemPosition == 1) {
                 menu.getItem(2).setVisible(true);
             } else {
                 menu.getItem(2).setVisible(false);
             }
-            
+
         }
-        return true;
+        if (allocationCheckScenario >= 0) {
+            startAllocationCheck();
+        }
+    }
+
+    @Override
+    public void scenarioLoadFailed(String projectName, String projectPath) {
+        setSupportProgressBarVisibility(false);
+        getSupportActionBar().setSubtitle(null);
+        Toast.makeText(this, res.getString(R.string.scenario_load_failed) + projectName, Toast.LENGTH_LONG).show();
     }
 
     void createInputStreams() {
-        try {
-            String full = projectPath + projectName;
-            InputStream movsimXml = getAssets().open(full + ".xml");
-            projectMetaData.setMovsimXml(movsimXml);
-            InputStream is = getAssets().open(full + ".xodr");
-            projectMetaData.setNetworkXml(is);
-            InputStream isProp = getAssets().open(full + ".properties");
-            projectMetaData.setProjectProperties(isProp);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        scenarioLoader.openInputStreams(projectPath, projectName);
     }
 
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
+        layoutPanels(newConfig.orientation);
         onCreateOptionsMenu(menu);
 
         if (!simulationRunnable.isPaused()) {
@@ -212,10 +392,29 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
 
     @Override
     public void simulationComplete(final double simulationTime) {
-        final double totalVehicleTravelTime = roadNetwork.totalVehicleTravelTime();
-        final double totalVehicleTravelDistance = roadNetwork.totalVehicleTravelDistance() * Units.M_TO_KM;
-        final double totalVehicleFuelUsedLiters = roadNetwork.totalVehicleFuelUsedLiters();
+        final NetworkTotals.Snapshot totals;
+        synchronized (simulationRunnable.dataLock) {
+            totals = networkTotals.complete(simulationTime);
+        }
+        final double totalVehicleTravelTime = totals.getTotalTravelTime();
+        final double totalVehicleTravelDistance = totals.getTotalTravelDistance() * Units.M_TO_KM;
+        final double totalVehicleFuelUsedLiters = totals.getTotalFuelUsedLiters();
         final String formatedSimulationDuration = FormatUtil.getFormatedTime(simulationTime);
+        if (getViewConfig().isGame()) {
+            final SessionRecord record = sessionRecord(new RunResult(simulationTime, true, totalVehicleTravelTime,
+                    totalVehicleTravelDistance, totalVehicleFuelUsedLiters, interventions.getLog().size()).toString());
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeSessionRecord(record);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            saveGhostRunIfBest(ghostRecorder.finish(projectName, simulationTime));
+        }
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -236,6 +435,7 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
 
     @Override
     protected void onPause() {
+        cancelAllocationCheck();
         simulationRunnable.pause();
         menu.getItem(0).setIcon(R.drawable.ic_action_start).setTitle(R.string.start);
         super.onPause();
@@ -248,8 +448,359 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
         startActivity(intent);
     }
 
-    public VariableMessageSignBase getVariableMessageSign() {
-        return variableMessageSign;
+    /**
+     * Starts recording the trajectories of the current scenario to a new file in the movsim directory of the external
+     * storage.
+     */
+    void startTrajectoryRecording() {
+        final File dir = new File(Environment.getExternalStorageDirectory(), "movsim");
+        final String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        final File file = new File(dir, projectName + "_" + timestamp + TrajectoryFormat.FILE_EXTENSION);
+        trajectoryRecorder.start(file, projectName);
+        if (recordItem != null) {
+            recordItem.setTitle(R.string.stop_recording);
+        }
+        Toast.makeText(this, res.getString(R.string.recording_to) + file.getPath(), Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Stops the trajectory recording, if any. The recording must be stopped before the road network is rebuilt.
+     */
+    void stopTrajectoryRecording() {
+        trajectoryRecorder.stop();
+        if (recordItem != null) {
+            recordItem.setTitle(R.string.record_trajectories);
+        }
+    }
+
+    /**
+     * Hands the scenario over to its automatic controller, given by the view configuration.
+     */
+    void startAutomaticControl() {
+        final ViewConfig viewConfig = getViewConfig();
+        if (viewConfig == null || !viewConfig.hasController()) {
+            Toast.makeText(this, R.string.no_controller, Toast.LENGTH_LONG).show();
+            return;
+        }
+        final ControlLoop controlLoop = new ControlLoop(ControlLoop.createController(viewConfig.getController()),
+                viewConfig.getControllerParameters(), viewConfig.getControlInterval(), roadNetwork, diversions,
+                interventions);
+        interactiveSimulator.setControlLoop(controlLoop);
+        if (controlItem != null) {
+            controlItem.setTitle(R.string.manual_control);
+        }
+    }
+
+    /**
+     * Switches the automatic controller off, if any, the traffic lights and signs keep their state.
+     */
+    void stopAutomaticControl() {
+        interactiveSimulator.setControlLoop(null);
+        if (controlItem != null) {
+            controlItem.setTitle(R.string.automatic_control);
+        }
+    }
+
+    void togglePerformanceOverlay() {
+        Telemetry.setOverlayVisible(!Telemetry.isOverlayVisible());
+        trafficView.invalidate();
+    }
+
+    /**
+     * Writes the performance telemetry to a new file in the movsim directory of the external storage.
+     */
+    void dumpTelemetry() {
+        final File dir = new File(Environment.getExternalStorageDirectory(), "movsim");
+        final String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        final File file = new File(dir, "telemetry_" + timestamp + ".txt");
+        final String header = "project " + projectName + ", device " + android.os.Build.MODEL + ", API "
+                + android.os.Build.VERSION.SDK_INT + ", sleep time " + simulationRunnable.sleepTime()
+                + " ms, total animation time " + trafficView.getTotalAnimationTime() + " ms";
+        // the interactions that led to the measurements, for a headless replay
+        final SessionRecord record = sessionRecord(null);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Telemetry.dump(file, header);
+                    writeSessionRecord(record);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Toast.makeText(MovSimDroidActivity.this,
+                                    res.getString(R.string.telemetry_dumped) + file.getPath(), Toast.LENGTH_LONG).show();
+                        }
+                    });
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "TelemetryDump").start();
+    }
+
+    /**
+     * Checks the drawing allocations of all bundled scenarios, see {@link #checkAllocations(AllocationCheck.Report)}, and
+     * shows the counts when all scenarios have been checked. Debuggable builds only.
+     */
+    void checkAllocations() {
+        if (!AllocationCheck.isEnabled()) {
+            return;
+        }
+        final StringBuilder counts = new StringBuilder();
+        checkAllocations(new AllocationCheck.Report() {
+            private int frames;
+
+            @Override
+            public void scenarioChecked(String projectName, int frames, int foregroundAllocations,
+                    int backgroundAllocations) {
+                this.frames = frames;
+                counts.append('\n').append(projectName).append(": ").append(foregroundAllocations).append(" / ")
+                        .append(backgroundAllocations)
+                        .append(foregroundAllocations > 0 || backgroundAllocations > 0 ? " FAIL" : "");
+            }
+
+            @Override
+            public void checkCompleted(boolean failed) {
+                showInfo(String.format(res.getString(R.string.allocation_check_header), Integer.valueOf(frames))
+                        + counts + "\n\n"
+                        + res.getString(failed ? R.string.allocation_check_failed : R.string.allocation_check_passed));
+            }
+        });
+    }
+
+    /**
+     * Checks that drawing the traffic view does not allocate once it has warmed up: runs each bundled scenario in turn
+     * and counts the objects allocated while drawing its foreground and background. The check fails if any object was
+     * allocated. Must be called on the UI thread of a debuggable build; the check is cancelled when the activity is
+     * paused or another scenario is selected.
+     * 
+     * @param report
+     *            receives the counts of each scenario and the result
+     * @throws IllegalStateException
+     *             if the check is not enabled, that is in a release build
+     */
+    public void checkAllocations(AllocationCheck.Report report) {
+        if (!AllocationCheck.isEnabled()) {
+            throw new IllegalStateException("allocation check not enabled");
+        }
+        allocationCheckReport = report;
+        allocationCheckFailed = false;
+        checkAllocations(0);
+    }
+
+    private void checkAllocations(int itemPosition) {
+        allocationCheckScenario = itemPosition;
+        selectScenario(itemPosition);
+        getSupportActionBar().setSelectedNavigationItem(itemPosition);
+    }
+
+    private void startAllocationCheck() {
+        AllocationCheck.start(ALLOCATION_CHECK_WARM_UP_FRAMES, ALLOCATION_CHECK_FRAMES, new AllocationCheck.Listener() {
+            @Override
+            public void allocationsCounted(int frames, int foregroundAllocations, int backgroundAllocations) {
+                allocationCheckCompleted(frames, foregroundAllocations, backgroundAllocations);
+            }
+        });
+        if (menu != null) {
+            menu.getItem(0).setIcon(R.drawable.ic_action_pause).setTitle(R.string.pause);
+        }
+        simulationRunnable.resume();
+    }
+
+    private void allocationCheckCompleted(int frames, int foregroundAllocations, int backgroundAllocations) {
+        simulationRunnable.pause();
+        if (menu != null) {
+            menu.getItem(0).setIcon(R.drawable.ic_action_start).setTitle(R.string.start);
+        }
+        allocationCheckFailed |= foregroundAllocations > 0 || backgroundAllocations > 0;
+        allocationCheckReport.scenarioChecked(projectName, frames, foregroundAllocations, backgroundAllocations);
+        final int next = allocationCheckScenario + 1;
+        if (next < res.getStringArray(R.array.projectName).length) {
+            checkAllocations(next);
+            return;
+        }
+        allocationCheckScenario = -1;
+        final AllocationCheck.Report report = allocationCheckReport;
+        allocationCheckReport = null;
+        report.checkCompleted(allocationCheckFailed);
+    }
+
+    private void cancelAllocationCheck() {
+        if (allocationCheckScenario >= 0) {
+            AllocationCheck.cancel();
+            allocationCheckScenario = -1;
+            allocationCheckReport = null;
+        }
+    }
+
+    /**
+     * Takes the record of the current simulation session, its seed and the interventions so far.
+     * 
+     * @param result
+     *            the result line of the completed game, null if the simulation has not ended
+     * @return the session record
+     */
+    private SessionRecord sessionRecord(String result) {
+        synchronized (simulationRunnable.dataLock) {
+            final SimulationInput simulationInput = simulator.getSimInput().getSimulationInput();
+            final Long seed = simulationInput.isWithFixedSeed() ? Long.valueOf(simulationInput.getRandomSeed()) : null;
+            return new SessionRecord(projectName, seed, simulationRunnable.timeStep(),
+                    simulationRunnable.iterationCount(), result, interventions.getLog().snapshot());
+        }
+    }
+
+    /**
+     * Writes the session record to a new file in the movsim directory of the external storage and deletes the oldest
+     * records beyond {@link #MAX_SESSION_RECORDS}. The session can then be replayed with
+     * {@link org.movsim.movdroid.control.Replay}.
+     * 
+     * @param record
+     *            the session record
+     * @return the file
+     * @throws IOException
+     */
+    private File writeSessionRecord(SessionRecord record) throws IOException {
+        final File dir = new File(Environment.getExternalStorageDirectory(), "movsim");
+        dir.mkdirs();
+        final String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        final File file = new File(dir, projectName + "_" + timestamp + SessionRecord.FILE_EXTENSION);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            record.write(writer);
+        } finally {
+            writer.close();
+        }
+        deleteOldSessionRecords(dir);
+        return file;
+    }
+
+    private static void deleteOldSessionRecords(File dir) {
+        final File[] records = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SessionRecord.FILE_EXTENSION);
+            }
+        });
+        if (records == null || records.length <= MAX_SESSION_RECORDS) {
+            return;
+        }
+        // newest first
+        Arrays.sort(records, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                final long aModified = a.lastModified();
+                final long bModified = b.lastModified();
+                return aModified > bModified ? -1 : (aModified == bModified ? 0 : 1);
+            }
+        });
+        for (int i = MAX_SESSION_RECORDS; i < records.length; ++i) {
+            records[i].delete();
+        }
+    }
+
+    private File ghostRunFile(String projectName) {
+        return new File(getFilesDir(), projectName + GhostRun.FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the ghost of the best run of the game in the background and hands it to the traffic view.
+     */
+    private void loadGhostRun(final String projectName) {
+        final File file = ghostRunFile(projectName);
+        if (!file.exists()) {
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final GhostRun ghostRun = GhostRun.read(file);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            // the scenario may have been changed meanwhile
+                            if (projectName.equals(MovSimDroidActivity.this.projectName)) {
+                                trafficView.setGhostRun(ghostRun);
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the ghost of the finished run in the background if it beats the stored one, the next run races against it.
+     */
+    private void saveGhostRunIfBest(final GhostRun ghostRun) {
+        if (ghostRun == null) {
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final File file = ghostRunFile(ghostRun.getProjectName());
+                try {
+                    if (file.exists() && GhostRun.read(file).getScore() <= ghostRun.getScore()) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    // unreadable, replaced by the new run
+                    e.printStackTrace();
+                }
+                try {
+                    ghostRun.write(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ghostRun.getProjectName().equals(projectName)) {
+                            trafficView.setGhostRun(ghostRun);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the road segments on which the variable message sign is shown
+     */
+    public Diversions getDiversions() {
+        return diversions;
+    }
+
+    /**
+     * @return the queue of user interventions, with the log of the interventions applied to the current simulation
+     */
+    public InterventionQueue getInterventions() {
+        return interventions;
+    }
+
+    /**
+     * @return the view configuration of the current scenario
+     */
+    public ViewConfig getViewConfig() {
+        return scenarioLoader.getViewConfig();
+    }
+
+    /**
+     * @return the running network totals of the current simulation
+     */
+    public NetworkTotals getNetworkTotals() {
+        return networkTotals;
+    }
+
+    /**
+     * @return the virtual detectors of the current scenario
+     */
+    public VirtualDetectors getVirtualDetectors() {
+        return virtualDetectors;
     }
 
     public MovSimTrafficView getMovSimTrafficView() {
@@ -264,4 +815,17 @@ public class MovSimDroidActivity extends SherlockActivity implements OnNavigatio
         return navigationItemPosition;
     }
 
+    public boolean isScenarioLoading() {
+        return scenarioLoader.isLoading();
+    }
+
+    @Override
+    protected void onDestroy() {
+        stopTrajectoryRecording();
+        scenarioLoader.shutdown();
+        // pending writes are completed
+        ioExecutor.shutdown();
+        super.onDestroy();
+    }
+
 }
\ No newline at end of file
@@ -25,25 +25,18 @@
  */
 package org.movsim.movdroid;
 
-import java.util.List;
 import java.util.Locale;
 
 import org.movsim.input.ProjectMetaData;
 import org.movsim.movdroid.util.FormatUtil;
+import org.movsim.movdroid.util.GameGrades;
 import org.movsim.movdroid.util.HighscoreEntry;
-import org.movsim.movdroid.util.ViewProperties;
 
 import android.content.Intent;
 import android.content.res.Resources;
 
 public class SimulationFinished {
 
-    private static List<HighscoreEntry> results;
-
-    public static List<HighscoreEntry> getResults() {
-        return results;
-    }
-
     public SimulationFinished(Resources res, double totalVehicleTravelTime, double totalVehicleTravelDistance,
             double totalVehicleFuelUsedLiters, String formatedSimulationDuration, double simulationTime, MovSimDroidActivity movSimDroidActivity) {
 
@@ -57,32 +50,13 @@ public class SimulationFinished {
 
         StringBuilder gamePerformanceMessage = new StringBuilder("");
 
-        if (isGame()) {
+        if (isGame(movSimDroidActivity)) {
             String projectName = ProjectMetaData.getInstance().getProjectName();
+            final int grade = GameGrades.grade(projectName, simulationTime);
             if (projectName.equals("routing")) {
-                if (simulationTime < 260) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[0]);
-                } else if (simulationTime < 285) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[1]);
-                } else if (simulationTime < 315) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[2]);
-                } else if (simulationTime < 360) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[3]);
-                } else {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[4]);
-                }
+                gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRouting)[grade]);
             } else if (projectName.equals("ramp_metering")) {
-                if (simulationTime < 280) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[0]);
-                } else if (simulationTime < 290) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[1]);
-                } else if (simulationTime < 300) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[2]);
-                } else if (simulationTime < 310) {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[3]);
-                } else {
-                    gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[4]);
-                }
+                gamePerformanceMessage.append(res.getStringArray(R.array.highscoreRampMetring)[grade]);
             }
             HighscoreEntry highscoreEntry = new HighscoreEntry();
             highscoreEntry.setQuantity(HighscoreEntry.Quantity.totalSimulationTime, simulationTime);
@@ -90,13 +64,12 @@ public class SimulationFinished {
             highscoreEntry.setQuantity(HighscoreEntry.Quantity.totalTravelDistance, totalVehicleTravelDistance);
             highscoreEntry.setQuantity(HighscoreEntry.Quantity.totalFuelUsedLiters, totalVehicleFuelUsedLiters);
 
-            HighScoreForGame highScoreForGame = new HighScoreForGame(movSimDroidActivity, highscoreEntry);
-            results = highScoreForGame.getSortedResults();
-            
+            // ranking and storage run in the background, the highscore view fills in when they are done
+            GameResultPipeline.submit(movSimDroidActivity.getApplicationContext(), projectName, highscoreEntry);
+
             Intent intent = new Intent();
             intent.putExtra("message", message.toString());
             intent.putExtra("highscore", gamePerformanceMessage.toString());
-            intent.putExtra("rank", String.valueOf(highScoreForGame.getRank()));
             intent.setClass(movSimDroidActivity, HighScoreView.class);
             movSimDroidActivity.startActivity(intent);
             
@@ -105,8 +78,8 @@ public class SimulationFinished {
         }
     }
 
-    private boolean isGame() {
-        return Boolean.parseBoolean(ViewProperties.getApplicationProps().getProperty("isGame"));
+    private boolean isGame(MovSimDroidActivity movSimDroidActivity) {
+        return movSimDroidActivity.getViewConfig().isGame();
     }
 
 }
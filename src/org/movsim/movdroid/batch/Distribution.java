@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.batch;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The empirical distribution of a quantity over the runs of an ensemble.
+ * </p>
+ * <p>
+ * Percentiles are interpolated linearly between the order statistics, so the 0th percentile is the minimum and the 100th
+ * the maximum.
+ * </p>
+ */
+public class Distribution {
+
+    private final double[] sorted;
+
+    /**
+     * @param values
+     *            the values of the runs, not changed
+     */
+    public Distribution(double[] values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("empty distribution");
+        }
+        sorted = values.clone();
+        Arrays.sort(sorted);
+    }
+
+    public int size() {
+        return sorted.length;
+    }
+
+    public double min() {
+        return sorted[0];
+    }
+
+    public double max() {
+        return sorted[sorted.length - 1];
+    }
+
+    public double mean() {
+        double sum = 0;
+        for (final double value : sorted) {
+            sum += value;
+        }
+        return sum / sorted.length;
+    }
+
+    /**
+     * @return the sample standard deviation, 0 for a single value
+     */
+    public double standardDeviation() {
+        if (sorted.length < 2) {
+            return 0;
+        }
+        final double mean = mean();
+        double sum = 0;
+        for (final double value : sorted) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (sorted.length - 1));
+    }
+
+    /**
+     * @param percent
+     *            0 to 100
+     * @return the percentile
+     */
+    public double percentile(double percent) {
+        final double rank = percent / 100 * (sorted.length - 1);
+        final int lower = (int) Math.floor(rank);
+        if (lower >= sorted.length - 1) {
+            return sorted[sorted.length - 1];
+        }
+        return sorted[lower] + (rank - lower) * (sorted[lower + 1] - sorted[lower]);
+    }
+
+    /**
+     * @return the share of the values below the threshold, 0 to 1
+     */
+    public double shareBelow(double threshold) {
+        int count = 0;
+        while (count < sorted.length && sorted[count] < threshold) {
+            ++count;
+        }
+        return (double) count / sorted.length;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.batch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.movsim.movdroid.control.HeadlessRun;
+import org.movsim.movdroid.control.RunResult;
+import org.movsim.movdroid.util.GameGrades;
+import org.movsim.movdroid.util.HighscoreEntry.Quantity;
+
+/**
+ * <p>
+ * Monte Carlo ensemble of a scenario: runs N copies with consecutive seeds concurrently, one {@link HeadlessProcess} per
+ * run and as many at a time as there are cores, and reports the distributions of the highscore quantities.
+ * </p>
+ * <p>
+ * The report gives mean, standard deviation and percentiles of each quantity, and for the graded games the share of runs
+ * below each grade threshold of {@link GameGrades} together with the quintiles of the simulation time, which are the
+ * thresholds that would give each grade to a fifth of the runs. Each run is written to an optional CSV file as soon as it
+ * is done.
+ * </p>
+ * 
+ * <pre>
+ * java org.movsim.movdroid.batch.EnsembleRunner [--runs n] [--threads n] [--first-seed n] [--max-time s]
+ *     [--csv file] [--report file] directory scenario [controllerClass [controlInterval [name=value ...]]]
+ * </pre>
+ */
+public final class EnsembleRunner {
+
+    private static final double[] PERCENTILES = { 5, 10, 25, 50, 75, 90, 95 };
+    private static final double[] QUINTILES = { 20, 40, 60, 80 };
+
+    // a completed run
+    private static final class Run {
+        final long seed;
+        final RunResult result;
+
+        Run(long seed, RunResult result) {
+            this.seed = seed;
+            this.result = result;
+        }
+    }
+
+    private EnsembleRunner() {
+    }
+
+    /**
+     * Runs the ensemble.
+     * 
+     * @param seeds
+     *            one run per seed
+     * @param threads
+     *            the number of concurrent runs
+     * @param headlessArguments
+     *            the arguments of {@link HeadlessRun#main(String[])} without the seed
+     * @param csv
+     *            receives a line per run as soon as it is done, may be null
+     * @return the results of the runs that completed, in the order they completed
+     * @throws InterruptedException
+     */
+    public static List<RunResult> run(long[] seeds, int threads, final List<String> headlessArguments,
+            PrintWriter csv) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<Run> completion = new ExecutorCompletionService<Run>(executor);
+        for (final long seed : seeds) {
+            completion.submit(new Callable<Run>() {
+                @Override
+                public Run call() throws IOException {
+                    final List<String> arguments = new ArrayList<String>();
+                    arguments.add("--seed");
+                    arguments.add(Long.toString(seed));
+                    arguments.addAll(headlessArguments);
+                    return new Run(seed, HeadlessProcess.run(arguments));
+                }
+            });
+        }
+        if (csv != null) {
+            csv.println("seed,simulationTime,finished,totalTravelTime,totalTravelDistance,totalFuelUsedLiters,interventions");
+        }
+        final List<RunResult> results = new ArrayList<RunResult>(seeds.length);
+        try {
+            for (int i = 0; i < seeds.length; ++i) {
+                try {
+                    final Run run = completion.take().get();
+                    final RunResult result = run.result;
+                    results.add(result);
+                    if (csv != null) {
+                        csv.println(String.format(Locale.US, "%d,%.1f,%b,%.1f,%.3f,%.2f,%d", Long.valueOf(run.seed),
+                                Double.valueOf(result.getSimulationTime()), Boolean.valueOf(result.isFinished()),
+                                Double.valueOf(result.getTotalTravelTime()),
+                                Double.valueOf(result.getTotalTravelDistance()),
+                                Double.valueOf(result.getTotalFuelUsedLiters()),
+                                Integer.valueOf(result.getInterventions())));
+                        csv.flush();
+                    }
+                    System.err.println("run " + (i + 1) + "/" + seeds.length + ", seed " + run.seed + ": " + result);
+                } catch (ExecutionException e) {
+                    System.err.println("run " + (i + 1) + "/" + seeds.length + " failed: " + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * @return the values of the quantity in the results
+     */
+    static double[] values(List<RunResult> results, Quantity quantity) {
+        final double[] values = new double[results.size()];
+        for (int i = 0; i < values.length; ++i) {
+            final RunResult result = results.get(i);
+            switch (quantity) {
+            case totalSimulationTime:
+                values[i] = result.getSimulationTime();
+                break;
+            case totalTravelTime:
+                values[i] = result.getTotalTravelTime();
+                break;
+            case totalTravelDistance:
+                values[i] = result.getTotalTravelDistance();
+                break;
+            case totalFuelUsedLiters:
+                values[i] = result.getTotalFuelUsedLiters();
+                break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the percentile report of the results.
+     * 
+     * @param scenario
+     *            the project name, for the grade thresholds
+     * @param title
+     *            the first line of the report
+     * @param results
+     * @param out
+     */
+    public static void report(String scenario, String title, List<RunResult> results, PrintWriter out) {
+        int finished = 0;
+        for (final RunResult result : results) {
+            if (result.isFinished()) {
+                ++finished;
+            }
+        }
+        out.println(title);
+        out.println(results.size() + " runs, " + finished + " finished before the time limit");
+        if (results.isEmpty()) {
+            out.flush();
+            return;
+        }
+        out.println();
+        final StringBuilder header = new StringBuilder(String.format(Locale.US, "%-20s %10s %10s %10s", "quantity",
+                "mean", "sd", "min"));
+        for (final double percent : PERCENTILES) {
+            header.append(String.format(Locale.US, " %10s", "p" + (int) percent));
+        }
+        header.append(String.format(Locale.US, " %10s", "max"));
+        out.println(header);
+        for (final Quantity quantity : Quantity.values()) {
+            final Distribution distribution = new Distribution(values(results, quantity));
+            final StringBuilder line = new StringBuilder(String.format(Locale.US, "%-20s %10.2f %10.2f %10.2f",
+                    quantity.name(), Double.valueOf(distribution.mean()),
+                    Double.valueOf(distribution.standardDeviation()), Double.valueOf(distribution.min())));
+            for (final double percent : PERCENTILES) {
+                line.append(String.format(Locale.US, " %10.2f", Double.valueOf(distribution.percentile(percent))));
+            }
+            line.append(String.format(Locale.US, " %10.2f", Double.valueOf(distribution.max())));
+            out.println(line);
+        }
+
+        final double[] thresholds = GameGrades.getThresholds(scenario);
+        if (thresholds != null) {
+            final Distribution time = new Distribution(values(results, Quantity.totalSimulationTime));
+            out.println();
+            out.println("grade thresholds of " + scenario + " (simulation time, s)");
+            final StringBuilder current = new StringBuilder(String.format(Locale.US, "%-20s", "current"));
+            final StringBuilder share = new StringBuilder(String.format(Locale.US, "%-20s", "share of runs below"));
+            for (final double threshold : thresholds) {
+                current.append(String.format(Locale.US, " %10.1f", Double.valueOf(threshold)));
+                share.append(String.format(Locale.US, " %10.3f", Double.valueOf(time.shareBelow(threshold))));
+            }
+            final StringBuilder quintiles = new StringBuilder(String.format(Locale.US, "%-20s", "quintiles"));
+            for (final double percent : QUINTILES) {
+                quintiles.append(String.format(Locale.US, " %10.1f", Double.valueOf(time.percentile(percent))));
+            }
+            out.println(current);
+            out.println(share);
+            out.println(quintiles);
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long firstSeed = 1;
+        String csvFile = null;
+        String reportFile = null;
+        final List<String> headlessArguments = new ArrayList<String>();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            } else if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--first-seed")) {
+                firstSeed = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--max-time")) {
+                headlessArguments.add(args[i]);
+                headlessArguments.add(args[i + 1]);
+            } else if (args[i].equals("--csv")) {
+                csvFile = args[i + 1];
+            } else if (args[i].equals("--report")) {
+                reportFile = args[i + 1];
+            } else {
+                usage();
+            }
+        }
+        if (args.length - i < 2) {
+            usage();
+        }
+        final String scenario = args[i + 1];
+        headlessArguments.addAll(Arrays.asList(args).subList(i, args.length));
+
+        final long[] seeds = new long[runs];
+        for (int run = 0; run < runs; ++run) {
+            seeds[run] = firstSeed + run;
+        }
+        final PrintWriter csv = csvFile == null ? null : new PrintWriter(new FileWriter(csvFile));
+        final List<RunResult> results;
+        try {
+            results = run(seeds, threads, headlessArguments, csv);
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+        }
+
+        final String title = "ensemble " + scenario + ", seeds " + firstSeed + " to " + (firstSeed + runs - 1)
+                + ", arguments " + headlessArguments;
+        final StringWriter report = new StringWriter();
+        report(scenario, title, results, new PrintWriter(report));
+        System.out.print(report);
+        if (reportFile != null) {
+            final FileWriter writer = new FileWriter(new File(reportFile));
+            try {
+                writer.write(report.toString());
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: EnsembleRunner [--runs n] [--threads n] [--first-seed n] [--max-time s]"
+                + " [--csv file] [--report file] directory scenario [controllerClass [controlInterval [name=value ...]]]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.movsim.movdroid.control.HeadlessRun;
+import org.movsim.movdroid.control.RunResult;
+
+/**
+ * <p>
+ * Runs a {@link HeadlessRun} in a child JVM with the class path of this one.
+ * </p>
+ * <p>
+ * The movsim library keeps its random numbers and the project meta data in static fields, so runs cannot share a JVM
+ * concurrently; a process per run isolates them.
+ * </p>
+ */
+final class HeadlessProcess {
+
+    private HeadlessProcess() {
+    }
+
+    /**
+     * Runs the scenario and waits for its result.
+     * 
+     * @param arguments
+     *            the arguments of {@link HeadlessRun#main(String[])}
+     * @return the result
+     * @throws IOException
+     *             if the run failed or printed no result
+     */
+    static RunResult run(List<String> arguments) throws IOException {
+        final List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HeadlessRun.class.getName());
+        command.addAll(arguments);
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        RunResult result = null;
+        String lastLine = null;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            // the output must be read to the end, the child blocks on a full pipe
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final RunResult parsed = RunResult.parse(line);
+                if (parsed != null) {
+                    result = parsed;
+                }
+                lastLine = line;
+            }
+        } finally {
+            reader.close();
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted: " + arguments);
+        }
+        if (result == null) {
+            throw new IOException("no result from " + arguments + ", exit code " + process.exitValue() + ": " + lastLine);
+        }
+        return result;
+    }
+}
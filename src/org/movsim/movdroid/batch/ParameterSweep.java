@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.batch;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.movsim.movdroid.control.HeadlessRun;
+import org.movsim.movdroid.control.RunResult;
+import org.movsim.movdroid.scenario.ScenarioVariant;
+
+/**
+ * <p>
+ * Sweeps model parameters of a scenario, such as {@code ACC.T} or {@code MOBIL.politeness}, over a full grid or a Latin
+ * hypercube sample, and writes the result of each variant as a row of a tab separated table.
+ * </p>
+ * <p>
+ * The variants are never written to files: each is a {@link HeadlessProcess} whose {@link HeadlessRun} applies the
+ * parameter values to the scenario in memory with {@link ScenarioVariant}. At most {@code threads} variants run at a time
+ * and only as many more are queued, so large grids are enumerated as they are run. A row is flushed to the output as soon
+ * as its run is done, in the order the runs complete; the {@code index} column gives the point of the design.
+ * </p>
+ * <p>
+ * A grid parameter is given as {@code name=from:to:step} or as a list {@code name=a,b,c}, and all combinations are run.
+ * With {@code --lhs n} each parameter is given as a range {@code name=from:to}, and n points are sampled such that each of
+ * the n equal strata of every range holds one point.
+ * </p>
+ * 
+ * <pre>
+ * java org.movsim.movdroid.batch.ParameterSweep [--threads n] [--lhs n] [--lhs-seed n] [--seed n] [--max-time s]
+ *     [--out file] --param name=spec [--param name=spec ...] directory scenario
+ *     [controllerClass [controlInterval [name=value ...]]]
+ * </pre>
+ */
+public final class ParameterSweep {
+
+    private static final String[] RESULT_COLUMNS = { "simulationTime", "finished", "totalTravelTime",
+            "totalTravelDistance", "totalFuelUsedLiters", "interventions" };
+
+    /**
+     * The points of a sweep, each a value per parameter.
+     */
+    public static abstract class Design {
+        private final String[] names;
+
+        Design(String[] names) {
+            this.names = names;
+        }
+
+        /**
+         * @return the parameter names
+         */
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * @return the number of points
+         */
+        public abstract int size();
+
+        /**
+         * @param index
+         * @return the parameter values of the point
+         */
+        public abstract double[] point(int index);
+    }
+
+    private ParameterSweep() {
+    }
+
+    /**
+     * All combinations of the values, the last parameter varying fastest. The points are computed from their index, so
+     * the grid is never held in memory.
+     * 
+     * @param names
+     * @param values
+     *            the values of each parameter
+     * @return the design
+     */
+    public static Design grid(String[] names, final double[][] values) {
+        long size = 1;
+        for (final double[] parameterValues : values) {
+            size *= parameterValues.length;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("grid has more than " + Integer.MAX_VALUE + " points");
+            }
+        }
+        final int points = (int) size;
+        return new Design(names) {
+            @Override
+            public int size() {
+                return points;
+            }
+
+            @Override
+            public double[] point(int index) {
+                final double[] point = new double[values.length];
+                for (int i = values.length - 1; i >= 0; --i) {
+                    point[i] = values[i][index % values[i].length];
+                    index /= values[i].length;
+                }
+                return point;
+            }
+        };
+    }
+
+    /**
+     * Latin hypercube sample of the ranges: every parameter range is divided into n equal strata, each stratum holds
+     * one point at a random position, and the strata of the parameters are combined by random permutations.
+     * 
+     * @param names
+     * @param from
+     *            the lower bound of each parameter
+     * @param to
+     *            the upper bound of each parameter
+     * @param n
+     *            the number of points
+     * @param random
+     * @return the design
+     */
+    public static Design latinHypercube(String[] names, double[] from, double[] to, final int n, Random random) {
+        final double[][] points = new double[n][from.length];
+        final int[] strata = new int[n];
+        for (int parameter = 0; parameter < from.length; ++parameter) {
+            for (int i = 0; i < n; ++i) {
+                strata[i] = i;
+            }
+            // Fisher-Yates shuffle
+            for (int i = n - 1; i > 0; --i) {
+                final int j = random.nextInt(i + 1);
+                final int stratum = strata[i];
+                strata[i] = strata[j];
+                strata[j] = stratum;
+            }
+            final double width = (to[parameter] - from[parameter]) / n;
+            for (int i = 0; i < n; ++i) {
+                points[i][parameter] = from[parameter] + (strata[i] + random.nextDouble()) * width;
+            }
+        }
+        return new Design(names) {
+            @Override
+            public int size() {
+                return n;
+            }
+
+            @Override
+            public double[] point(int index) {
+                return points[index].clone();
+            }
+        };
+    }
+
+    /**
+     * Values {@code from, from + step, ...} up to and including {@code to}.
+     */
+    static double[] range(double from, double to, double step) {
+        if (step <= 0 || to < from) {
+            throw new IllegalArgumentException("empty range " + from + ":" + to + ":" + step);
+        }
+        // tolerate rounding of the step at the upper bound
+        final int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+        final double[] values = new double[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = from + i * step;
+        }
+        return values;
+    }
+
+    /**
+     * Formats a parameter value for the scenario and the output, without the rounding noise of the grid arithmetic.
+     */
+    static String format(double value) {
+        String text = String.format(Locale.US, "%.6f", Double.valueOf(value));
+        if (text.indexOf('.') >= 0) {
+            int end = text.length();
+            while (text.charAt(end - 1) == '0') {
+                --end;
+            }
+            if (text.charAt(end - 1) == '.') {
+                --end;
+            }
+            text = text.substring(0, end);
+        }
+        return text.equals("-0") ? "0" : text;
+    }
+
+    /**
+     * Runs the sweep.
+     * 
+     * @param design
+     * @param threads
+     *            the number of concurrent runs
+     * @param headlessArguments
+     *            the arguments of {@link HeadlessRun#main(String[])} without the parameter settings
+     * @param out
+     *            receives the header and a row per completed run
+     * @return the number of runs that failed
+     * @throws InterruptedException
+     */
+    public static int run(final Design design, int threads, final List<String> headlessArguments, final PrintWriter out)
+            throws InterruptedException {
+        final String[] names = design.getNames();
+        final StringBuilder header = new StringBuilder("index");
+        for (final String name : names) {
+            header.append('\t').append(name);
+        }
+        for (final String column : RESULT_COLUMNS) {
+            header.append('\t').append(column);
+        }
+        out.println(header);
+        out.flush();
+
+        final int size = design.size();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // bounds the queued runs, so the design is enumerated as fast as it is run
+        final Semaphore slots = new Semaphore(2 * threads);
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        try {
+            for (int index = 0; index < size; ++index) {
+                slots.acquire();
+                final int pointIndex = index;
+                final double[] point = design.point(index);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final List<String> arguments = new ArrayList<String>();
+                            final StringBuilder row = new StringBuilder(Integer.toString(pointIndex));
+                            for (int i = 0; i < names.length; ++i) {
+                                final String value = format(point[i]);
+                                arguments.add("--set");
+                                arguments.add(names[i] + "=" + value);
+                                row.append('\t').append(value);
+                            }
+                            arguments.addAll(headlessArguments);
+                            final RunResult result;
+                            try {
+                                result = HeadlessProcess.run(arguments);
+                            } catch (IOException e) {
+                                failed.incrementAndGet();
+                                System.err.println("run " + pointIndex + " failed: " + e.getMessage());
+                                return;
+                            }
+                            row.append(String.format(Locale.US, "\t%.1f\t%b\t%.1f\t%.3f\t%.2f\t%d",
+                                    Double.valueOf(result.getSimulationTime()), Boolean.valueOf(result.isFinished()),
+                                    Double.valueOf(result.getTotalTravelTime()),
+                                    Double.valueOf(result.getTotalTravelDistance()),
+                                    Double.valueOf(result.getTotalFuelUsedLiters()),
+                                    Integer.valueOf(result.getInterventions())));
+                            synchronized (out) {
+                                out.println(row);
+                                out.flush();
+                            }
+                            System.err.println("run " + completed.incrementAndGet() + "/" + size + ", point "
+                                    + pointIndex + ": " + result);
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed.get();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int lhsPoints = 0;
+        long lhsSeed = 1;
+        String outFile = null;
+        final List<String> names = new ArrayList<String>();
+        final List<String> specs = new ArrayList<String>();
+        final List<String> headlessArguments = new ArrayList<String>();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--lhs")) {
+                lhsPoints = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--lhs-seed")) {
+                lhsSeed = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--seed") || args[i].equals("--max-time")) {
+                headlessArguments.add(args[i]);
+                headlessArguments.add(args[i + 1]);
+            } else if (args[i].equals("--out")) {
+                outFile = args[i + 1];
+            } else if (args[i].equals("--param") && args[i + 1].indexOf('=') > 0) {
+                final int equals = args[i + 1].indexOf('=');
+                names.add(args[i + 1].substring(0, equals));
+                specs.add(args[i + 1].substring(equals + 1));
+            } else {
+                usage();
+            }
+        }
+        if (args.length - i < 2 || names.isEmpty()) {
+            usage();
+        }
+        headlessArguments.addAll(Arrays.asList(args).subList(i, args.length));
+
+        final String[] parameterNames = names.toArray(new String[names.size()]);
+        final Design design;
+        if (lhsPoints > 0) {
+            final double[] from = new double[specs.size()];
+            final double[] to = new double[specs.size()];
+            for (int parameter = 0; parameter < specs.size(); ++parameter) {
+                final String[] bounds = specs.get(parameter).split(":");
+                if (bounds.length != 2) {
+                    usage();
+                }
+                from[parameter] = Double.parseDouble(bounds[0]);
+                to[parameter] = Double.parseDouble(bounds[1]);
+            }
+            design = latinHypercube(parameterNames, from, to, lhsPoints, new Random(lhsSeed));
+        } else {
+            final double[][] values = new double[specs.size()][];
+            for (int parameter = 0; parameter < specs.size(); ++parameter) {
+                final String spec = specs.get(parameter);
+                final String[] bounds = spec.split(":");
+                if (bounds.length == 3) {
+                    values[parameter] = range(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]),
+                            Double.parseDouble(bounds[2]));
+                } else if (bounds.length == 1) {
+                    final String[] list = spec.split(",");
+                    values[parameter] = new double[list.length];
+                    for (int k = 0; k < list.length; ++k) {
+                        values[parameter][k] = Double.parseDouble(list[k]);
+                    }
+                } else {
+                    usage();
+                }
+            }
+            design = grid(parameterNames, values);
+        }
+
+        System.err.println("sweep of " + names + ", " + design.size() + " points, " + threads + " at a time");
+        final PrintWriter out = outFile == null ? new PrintWriter(System.out) : new PrintWriter(new FileWriter(outFile));
+        final int failed;
+        try {
+            failed = run(design, threads, headlessArguments, out);
+        } finally {
+            out.close();
+        }
+        if (failed > 0) {
+            System.err.println(failed + " of " + design.size() + " runs failed");
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: ParameterSweep [--threads n] [--lhs n] [--lhs-seed n] [--seed n] [--max-time s]"
+                + " [--out file] --param name=spec [--param name=spec ...] directory scenario"
+                + " [controllerClass [controlInterval [name=value ...]]]");
+        System.err.println("  spec is from:to:step or a,b,c for a grid, from:to with --lhs");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.Properties;
+
+import org.movsim.movdroid.metrics.VirtualDetectors;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * ALINEA ramp metering: the metering rate is corrected in proportion to the difference between a critical density and the
+ * density measured downstream of the merge, r(k) = r(k-1) + K_R (rho_crit - rho_out(k)).
+ * </p>
+ * <p>
+ * The metering rate is realized by the traffic light on the ramp, which is green for the fraction {@code rate / maxRate}
+ * of each metering cycle. The density is estimated from flow and speed at a detector, or taken from the road segment of
+ * the detector if no vehicle has passed it during the last sample interval.
+ * </p>
+ * <p>
+ * Parameters, with the defaults for the ramp metering game:
+ * <ul>
+ * <li>{@code ramp}, {@code light}: road segment and index of the ramp's traffic light, 37 and 0</li>
+ * <li>{@code detector}: downstream detector, {@code roadId:position}, 27:50</li>
+ * <li>{@code gain}: K_R in vehicles/h per vehicle/km and lane, 70</li>
+ * <li>{@code criticalDensity}: rho_crit in vehicles/km and lane, 25</li>
+ * <li>{@code updateInterval}: seconds between two corrections of the rate, 10</li>
+ * <li>{@code cycle}: length of the metering cycle in seconds, 10</li>
+ * <li>{@code minRate}, {@code maxRate}: bounds of the metering rate in vehicles/h, 200 and 1800</li>
+ * </ul>
+ * </p>
+ */
+public class AlineaRampMetering implements Controller {
+
+    private String ramp;
+    private int light;
+    private String detectorRoad;
+    private double gain;
+    private double criticalDensity;
+    private double cycle;
+    private double minRate;
+    private double maxRate;
+
+    private double rate;
+    private long sampleCount;
+    private double cycleStart;
+
+    @Override
+    public void start(ControlContext context, Properties parameters) {
+        ramp = parameters.getProperty("ramp", "37");
+        light = Integer.parseInt(parameters.getProperty("light", "0"));
+        final String detector = parameters.getProperty("detector", "27:50");
+        VirtualDetectors.checkSpec(detector);
+        detectorRoad = detector.substring(0, detector.indexOf(':')).trim();
+        gain = Double.parseDouble(parameters.getProperty("gain", "70"));
+        criticalDensity = Double.parseDouble(parameters.getProperty("criticalDensity", "25"));
+        cycle = Double.parseDouble(parameters.getProperty("cycle", "10"));
+        minRate = Double.parseDouble(parameters.getProperty("minRate", "200"));
+        maxRate = Double.parseDouble(parameters.getProperty("maxRate", "1800"));
+        final double updateInterval = Double.parseDouble(parameters.getProperty("updateInterval", "10"));
+        context.setDetectors(new String[] { detector }, updateInterval);
+        rate = maxRate;
+        sampleCount = 0;
+        cycleStart = context.getSimulationTime();
+    }
+
+    @Override
+    public void control(ControlContext context) {
+        if (context.getSampleCount(0) > sampleCount) {
+            sampleCount = context.getSampleCount(0);
+            final double speed = context.getSpeed(0);
+            final double density = speed > 0 ? context.getFlow(0) / (speed * Units.MS_TO_KMH)
+                    / context.getLaneCount(detectorRoad) : context.getDensity(detectorRoad);
+            rate = Math.max(minRate, Math.min(maxRate, rate + gain * (criticalDensity - density)));
+        }
+        final double phase = (context.getSimulationTime() - cycleStart) % cycle;
+        context.setTrafficLight(ramp, light, phase < cycle * rate / maxRate);
+    }
+
+    /**
+     * @return the current metering rate in vehicles/h
+     */
+    public double getRate() {
+        return rate;
+    }
+}
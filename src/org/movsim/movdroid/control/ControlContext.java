@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.List;
+
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.movdroid.interaction.InterventionQueue;
+import org.movsim.movdroid.interaction.SetDiversion;
+import org.movsim.movdroid.interaction.SetTrafficLight;
+import org.movsim.movdroid.metrics.DetectorSeries;
+import org.movsim.movdroid.metrics.VirtualDetectors;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.TrafficLight;
+import org.movsim.simulator.roadnetwork.TrafficLight.TrafficLightStatus;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * The view of the simulation given to a {@link Controller}: read-only state of the road segments and of the controller's
+ * detectors, and the commands a controller may issue.
+ * </p>
+ * <p>
+ * Road segments are addressed by their user id. Commands are applied at once, they are logged in the intervention log
+ * with the current simulation time and iteration. Commands that would not change anything are not issued.
+ * </p>
+ */
+public class ControlContext {
+
+    private final RoadNetwork roadNetwork;
+    private final Diversions diversions;
+    private final InterventionQueue interventions;
+    private final VirtualDetectors detectors;
+    private double simulationTime;
+    private long iterationCount;
+
+    ControlContext(RoadNetwork roadNetwork, Diversions diversions, InterventionQueue interventions) {
+        this.roadNetwork = roadNetwork;
+        this.diversions = diversions;
+        this.interventions = interventions;
+        this.detectors = new VirtualDetectors(roadNetwork);
+    }
+
+    void setTime(double simulationTime, long iterationCount) {
+        this.simulationTime = simulationTime;
+        this.iterationCount = iterationCount;
+    }
+
+    VirtualDetectors getVirtualDetectors() {
+        return detectors;
+    }
+
+    public double getSimulationTime() {
+        return simulationTime;
+    }
+
+    public long getIterationCount() {
+        return iterationCount;
+    }
+
+    // ============================================================================================
+    // road segments
+    //
+
+    private RoadSegment roadSegment(String roadId) {
+        final RoadSegment roadSegment = roadNetwork.findByUserId(roadId);
+        if (roadSegment == null) {
+            throw new IllegalArgumentException("no road segment " + roadId);
+        }
+        return roadSegment;
+    }
+
+    public int getLaneCount(String roadId) {
+        return roadSegment(roadId).laneCount();
+    }
+
+    public double getRoadLength(String roadId) {
+        return roadSegment(roadId).roadLength();
+    }
+
+    public int getVehicleCount(String roadId) {
+        final RoadSegment roadSegment = roadSegment(roadId);
+        int count = 0;
+        for (int lane = 0; lane < roadSegment.laneCount(); ++lane) {
+            count += roadSegment.getVehicleCount(lane);
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean speed of the vehicles on the road segment in m/s, NaN if there are none
+     */
+    public double getMeanSpeed(String roadId) {
+        double sum = 0;
+        int count = 0;
+        for (final Vehicle vehicle : roadSegment(roadId)) {
+            sum += vehicle.getSpeed();
+            ++count;
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the density on the road segment in vehicles per km and lane
+     */
+    public double getDensity(String roadId) {
+        final RoadSegment roadSegment = roadSegment(roadId);
+        return getVehicleCount(roadId) / (Units.M_TO_KM * roadSegment.roadLength() * roadSegment.laneCount());
+    }
+
+    // ============================================================================================
+    // detectors
+    //
+
+    /**
+     * Places the controller's detectors, replacing any placed before. They take their first sample one sample interval
+     * after the next time step.
+     * 
+     * @param specs
+     *            one {@code roadId:position} per detector
+     * @param dtSample
+     *            sample interval in seconds of simulation time
+     */
+    public void setDetectors(String[] specs, double dtSample) {
+        detectors.setDetectors(specs, dtSample);
+    }
+
+    /**
+     * @return the number of samples the detector has taken, 0 if there is no such detector yet
+     */
+    public long getSampleCount(int detector) {
+        final DetectorSeries series = series(detector);
+        return series == null ? 0 : series.count();
+    }
+
+    /**
+     * @return the flow over all lanes in the last sample of the detector in vehicles per hour, NaN if there is none
+     */
+    public double getFlow(int detector) {
+        final DetectorSeries series = series(detector);
+        return series == null || series.size() == 0 ? Double.NaN : series.flow(series.size() - 1);
+    }
+
+    /**
+     * @return the mean speed in the last sample of the detector in m/s, NaN if there is none or no vehicle has passed
+     */
+    public double getSpeed(int detector) {
+        final DetectorSeries series = series(detector);
+        return series == null || series.size() == 0 ? Double.NaN : series.speed(series.size() - 1);
+    }
+
+    private DetectorSeries series(int detector) {
+        final List<VirtualDetectors.Detector> list = detectors.getDetectors();
+        return detector < list.size() ? list.get(detector).getSeries() : null;
+    }
+
+    // ============================================================================================
+    // commands
+    //
+
+    private TrafficLight trafficLight(String roadId, int index) {
+        final Iterable<TrafficLight> trafficLights = roadSegment(roadId).trafficLights();
+        if (trafficLights != null) {
+            int i = 0;
+            for (final TrafficLight trafficLight : trafficLights) {
+                if (i++ == index) {
+                    return trafficLight;
+                }
+            }
+        }
+        throw new IllegalArgumentException("no traffic light " + index + " on road segment " + roadId);
+    }
+
+    public boolean isGreen(String roadId, int index) {
+        return trafficLight(roadId, index).status() == TrafficLightStatus.GREEN;
+    }
+
+    /**
+     * Switches the traffic light to green or red.
+     * 
+     * @param roadId
+     * @param index
+     *            the index of the traffic light on its road segment
+     * @param green
+     */
+    public void setTrafficLight(String roadId, int index, boolean green) {
+        final TrafficLight trafficLight = trafficLight(roadId, index);
+        final TrafficLightStatus status = green ? TrafficLightStatus.GREEN : TrafficLightStatus.RED;
+        if (trafficLight.status() != status) {
+            interventions.apply(new SetTrafficLight("trafficLight:" + roadId + ":" + index, trafficLight, status),
+                    simulationTime, iterationCount);
+        }
+    }
+
+    public boolean isDiversionOn(String roadId) {
+        return diversions.isActive(roadSegment(roadId));
+    }
+
+    /**
+     * Shows or removes the variable message sign on the road segment.
+     */
+    public void setDiversion(String roadId, boolean on) {
+        final RoadSegment roadSegment = roadSegment(roadId);
+        if (diversions.isActive(roadSegment) != on) {
+            interventions.apply(new SetDiversion(diversions, roadSegment, on), simulationTime, iterationCount);
+        }
+    }
+}
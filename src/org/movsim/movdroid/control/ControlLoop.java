@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.Properties;
+
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.movdroid.interaction.InterventionQueue;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+
+/**
+ * <p>
+ * Runs a {@link Controller} every given number of simulation steps.
+ * </p>
+ * <p>
+ * Driven by the simulator from within its time step, with the data lock held: {@link #beforeStep(double, long)} calls the
+ * controller, {@link #afterStep(double)} advances the controller's detectors. A simulation time step that goes back, as
+ * after a restart, starts the controller anew.
+ * </p>
+ */
+public class ControlLoop {
+
+    private final Controller controller;
+    private final Properties parameters;
+    private final int interval;
+    private final ControlContext context;
+    private boolean started;
+    private long lastIterationCount = -1;
+
+    /**
+     * @param controller
+     * @param parameters
+     *            the parameters of the controller
+     * @param interval
+     *            the number of simulation steps between two calls of the controller
+     * @param roadNetwork
+     * @param diversions
+     *            the variable message signs the controller may switch
+     * @param interventions
+     *            the commands of the controller are logged in its log
+     */
+    public ControlLoop(Controller controller, Properties parameters, int interval, RoadNetwork roadNetwork,
+            Diversions diversions, InterventionQueue interventions) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("control interval must be at least one step: " + interval);
+        }
+        this.controller = controller;
+        this.parameters = parameters;
+        this.interval = interval;
+        this.context = new ControlContext(roadNetwork, diversions, interventions);
+    }
+
+    /**
+     * Creates a controller by the name of its class.
+     * 
+     * @param className
+     * @return the controller
+     * @throws IllegalArgumentException
+     *             if there is no such controller
+     */
+    public static Controller createController(String className) {
+        try {
+            return Class.forName(className).asSubclass(Controller.class).getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("cannot create controller " + className, e);
+        }
+    }
+
+    public Controller getController() {
+        return controller;
+    }
+
+    /**
+     * Called at the start of each time step.
+     */
+    public void beforeStep(double simulationTime, long iterationCount) {
+        if (iterationCount <= lastIterationCount) {
+            started = false;
+        }
+        lastIterationCount = iterationCount;
+        context.setTime(simulationTime, iterationCount);
+        if (!started) {
+            controller.start(context, parameters);
+            started = true;
+        }
+        if (iterationCount % interval == 0) {
+            controller.control(context);
+        }
+    }
+
+    /**
+     * Called at the end of each time step.
+     */
+    public void afterStep(double simulationTime) {
+        context.getVirtualDetectors().updateStatus(simulationTime);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.Properties;
+
+/**
+ * <p>
+ * An automatic control policy for a scenario, for example ramp metering or the diversion of traffic.
+ * </p>
+ * <p>
+ * A controller is called by the simulation thread with the data lock held, at the start of every control interval, before
+ * the time step. It reads the state of the road segments and its detectors through the {@link ControlContext} and acts
+ * only through the commands of the context, which are logged like the user's interventions. Implementations need a
+ * public no-argument constructor, so they can be created by class name in the app and in {@link HeadlessRun}.
+ * </p>
+ */
+public interface Controller {
+
+    /**
+     * Called before the first control interval of a simulation, also after a restart.
+     * 
+     * @param context
+     * @param parameters
+     *            the parameters of the policy, missing parameters take their default values
+     */
+    void start(ControlContext context, Properties parameters);
+
+    /**
+     * Called at the start of each control interval.
+     * 
+     * @param context
+     */
+    void control(ControlContext context);
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.interaction.CommandParser;
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.movdroid.interaction.InteractiveSimulator;
+import org.movsim.movdroid.interaction.InterventionLog;
+import org.movsim.movdroid.interaction.InterventionQueue;
+import org.movsim.movdroid.scenario.ScenarioVariant;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.VariableMessageSignDiversion;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * Runs a scenario to its end without the app, optionally under an automatic {@link Controller}, and reports the game
+ * result. Needs only a Java runtime with the movsim library on the class path, so many policies can be evaluated
+ * unattended.
+ * </p>
+ * <p>
+ * The simulation is stepped as fast as possible. It ends like the game does: once no vehicle is left on the road after the
+ * first minute, or at the given limit of simulation time. The scenario is read from the {@code .xml}, {@code .xodr} and
+ * {@code .properties} files of the given name in the given directory; as in the app, the variable message sign can be
+ * switched on the road segments listed as {@code variableMessageSignRoads} in the properties. A seed given for the run
+ * replaces the seed of the scenario's {@code SIMULATION} element, so runs with different seeds are independent samples of
+ * the scenario. Model parameters can be changed the same way, as {@code --set ACC.T=1.2} with the parameter names of
+ * {@link ScenarioVariant}; the variant only exists in memory.
+ * </p>
+ * <p>
+ * The result is printed as a single line of {@code name=value} pairs, which {@link RunResult#parse(String)} reads back.
+ * </p>
+ * 
+ * <pre>
+ * java org.movsim.movdroid.control.HeadlessRun [--seed n] [--max-time s] [--set parameter=value ...] directory scenario
+ *     [controllerClass [controlInterval [name=value ...]]]
+ * </pre>
+ */
+public final class HeadlessRun {
+
+    /** limit of the simulation time of a run, in seconds */
+    public static final double DEFAULT_MAX_SIMULATION_TIME = 3600;
+    // same as Simulator.isFinished(), which reads the time from the simulation runnable
+    private static final double MIN_SIMULATION_TIME = 60;
+    private static final String CHARSET = "UTF-8";
+
+    private HeadlessRun() {
+    }
+
+    /**
+     * Runs the scenario to its end.
+     * 
+     * @param directory
+     *            the directory of the scenario files
+     * @param scenario
+     *            the name of the scenario
+     * @param seed
+     *            the seed of the random numbers, null for the scenario's own seed
+     * @param settings
+     *            the model parameters to change, by {@link ScenarioVariant} parameter name, may be null
+     * @param script
+     *            recorded commands, each applied before the time step of its iteration, may be null
+     * @param controller
+     *            the controller, null to run without control
+     * @param parameters
+     *            the parameters of the controller
+     * @param controlInterval
+     *            the number of simulation steps between two calls of the controller
+     * @param maxSimulationTime
+     *            the limit of the simulation time in seconds
+     * @return the result
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if a setting or a command of the script names no element of the scenario
+     */
+    public static RunResult run(File directory, String scenario, Long seed, Map<String, String> settings,
+            InterventionLog script, Controller controller, Properties parameters, int controlInterval, double maxSimulationTime)
+            throws IOException {
+        final Properties viewProperties = new Properties();
+        final File propertiesFile = new File(directory, scenario + ".properties");
+        if (propertiesFile.exists()) {
+            final InputStream in = new FileInputStream(propertiesFile);
+            try {
+                viewProperties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        final ProjectMetaData projectMetaData = ProjectMetaData.getInstance();
+        projectMetaData.setParseFromInputstream(true);
+        projectMetaData.setInstantaneousFileOutput(false);
+        String movsimXml = new String(readFully(new File(directory, scenario + ".xml")), CHARSET);
+        if (seed != null) {
+            movsimXml = withSeed(movsimXml, seed.longValue());
+        }
+        if (settings != null) {
+            for (final Map.Entry<String, String> setting : settings.entrySet()) {
+                movsimXml = ScenarioVariant.set(movsimXml, setting.getKey(), setting.getValue());
+            }
+        }
+        projectMetaData.setMovsimXml(new ByteArrayInputStream(movsimXml.getBytes(CHARSET)));
+        projectMetaData.setNetworkXml(new FileInputStream(new File(directory, scenario + ".xodr")));
+        projectMetaData.setProjectProperties(propertiesFile.exists() ? new FileInputStream(propertiesFile) : null);
+
+        final InteractiveSimulator simulator = new InteractiveSimulator(projectMetaData);
+        simulator.loadScenarioFromXml(scenario, directory.getPath() + File.separator);
+        final RoadNetwork roadNetwork = simulator.getRoadNetwork();
+        roadNetwork.setHasVariableMessageSign(viewProperties.getProperty("variableMessageSignRoads", "").trim()
+                .length() > 0);
+        final Diversions diversions = new Diversions(new VariableMessageSignDiversion());
+        final InterventionQueue interventions = simulator.getInterventions();
+        if (controller != null) {
+            simulator.setControlLoop(new ControlLoop(controller, parameters, controlInterval, roadNetwork,
+                    diversions, interventions));
+        }
+        final CommandParser parser = new CommandParser(roadNetwork, diversions, simulator.getSimulationRunnable());
+        int scriptIndex = 0;
+
+        final int obstacleCount = roadNetwork.obstacleCount();
+        final double dt = simulator.getSimulationRunnable().timeStep();
+        double simulationTime = 0;
+        long iterationCount = 0;
+        boolean finished = false;
+        while (simulationTime < maxSimulationTime) {
+            // offered in log order, the simulator applies them before the time step as the app does
+            while (script != null && scriptIndex < script.size()
+                    && script.get(scriptIndex).getIterationCount() <= iterationCount) {
+                interventions.offer(parser.parse(script.get(scriptIndex++).getCommand()));
+            }
+            simulator.timeStep(dt, simulationTime, iterationCount);
+            // the app checks the end with the time at the start of the step, see Simulator.isFinished()
+            finished = simulationTime > MIN_SIMULATION_TIME && roadNetwork.vehicleCount() == obstacleCount;
+            simulationTime += dt;
+            ++iterationCount;
+            if (finished) {
+                break;
+            }
+        }
+        return new RunResult(simulationTime, finished, roadNetwork.totalVehicleTravelTime(),
+                Units.M_TO_KM * roadNetwork.totalVehicleTravelDistance(), roadNetwork.totalVehicleFuelUsedLiters(),
+                interventions.getLog().size());
+    }
+
+    /**
+     * Sets the seed of the scenario's random numbers and makes it fixed.
+     * 
+     * @param movsimXml
+     *            the movsim xml of the scenario
+     * @param seed
+     * @return the movsim xml with the seed
+     */
+    static String withSeed(String movsimXml, long seed) {
+        return ScenarioVariant.set(ScenarioVariant.set(movsimXml, "SIMULATION.seed", Long.toString(seed)),
+                "SIMULATION.fixed_seed", "true");
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Long seed = null;
+        final Map<String, String> settings = new LinkedHashMap<String, String>();
+        double maxSimulationTime = DEFAULT_MAX_SIMULATION_TIME;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            } else if (args[i].equals("--seed")) {
+                seed = Long.valueOf(args[i + 1]);
+            } else if (args[i].equals("--max-time")) {
+                maxSimulationTime = Double.parseDouble(args[i + 1]);
+            } else if (args[i].equals("--set") && args[i + 1].indexOf('=') > 0) {
+                final int equals = args[i + 1].indexOf('=');
+                settings.put(args[i + 1].substring(0, equals), args[i + 1].substring(equals + 1));
+            } else {
+                usage();
+            }
+        }
+        if (args.length - i < 2) {
+            usage();
+        }
+        final File directory = new File(args[i++]);
+        final String scenario = args[i++];
+        final Controller controller = i < args.length ? ControlLoop.createController(args[i++]) : null;
+        final int controlInterval = i < args.length ? Integer.parseInt(args[i++]) : 10;
+        final Properties parameters = new Properties();
+        for (; i < args.length; ++i) {
+            final int equals = args[i].indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("controller parameter \"" + args[i]
+                        + "\" is not of the form name=value");
+            }
+            parameters.setProperty(args[i].substring(0, equals), args[i].substring(equals + 1));
+        }
+        System.out.println(run(directory, scenario, seed, settings, null, controller, parameters, controlInterval, maxSimulationTime));
+    }
+
+    private static void usage() {
+        System.err.println("usage: HeadlessRun [--seed n] [--max-time s] [--set parameter=value ...] directory scenario"
+                + " [controllerClass [controlInterval [name=value ...]]]");
+        System.exit(1);
+    }
+}
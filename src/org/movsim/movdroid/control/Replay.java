@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+
+import org.movsim.movdroid.interaction.SessionRecord;
+
+/**
+ * <p>
+ * Replays a recorded session without the app, as fast as the simulation can be stepped, and checks that it reproduces
+ * the recording: the same interventions at the same iterations and, for a completed game, the same result.
+ * </p>
+ * <p>
+ * The scenario is run with the recorded seed, the recorded commands are applied before the time steps they were applied
+ * before in the app, and the run ends with the game or after the recorded number of time steps. The exit code is 0 if
+ * the replay is identical to the recording, 2 if it differs.
+ * </p>
+ * 
+ * <pre>
+ * java org.movsim.movdroid.control.Replay directory session.replay
+ * </pre>
+ */
+public final class Replay {
+
+    private Replay() {
+    }
+
+    /**
+     * Replays the session.
+     * 
+     * @param directory
+     *            the directory of the scenario files
+     * @param record
+     * @return the result of the replay
+     * @throws IOException
+     */
+    public static RunResult run(File directory, SessionRecord record) throws IOException {
+        // half a time step of margin, so exactly the recorded number of steps is run
+        final double maxSimulationTime = (record.getIterationCount() - 0.5) * record.getTimeStep();
+        return HeadlessRun.run(directory, record.getScenario(), record.getSeed(), null, record.getLog(), null, null, 0,
+                maxSimulationTime);
+    }
+
+    /**
+     * @return a description of the difference between the recording and the replay, null if there is none
+     */
+    static String compare(SessionRecord record, RunResult replayed) {
+        // the commands are applied at their recorded iterations, unless the replay ended before
+        if (replayed.getInterventions() != record.getLog().size()) {
+            return "replayed " + replayed.getInterventions() + " of " + record.getLog().size() + " interventions";
+        }
+        if (record.getResult() == null) {
+            return null;
+        }
+        final RunResult recorded = RunResult.parse(record.getResult());
+        if (recorded == null) {
+            return "malformed recorded result " + record.getResult();
+        }
+        // compared as printed, the app sums the totals in another order
+        if (!recorded.toString().equals(replayed.toString())) {
+            return "recorded " + recorded + ", replayed " + replayed;
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: Replay directory session" + SessionRecord.FILE_EXTENSION);
+            System.exit(1);
+        }
+        final Reader reader = new InputStreamReader(new FileInputStream(args[1]), "UTF-8");
+        final SessionRecord record;
+        try {
+            record = SessionRecord.read(reader);
+        } finally {
+            reader.close();
+        }
+        if (record.getSeed() == null) {
+            System.err.println("warning: the scenario has no fixed seed, the replay cannot reproduce the session");
+        }
+
+        final long start = System.nanoTime();
+        final RunResult result = run(new File(args[0]), record);
+        final long elapsed_ms = (System.nanoTime() - start) / 1000000;
+        System.out.println(result);
+        System.err.println(String.format(Locale.US, "replayed %.1f s of simulation time and %d interventions in %d ms",
+                Double.valueOf(result.getSimulationTime()), Integer.valueOf(result.getInterventions()),
+                Long.valueOf(elapsed_ms)));
+
+        final String difference = compare(record, result);
+        if (difference != null) {
+            System.err.println("replay differs from the recording: " + difference);
+            System.exit(2);
+        }
+        System.err.println("replay identical to the recording");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * The result of a simulation run, as printed by {@link HeadlessRun} and recorded with a session by the app. The
+ * {@link #toString()} line of {@code name=value} pairs is read back by {@link #parse(String)}.
+ */
+public final class RunResult {
+    private final double simulationTime;
+    private final boolean finished;
+    private final double totalTravelTime;
+    private final double totalTravelDistance;
+    private final double totalFuelUsedLiters;
+    private final int interventions;
+
+    public RunResult(double simulationTime, boolean finished, double totalTravelTime, double totalTravelDistance,
+            double totalFuelUsedLiters, int interventions) {
+        this.simulationTime = simulationTime;
+        this.finished = finished;
+        this.totalTravelTime = totalTravelTime;
+        this.totalTravelDistance = totalTravelDistance;
+        this.totalFuelUsedLiters = totalFuelUsedLiters;
+        this.interventions = interventions;
+    }
+
+    /**
+     * @return the simulation time in seconds until the last vehicle left, the game score
+     */
+    public double getSimulationTime() {
+        return simulationTime;
+    }
+
+    /**
+     * @return false if the run was stopped at the limit of the simulation time
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the total travel time of all vehicles in seconds
+     */
+    public double getTotalTravelTime() {
+        return totalTravelTime;
+    }
+
+    /**
+     * @return the total travel distance of all vehicles in km
+     */
+    public double getTotalTravelDistance() {
+        return totalTravelDistance;
+    }
+
+    public double getTotalFuelUsedLiters() {
+        return totalFuelUsedLiters;
+    }
+
+    /**
+     * @return the number of commands applied by the controller
+     */
+    public int getInterventions() {
+        return interventions;
+    }
+
+    /**
+     * Reads a result printed by {@link #toString()}.
+     * 
+     * @param line
+     * @return the result, or null if the line is not a result
+     */
+    public static RunResult parse(String line) {
+        if (!line.startsWith("simulationTime=")) {
+            return null;
+        }
+        final Properties values = new Properties();
+        for (final String pair : line.trim().split("\\s+")) {
+            final int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.setProperty(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        try {
+            return new RunResult(Double.parseDouble(values.getProperty("simulationTime")),
+                    Boolean.parseBoolean(values.getProperty("finished")), Double.parseDouble(values
+                            .getProperty("totalTravelTime")), Double.parseDouble(values
+                            .getProperty("totalTravelDistance")), Double.parseDouble(values.getProperty("fuel")),
+                    Integer.parseInt(values.getProperty("interventions")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "simulationTime=%.1f finished=%b totalTravelTime=%.1f totalTravelDistance=%.3f fuel=%.2f interventions=%d",
+                Double.valueOf(simulationTime), Boolean.valueOf(finished), Double.valueOf(totalTravelTime),
+                Double.valueOf(totalTravelDistance), Double.valueOf(totalFuelUsedLiters),
+                Integer.valueOf(interventions));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.control;
+
+import java.util.Properties;
+
+/**
+ * <p>
+ * Diversion by threshold: the variable message sign is shown when the density on a monitored road segment rises above an
+ * upper threshold, and removed when it falls below a lower threshold. The gap between the thresholds keeps the sign from
+ * flickering.
+ * </p>
+ * <p>
+ * Parameters, with the defaults for the routing game:
+ * <ul>
+ * <li>{@code sign}: road segment of the sign, 1</li>
+ * <li>{@code road}: the monitored road segment, 2</li>
+ * <li>{@code onDensity}: density in vehicles/km and lane above which the sign is shown, 30</li>
+ * <li>{@code offDensity}: density in vehicles/km and lane below which the sign is removed, 20</li>
+ * </ul>
+ * </p>
+ */
+public class ThresholdDiversion implements Controller {
+
+    private String sign;
+    private String road;
+    private double onDensity;
+    private double offDensity;
+
+    @Override
+    public void start(ControlContext context, Properties parameters) {
+        sign = parameters.getProperty("sign", "1");
+        road = parameters.getProperty("road", "2");
+        onDensity = Double.parseDouble(parameters.getProperty("onDensity", "30"));
+        offDensity = Double.parseDouble(parameters.getProperty("offDensity", "20"));
+    }
+
+    @Override
+    public void control(ControlContext context) {
+        final double density = context.getDensity(road);
+        if (density > onDensity) {
+            context.setDiversion(sign, true);
+        } else if (density < offDensity) {
+            context.setDiversion(sign, false);
+        }
+    }
+}
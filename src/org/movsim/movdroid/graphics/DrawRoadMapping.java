@@ -25,6 +25,7 @@
  */
 package org.movsim.movdroid.graphics;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.movsim.roadmappings.RoadMappingArc;
@@ -46,6 +47,10 @@ import android.graphics.Region;
  * 
  */
 public class DrawRoadMapping {
+
+    // bounds of the arcs, only used on the UI thread and only while an arc is added to a path
+    private static final RectF arcRect = new RectF();
+
     static public Path drawRoadMapping(Path roadPath, RoadMapping roadMapping, double lateralOffset) {
 
         assert roadMapping != null;
@@ -74,7 +79,7 @@ public class DrawRoadMapping {
             posTheta = roadMapping.map(straightLength, lateralOffset);
             roadPath.lineTo((float) posTheta.x, (float) posTheta.y);
             // draw the U
-            final RectF rect = new RectF();
+            final RectF rect = arcRect;
             rect.top = (float) posTheta.y;
             rect.right = (float) (posTheta.x + mappingU.radius() + lateralOffset);
             rect.left = (float) (posTheta.x - mappingU.radius() - lateralOffset);
@@ -98,7 +103,7 @@ public class DrawRoadMapping {
                 arcStart = arc.startAngle() + 0.5 * Math.PI;
             }
             final double radius = arc.radius();
-            final RectF rect = new RectF();
+            final RectF rect = arcRect;
             rect.top = (float) (arc.centerY() - radius - lateralOffset);
             rect.bottom = (float) (arc.centerY() + radius + lateralOffset);
             rect.left = (float) (arc.centerX() - radius - lateralOffset);
@@ -160,7 +165,9 @@ public class DrawRoadMapping {
             canvas.clipPath(clipPath);
         } else {
             clipPath.reset();
-            for (RoadMapping.PolygonFloat polygon : roadMapping.clippingPolygons()) {
+            final ArrayList<RoadMapping.PolygonFloat> clippingPolygons = roadMapping.clippingPolygons();
+            for (int i = 0, n = clippingPolygons.size(); i < n; ++i) {
+                final RoadMapping.PolygonFloat polygon = clippingPolygons.get(i);
                 clipPath.moveTo(polygon.xPoints[0], polygon.yPoints[0]);
                 clipPath.lineTo(polygon.xPoints[1], polygon.yPoints[1]);
                 clipPath.lineTo(polygon.xPoints[2], polygon.yPoints[2]);
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.movsim.movdroid.interaction.Command;
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.simulator.roadnetwork.RoadMapping;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.TrafficLight;
+
+import android.graphics.RectF;
+
+/**
+ * <p>
+ * Index of the elements of the road network the user can switch by tapping them: traffic lights and variable message
+ * signs.
+ * </p>
+ * <p>
+ * Built once when a scenario has been loaded. The hit region of each element is the area it is drawn in, in world
+ * coordinates, so the index stays valid while the view is dragged or zoomed; a tap is transformed into world coordinates
+ * instead. The regions are entered into a grid of square cells, kept as a sorted array of cell keys, so a lookup is a
+ * binary search, O(log n), followed by a test of the few regions of the cell.
+ * </p>
+ */
+public final class InteractiveElements {
+
+    private static final float CELL_SIZE = 50;
+
+    /**
+     * An element with its hit region. Applying it as a {@link Command} switches it to its next state.
+     */
+    public abstract static class Element implements Command {
+        final RectF bounds;
+
+        Element(RectF bounds) {
+            this.bounds = bounds;
+        }
+
+        /**
+         * @return the id of the element, unique within the road network, for example {@code trafficLight:3:0}
+         */
+        public abstract String id();
+
+        @Override
+        public String describe() {
+            return "toggle " + id();
+        }
+    }
+
+    static final class TrafficLightElement extends Element {
+        final String id;
+        final TrafficLight trafficLight;
+
+        TrafficLightElement(RoadSegment roadSegment, int index, TrafficLight trafficLight, RectF bounds) {
+            super(bounds);
+            this.id = "trafficLight:" + roadSegment.userId() + ":" + index;
+            this.trafficLight = trafficLight;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public void apply() {
+            trafficLight.nextState();
+        }
+    }
+
+    static final class VariableMessageSignElement extends Element {
+        final RoadSegment roadSegment;
+        final Diversions diversions;
+
+        VariableMessageSignElement(RoadSegment roadSegment, Diversions diversions, RectF bounds) {
+            super(bounds);
+            this.roadSegment = roadSegment;
+            this.diversions = diversions;
+        }
+
+        boolean isActive() {
+            return diversions.isActive(roadSegment);
+        }
+
+        @Override
+        public String id() {
+            return "sign:" + roadSegment.userId();
+        }
+
+        @Override
+        public void apply() {
+            diversions.set(roadSegment, !diversions.isActive(roadSegment));
+        }
+    }
+
+    private final List<Element> elements;
+    // cell keys, sorted, and the index of the element entered in that cell
+    private final int[] cellKeys;
+    private final int[] cellElements;
+
+    private InteractiveElements(List<Element> elements) {
+        this.elements = elements;
+        int entries = 0;
+        for (final Element element : elements) {
+            final RectF bounds = element.bounds;
+            entries += (cell(bounds.right) - cell(bounds.left) + 1) * (cell(bounds.bottom) - cell(bounds.top) + 1);
+        }
+        // sort the (cell key, element index) pairs, packed into one long each
+        final long[] entry = new long[entries];
+        int n = 0;
+        for (int i = 0; i < elements.size(); ++i) {
+            final RectF bounds = elements.get(i).bounds;
+            for (int cx = cell(bounds.left); cx <= cell(bounds.right); ++cx) {
+                for (int cy = cell(bounds.top); cy <= cell(bounds.bottom); ++cy) {
+                    entry[n++] = ((long) key(cx, cy) << 32) | i;
+                }
+            }
+        }
+        Arrays.sort(entry);
+        cellKeys = new int[entries];
+        cellElements = new int[entries];
+        for (int i = 0; i < entries; ++i) {
+            cellKeys[i] = (int) (entry[i] >> 32);
+            cellElements[i] = (int) entry[i];
+        }
+    }
+
+    /**
+     * Builds the index of the given road network. The hit regions match the drawing of the elements in
+     * {@link MovSimTrafficView}.
+     * 
+     * @param roadNetwork
+     * @param variableMessageSignRoadIds
+     *            user ids of the road segments a variable message sign can be switched on
+     * @param diversions
+     *            the state of the variable message sign on these road segments
+     */
+    public static InteractiveElements build(RoadNetwork roadNetwork, String[] variableMessageSignRoadIds,
+            Diversions diversions) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (final RoadSegment roadSegment : roadNetwork) {
+            if (roadSegment.trafficLights() == null) {
+                continue;
+            }
+            final RoadMapping roadMapping = roadSegment.roadMapping();
+            int index = 0;
+            for (final TrafficLight trafficLight : roadSegment.trafficLights()) {
+                elements.add(new TrafficLightElement(roadSegment, index++, trafficLight, trafficLightBounds(roadMapping,
+                        trafficLight)));
+            }
+        }
+        if (diversions != null) {
+            for (final String roadId : variableMessageSignRoadIds) {
+                final RoadSegment roadSegment = roadNetwork.findByUserId(roadId);
+                if (roadSegment != null) {
+                    elements.add(new VariableMessageSignElement(roadSegment, diversions,
+                            variableMessageSignBounds(roadSegment.roadMapping())));
+                }
+            }
+        }
+        return new InteractiveElements(elements);
+    }
+
+    /**
+     * @return the area the traffic light is drawn in, in world coordinates
+     */
+    static RectF trafficLightBounds(RoadMapping roadMapping, TrafficLight trafficLight) {
+        final int offset = (int) ((roadMapping.laneCount() / 2.0 + 1.5) * roadMapping.laneWidth());
+        final int radius = (int) (1.8 * roadMapping.laneWidth());
+        final RoadMapping.PosTheta posTheta = roadMapping.map(trafficLight.position(), offset);
+        final float x = (int) posTheta.x + offset;
+        final float y = (int) posTheta.y + offset;
+        return new RectF(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    /**
+     * @return the area the variable message sign is drawn in, beside the start of the road segment
+     */
+    static RectF variableMessageSignBounds(RoadMapping roadMapping) {
+        final double offset = -(roadMapping.laneCount() / 2.0 + 2.5) * roadMapping.laneWidth();
+        final float halfSize = (float) (2.5 * roadMapping.laneWidth());
+        final RoadMapping.PosTheta posTheta = roadMapping.map(Math.min(20, roadMapping.roadLength() / 2), offset);
+        final float x = (float) posTheta.x;
+        final float y = (float) posTheta.y;
+        return new RectF(x - halfSize, y - halfSize, x + halfSize, y + halfSize);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public Element get(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Returns the element hit by a tap at the given world position.
+     * 
+     * @param tolerance
+     *            the hit regions are enlarged by this distance in world coordinates; the cells within this distance of
+     *            the position are searched, so a tolerance larger than the cell size (a zoomed-out view) costs more cells
+     * @return the element whose hit region is nearest to the position, or null if none is hit
+     */
+    public Element hit(float x, float y, float tolerance) {
+        Element hit = null;
+        float best = Float.MAX_VALUE;
+        final int minCellX = cell(x - tolerance);
+        final int maxCellX = cell(x + tolerance);
+        final int minCellY = cell(y - tolerance);
+        final int maxCellY = cell(y + tolerance);
+        for (int cx = minCellX; cx <= maxCellX; ++cx) {
+            for (int cy = minCellY; cy <= maxCellY; ++cy) {
+                final int key = key(cx, cy);
+                for (int i = firstIndexOf(key); i < cellKeys.length && cellKeys[i] == key; ++i) {
+                    final Element element = elements.get(cellElements[i]);
+                    final RectF bounds = element.bounds;
+                    final float dx = Math.max(0, Math.max(bounds.left - x, x - bounds.right));
+                    final float dy = Math.max(0, Math.max(bounds.top - y, y - bounds.bottom));
+                    final float distance = Math.max(dx, dy);
+                    if (distance <= tolerance && distance < best) {
+                        best = distance;
+                        hit = element;
+                    }
+                }
+            }
+        }
+        return hit;
+    }
+
+    // the first position of the key in the sorted keys, or the insertion point if it is not present
+    private int firstIndexOf(int key) {
+        int low = 0;
+        int high = cellKeys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (cellKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    // cells are 16 bit signed in each direction, which covers networks of more than 1000 km
+    private static int key(int cellX, int cellY) {
+        return (cellX << 16) | (cellY & 0xffff);
+    }
+}
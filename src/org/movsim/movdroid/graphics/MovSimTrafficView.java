@@ -25,13 +25,23 @@
  */
 package org.movsim.movdroid.graphics;
 
-import java.util.Properties;
+import java.util.List;
 
 import org.movsim.input.ProjectMetaData;
-import org.movsim.movdroid.util.ViewProperties;
+import org.movsim.movdroid.interaction.Command;
+import org.movsim.movdroid.interaction.Diversions;
+import org.movsim.movdroid.interaction.InterventionQueue;
+import org.movsim.movdroid.metrics.DetectorSeries;
+import org.movsim.movdroid.metrics.LaneMetrics;
+import org.movsim.movdroid.metrics.VirtualDetectors;
+import org.movsim.movdroid.recording.GhostRun;
+import org.movsim.movdroid.telemetry.Telemetry;
+import org.movsim.movdroid.util.StartupTrace;
+import org.movsim.movdroid.util.ViewConfig;
 import org.movsim.simulator.SimulationRunnable;
 import org.movsim.simulator.SimulationRunnable.UpdateDrawingCallback;
 import org.movsim.simulator.Simulator;
+import org.movsim.simulator.roadnetwork.Lane;
 import org.movsim.simulator.roadnetwork.RoadMapping;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
@@ -44,6 +54,8 @@ import org.movsim.simulator.roadnetwork.TrafficSource;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.movsim.utilities.Colors;
 import org.movsim.utilities.Units;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import android.content.Context;
 import android.graphics.Canvas;
@@ -52,11 +64,15 @@ import android.graphics.DashPathEffect;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.FloatMath;
 import android.view.MotionEvent;
+import android.view.ViewConfiguration;
 
 public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback {
 
+    static final Logger logger = LoggerFactory.getLogger(MovSimTrafficView.class);
+
     protected StatusControlCallbacks statusControlCallbacks;
 
     private Simulator simulator;
@@ -64,12 +80,13 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     protected final RoadNetwork roadNetwork;
 
     // pre-allocate Path and Paint objects
-    private final Path roadPath = new Path();
-    private final Path linePath = new Path();
     private final Path vehiclePath = new Path();
     private final Paint vehiclePaint = new Paint();
     private final DashPathEffect roadLineDashPathEffect = new DashPathEffect(new float[] { 10, 20 }, 1);
     private final Path clipPath = new Path();
+    private final Paint detectorPaint = new Paint();
+    private final RectF sparklineBox = new RectF();
+    private float[] sparklinePoints = new float[0];
 
     protected int roadColor;
     protected int roadEdgeColor;
@@ -82,10 +99,6 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     private int[] accelerationColors;
     private final double[] accelerations = new double[] { -7.5, -0.1, 0.2 };
 
-    protected enum VehicleColorMode {
-        VELOCITY_COLOR, LANE_CHANGE, ACCELERATION_COLOR, VEHICLE_COLOR, VEHICLE_LABEL_COLOR, HIGHLIGHT_VEHICLE, EXIT_COLOR
-    }
-
     /** Color mode displayed on startup */
     protected VehicleColorMode vehicleColorMode = VehicleColorMode.VELOCITY_COLOR;
 
@@ -107,7 +120,24 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     protected long lastVehicleViewed = -1;
     protected long vehicleToHighlightId = -1;
 
+    // vehicles drawn in the last frame, for hit-testing taps
+    private final VehicleSpatialIndex vehicleIndex = new VehicleSpatialIndex(VEHICLE_INDEX_CELL_SIZE);
+    private static final float VEHICLE_INDEX_CELL_SIZE = 20;
+    // tap radius in pixels
+    private static final float TAP_RADIUS = 30;
+    private static final int HIGHLIGHT_COLOR = Color.MAGENTA;
+    private int vehiclePopupEntry = -1;
+    private RoadSegment vehiclePopupRoadSegment;
+    private final Paint popupPaint = new Paint();
+    private final RectF popupBox = new RectF();
+    private final char[] popupChars = new char[96];
+    private final char[] popupLaneChars = new char[64];
+    // smoothed metrics of the selected vehicle's lane, shown in its popup; active only while a vehicle is selected
+    private LaneMetrics laneMetrics;
+    private final int touchSlop;
+
     private ProjectMetaData projectMetaData;
+    private ViewConfig viewConfig;
 
     // touch event handling
     private static final int TOUCH_MODE_NONE = 0;
@@ -123,7 +153,43 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     private static float touchModeZoomHysteresis = 10.0f;
     private float pinchDistance;
 
-//    private Region trafficLightRegion = new Region();
+    // the traffic lights and variable message signs switched by a tap, built when a scenario has been loaded
+    private volatile InteractiveElements interactiveElements;
+    private Diversions diversions;
+    private InterventionQueue interventions;
+    private final Runnable repaintBackground = new Runnable() {
+        @Override
+        public void run() {
+            forceRepaintBackground();
+        }
+    };
+
+    // drawing paths of the road segments, built lazily when a road segment is first visible
+    private volatile RoadSegmentGeometry[] roadGeometries;
+    private final RectF visibleArea = new RectF();
+    // scratch objects of the background drawing, so that it does not allocate
+    private final Rect trafficLightRect = new Rect();
+    private final char[] textChars = new char[64];
+    // set while a scenario is loaded in the background, the road network must not be drawn then
+    private volatile boolean loading;
+    // start of the current scenario load, for the time-to-first-frame measurement
+    private long loadStartTime_ns;
+
+    // the ghost of the best run, drawn over the vehicles; its road segments are resolved on first use
+    private volatile GhostRun ghostRun;
+    private RoadSegment[] ghostSegments;
+    // geometries of the ghost's road segments and whether they are visible in the current frame, by ghost segment index
+    private RoadSegmentGeometry[] ghostGeometries;
+    private boolean[] ghostSegmentVisible;
+    private final Paint ghostPaint = new Paint();
+    private final RectF ghostArea = new RectF();
+    private static final int GHOST_COLOR = 0x60ffffff;
+
+    private VirtualDetectors virtualDetectors;
+    private static final float SPARKLINE_WIDTH = 80;
+    private static final float SPARKLINE_HEIGHT = 36;
+    // flow per lane at the top of a sparkline, veh/h
+    private static final float SPARKLINE_MAX_FLOW_PER_LANE = 2400;
 
     /**
      * Callbacks from this TrafficCanvas to the application UI.
@@ -148,19 +214,63 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
         this.roadNetwork = simulator.getRoadNetwork();
         simulationRunnable = simulator.getSimulationRunnable();
         simulationRunnable.setUpdateDrawingCallback(this);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    /**
+     * Sets the view configuration of the current project, applied by the next {@link #resetGraphicproperties()}.
+     */
+    public void setViewConfig(ViewConfig viewConfig) {
+        this.viewConfig = viewConfig;
+    }
+
+    public ViewConfig getViewConfig() {
+        return viewConfig;
+    }
+
+    /**
+     * Sets the variable message sign switched on and off by tapping its marker on the road segments given by
+     * {@link ViewConfig#getVariableMessageSignRoads()}.
+     */
+    public void setDiversions(Diversions diversions) {
+        this.diversions = diversions;
+    }
+
+    /**
+     * Sets the queue the taps on traffic lights and variable message signs are submitted to.
+     */
+    public void setInterventionQueue(InterventionQueue interventions) {
+        this.interventions = interventions;
+    }
+
+    /**
+     * Sets the virtual detectors drawn with their sparklines, null to draw none.
+     */
+    public void setVirtualDetectors(VirtualDetectors virtualDetectors) {
+        this.virtualDetectors = virtualDetectors;
+    }
+
+    /**
+     * Sets the lane metrics shown in the popup of the selected vehicle. They are activated while a vehicle is selected.
+     */
+    public void setLaneMetrics(LaneMetrics laneMetrics) {
+        this.laneMetrics = laneMetrics;
+        laneMetrics.setActive(vehicleToHighlightId != -1);
     }
 
     public void resetGraphicproperties() {
-        Properties properties = ViewProperties.loadProperties(projectMetaData.getProjectName(),
-                projectMetaData.getPathToProjectXmlFile());
-        initGraphicConfigFieldsFromProperties(properties);
-        scale = Float.parseFloat(properties.getProperty("initialScale"));
-        xOffset = Integer.parseInt(properties.getProperty("xOffset"));
-        yOffset = Integer.parseInt(properties.getProperty("yOffset"));
+        initGraphicConfigFields(viewConfig);
+        xOffset = viewConfig.getXOffset();
+        yOffset = viewConfig.getYOffset();
     }
 
     @Override
     public void updateDrawing(double arg0) {
+        Telemetry.frameRequested();
+        if (interventions != null && interventions.takeApplied()) {
+            // the traffic lights and signs are drawn in the background
+            post(repaintBackground);
+        }
         postInvalidate();
     }
 
@@ -198,33 +308,77 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
         // moveVehicles occurs in the UI thread, so must synchronize with the
         // update of the road network in the calculation thread.
 
+        StartupTrace.frameDrawn();
+        if (loading) {
+            return;
+        }
         final long timeBeforePaint_ms = System.currentTimeMillis();
+        final long lockRequested_ns = System.nanoTime();
 
         synchronized (simulationRunnable.dataLock) {
+            final long lockAcquired_ns = System.nanoTime();
+            Telemetry.UI_LOCK_WAIT.record(lockAcquired_ns - lockRequested_ns);
 
             final double simulationTime = this.getSimulationTime();
 
-            for (final RoadSegment roadSegment : roadNetwork) {
+            vehicleIndex.clear();
+            vehiclePopup = null;
+            vehiclePopupEntry = -1;
+            // indexed loops, the iterators of the road network and road segments would be allocated each frame
+            final RoadSegmentGeometry[] geometries = geometries();
+            for (int i = 0; i < geometries.length; ++i) {
+                final RoadSegment roadSegment = geometries[i].roadSegment;
                 final RoadMapping roadMapping = roadSegment.roadMapping();
                 assert roadMapping != null;
                 if (androidVersion < 12) {
                     DrawRoadMapping.clipPath(canvas, clipPath, roadMapping); // TODO clipPath not supported on sdk>12
                 }
-                for (final Vehicle vehicle : roadSegment) {
-                    drawVehicle(canvas, simulationTime, roadMapping, vehicle);
+                for (int lane = 0, laneCount = roadSegment.laneCount(); lane < laneCount; ++lane) {
+                    for (int j = 0, count = roadSegment.getVehicleCount(lane); j < count; ++j) {
+                        final Vehicle vehicle = roadSegment.getVehicle(lane, j);
+                        drawVehicle(canvas, simulationTime, roadMapping, vehicle);
+                        if (vehicle.getId() == vehicleToHighlightId) {
+                            vehiclePopup = vehicle;
+                            vehiclePopupEntry = vehicleIndex.size() - 1;
+                            vehiclePopupRoadSegment = roadSegment;
+                        }
+                    }
                 }
             }
+            if (vehiclePopup != null) {
+                drawVehiclePopup(canvas);
+            } else if (vehicleToHighlightId != -1) {
+                // the selected vehicle has left the road network
+                clearVehicleSelection();
+            }
+
+            if (ghostRun != null) {
+                drawGhostRun(canvas, simulationTime);
+            }
+
+            if (virtualDetectors != null) {
+                drawDetectors(canvas);
+            }
 
             totalAnimationTime += System.currentTimeMillis() - timeBeforePaint_ms;
 
             drawAfterVehiclesMoved(canvas, simulationRunnable.simulationTime(), simulationRunnable.iterationCount());
 
+            Telemetry.FOREGROUND_DRAW.record(System.nanoTime() - lockAcquired_ns);
+        }
+        if (loadStartTime_ns != 0) {
+            logger.info("time to first frame for {}: {} ms", projectMetaData.getProjectName(),
+                    Long.valueOf((System.nanoTime() - loadStartTime_ns) / 1000000));
+            loadStartTime_ns = 0;
+            StartupTrace.interactiveFrameDrawn();
         }
     }
 
     private void drawVehicle(Canvas canvas, double simulationTime, RoadMapping roadMapping, Vehicle vehicle) {
         // draw vehicle polygon at new position
         final RoadMapping.PolygonFloat polygon = roadMapping.mapFloat(vehicle, simulationTime);
+        vehicleIndex.add(vehicle, (polygon.xPoints[0] + polygon.xPoints[2]) / 2,
+                (polygon.yPoints[0] + polygon.yPoints[2]) / 2);
         vehiclePath.reset();
 
         vehiclePath.moveTo(polygon.xPoints[0], polygon.yPoints[0]);
@@ -249,6 +403,373 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
         }
     }
 
+    /**
+     * Draws the vehicles of the ghost run at the simulation time, each interpolated between the frame before and its entry
+     * in the frame after. Visits the vehicles of one frame in the packed data and draws only the visible ones; vehicles
+     * on road segments outside the view are skipped before they are mapped. Must be called with the simulation's data
+     * lock held.
+     */
+    private void drawGhostRun(Canvas canvas, double simulationTime) {
+        final GhostRun ghost = ghostRun;
+        final int frame = ghost.frameAt(simulationTime);
+        if (frame < 0) {
+            return;
+        }
+        if (ghostSegments == null) {
+            resolveGhostSegments(ghost);
+        }
+        ghostArea.set(-xOffset, -yOffset, getWidth() / scale - xOffset, getHeight() / scale - yOffset);
+        for (int i = 0; i < ghostGeometries.length; ++i) {
+            final RoadSegmentGeometry geometry = ghostGeometries[i];
+            ghostSegmentVisible[i] = geometry != null && RectF.intersects(ghostArea, geometry.bounds);
+        }
+        final double fraction = ghost.fraction(frame, simulationTime);
+        final int[] data = ghost.getData();
+        final int nextStart = frame + 1 < ghost.getFrameCount() ? ghost.frameStart(frame + 1) : -1;
+        ghostPaint.setColor(GHOST_COLOR);
+        ghostPaint.setStyle(Paint.Style.FILL);
+        for (int i = ghost.frameStart(frame), end = ghost.frameEnd(frame); i < end; i += 2) {
+            final int packed = data[i];
+            final int packedSize = data[i + 1];
+            final int segment = GhostRun.segment(packed);
+            RoadSegment roadSegment = ghostSegments[segment];
+            if (roadSegment == null) {
+                continue;
+            }
+            final int next = nextStart < 0 ? -1 : GhostRun.next(nextStart, packedSize);
+            // the vehicle may be interpolated onto the road segment of its next frame
+            if (!ghostSegmentVisible[segment] && (next < 0 || !ghostSegmentVisible[GhostRun.segment(data[next])])) {
+                continue;
+            }
+            double position = GhostRun.position(packed);
+            int lane = GhostRun.lane(packed);
+            if (next >= 0) {
+                final RoadSegment nextSegment = ghostSegments[GhostRun.segment(data[next])];
+                final double nextPosition = GhostRun.position(data[next]);
+                if (nextSegment == roadSegment) {
+                    position += fraction * (nextPosition - position);
+                } else if (nextSegment != null) {
+                    // moved on to the next road segment, the distance between the frames spans both
+                    final double remaining = roadSegment.roadMapping().roadLength() - position;
+                    final double distance = fraction * (remaining + nextPosition);
+                    if (distance < remaining) {
+                        position += distance;
+                    } else {
+                        roadSegment = nextSegment;
+                        position = distance - remaining;
+                        lane = GhostRun.lane(data[next]);
+                    }
+                }
+                if (fraction >= 0.5) {
+                    lane = GhostRun.lane(data[next]);
+                }
+            }
+            final RoadMapping roadMapping = roadSegment.roadMapping();
+            final double length = GhostRun.length(packedSize);
+            final RoadMapping.PosTheta posTheta = roadMapping.map(position, roadMapping.laneOffset(lane));
+            if (posTheta.x < ghostArea.left - length || posTheta.x > ghostArea.right + length
+                    || posTheta.y < ghostArea.top - length || posTheta.y > ghostArea.bottom + length) {
+                continue;
+            }
+            final RoadMapping.PolygonFloat polygon = roadMapping.mapFloat(posTheta, length, GhostRun.width(packedSize));
+            vehiclePath.reset();
+            vehiclePath.moveTo(polygon.xPoints[0], polygon.yPoints[0]);
+            vehiclePath.lineTo(polygon.xPoints[1], polygon.yPoints[1]);
+            vehiclePath.lineTo(polygon.xPoints[2], polygon.yPoints[2]);
+            vehiclePath.lineTo(polygon.xPoints[3], polygon.yPoints[3]);
+            vehiclePath.close();
+            canvas.drawPath(vehiclePath, ghostPaint);
+        }
+    }
+
+    /**
+     * Resolves the road segments of the ghost run and their geometries, by the ghost's segment index.
+     */
+    private void resolveGhostSegments(GhostRun ghost) {
+        final String[] roadIds = ghost.getRoadIds();
+        final RoadSegment[] segments = new RoadSegment[roadIds.length];
+        final RoadSegmentGeometry[] segmentGeometries = new RoadSegmentGeometry[roadIds.length];
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < roadIds.length; ++i) {
+            segments[i] = roadNetwork.findByUserId(roadIds[i]);
+            for (int j = 0; j < geometries.length && segments[i] != null; ++j) {
+                if (geometries[j].roadSegment == segments[i]) {
+                    segmentGeometries[i] = geometries[j];
+                    break;
+                }
+            }
+        }
+        ghostGeometries = segmentGeometries;
+        ghostSegmentVisible = new boolean[roadIds.length];
+        ghostSegments = segments;
+    }
+
+    /**
+     * Sets the ghost run to be drawn over the vehicles, null for none. Must be called on the UI thread.
+     */
+    public void setGhostRun(GhostRun ghostRun) {
+        this.ghostRun = ghostRun;
+        ghostSegments = null;
+    }
+
+    /**
+     * Draws a marker at each virtual detector and, beside the road, a sparkline of its flow (white) and mean speed (colored
+     * line) over the samples kept. Must be called with the simulation's data lock held.
+     */
+    private void drawDetectors(Canvas canvas) {
+        final List<VirtualDetectors.Detector> detectors = virtualDetectors.getDetectors();
+        for (int i = 0, size = detectors.size(); i < size; ++i) {
+            final VirtualDetectors.Detector detector = detectors.get(i);
+            final RoadMapping roadMapping = detector.getRoadSegment().roadMapping();
+            final DetectorSeries series = detector.getSeries();
+
+            RoadMapping.PosTheta posTheta = roadMapping.map(detector.getPosition(), 0);
+            detectorPaint.reset();
+            detectorPaint.setStyle(Paint.Style.FILL);
+            detectorPaint.setColor(Color.YELLOW);
+            canvas.drawCircle((float) posTheta.x, (float) posTheta.y, (float) roadMapping.laneWidth() / 2, detectorPaint);
+
+            final double offset = (roadMapping.laneCount() / 2.0 + 1.5) * roadMapping.laneWidth();
+            posTheta = roadMapping.map(detector.getPosition(), offset);
+            final float left = (float) posTheta.x - SPARKLINE_WIDTH / 2;
+            final float top = (float) posTheta.y;
+            sparklineBox.set(left, top, left + SPARKLINE_WIDTH, top + SPARKLINE_HEIGHT);
+            detectorPaint.setColor(0xa0000000);
+            canvas.drawRect(sparklineBox, detectorPaint);
+
+            final int count = series.size();
+            if (count < 2) {
+                continue;
+            }
+            if (sparklinePoints.length < 4 * series.capacity()) {
+                sparklinePoints = new float[4 * series.capacity()];
+            }
+            final float dx = SPARKLINE_WIDTH / (series.capacity() - 1);
+            final float maxFlow = SPARKLINE_MAX_FLOW_PER_LANE * roadMapping.laneCount();
+            final float maxSpeed = (float) (getVmaxForColorSpectrum() / 3.6);
+            detectorPaint.setStyle(Paint.Style.STROKE);
+            detectorPaint.setStrokeWidth(1.5f);
+            detectorPaint.setAntiAlias(true);
+
+            // flow
+            int n = 0;
+            for (int k = 1; k < count; ++k) {
+                n = addSparklineSegment(n, left, dx, k, series.flow(k - 1) / maxFlow, series.flow(k) / maxFlow);
+            }
+            detectorPaint.setColor(Color.WHITE);
+            canvas.drawLines(sparklinePoints, 0, n, detectorPaint);
+
+            // mean speed, gaps where no vehicle has passed
+            n = 0;
+            for (int k = 1; k < count; ++k) {
+                final float v0 = series.speed(k - 1);
+                final float v1 = series.speed(k);
+                if (!Float.isNaN(v0) && !Float.isNaN(v1)) {
+                    n = addSparklineSegment(n, left, dx, k, v0 / maxSpeed, v1 / maxSpeed);
+                }
+            }
+            final float latestSpeed = series.speed(count - 1);
+            detectorPaint.setColor(Float.isNaN(latestSpeed) ? Color.LTGRAY : getColorAccordingToSpectrum(0,
+                    getVmaxForColorSpectrum(), latestSpeed * 3.6));
+            canvas.drawLines(sparklinePoints, 0, n, detectorPaint);
+        }
+    }
+
+    private int addSparklineSegment(int n, float left, float dx, int k, float relative0, float relative1) {
+        final float bottom = sparklineBox.bottom;
+        sparklinePoints[n++] = left + (k - 1) * dx;
+        sparklinePoints[n++] = bottom - Math.min(relative0, 1) * SPARKLINE_HEIGHT;
+        sparklinePoints[n++] = left + k * dx;
+        sparklinePoints[n++] = bottom - Math.min(relative1, 1) * SPARKLINE_HEIGHT;
+        return n;
+    }
+
+    /**
+     * Draws the live info of the selected vehicle above it, and below that the smoothed density, flow and mean speed of
+     * its lane. The text is formatted into preallocated buffers and sized to stay readable at any zoom level.
+     */
+    private void drawVehiclePopup(Canvas canvas) {
+        final Vehicle vehicle = vehiclePopup;
+        int n = 0;
+        n = appendChars(popupChars, n, "#");
+        n = appendInt(popupChars, n, vehicle.getId());
+        n = appendChars(popupChars, n, "  ");
+        n = appendInt(popupChars, n, Math.round(vehicle.getSpeed() * Units.MS_TO_KMH));
+        n = appendChars(popupChars, n, " km/h  ");
+        final long acc10 = Math.round(vehicle.getAcc() * 10);
+        if (acc10 < 0) {
+            popupChars[n++] = '-';
+        }
+        n = appendInt(popupChars, n, Math.abs(acc10) / 10);
+        popupChars[n++] = '.';
+        popupChars[n++] = (char) ('0' + Math.abs(acc10) % 10);
+        n = appendChars(popupChars, n, " m/s\u00b2  road ");
+        n = appendChars(popupChars, n, vehiclePopupRoadSegment.userId());
+        n = appendChars(popupChars, n, " lane ");
+        n = appendInt(popupChars, n, vehicle.getLane());
+
+        final int laneN = formatLaneMetrics(vehicle);
+
+        final float textSize = 14 / scale;
+        final float padding = 4 / scale;
+        final float lineHeight = 1.25f * textSize;
+        popupPaint.reset();
+        popupPaint.setAntiAlias(true);
+        popupPaint.setTextSize(textSize);
+        final float width = Math.max(popupPaint.measureText(popupChars, 0, n),
+                laneN > 0 ? popupPaint.measureText(popupLaneChars, 0, laneN) : 0);
+        final float x = vehicleIndex.x(vehiclePopupEntry) - width / 2;
+        final float y = vehicleIndex.y(vehiclePopupEntry) - 3 * textSize - (laneN > 0 ? lineHeight : 0);
+        popupBox.set(x - padding, y - textSize - padding, x + width + padding, y + 2 * padding
+                + (laneN > 0 ? lineHeight : 0));
+        popupPaint.setColor(0xc0000000);
+        canvas.drawRect(popupBox, popupPaint);
+        popupPaint.setColor(Color.WHITE);
+        canvas.drawText(popupChars, 0, n, x, y, popupPaint);
+        if (laneN > 0) {
+            canvas.drawText(popupLaneChars, 0, laneN, x, y + lineHeight, popupPaint);
+        }
+        lastVehicleViewed = vehicle.getId();
+    }
+
+    /**
+     * Formats the smoothed metrics of the vehicle's lane into the lane buffer.
+     * 
+     * @return the number of characters, 0 if there are no metrics of the lane yet
+     */
+    private int formatLaneMetrics(Vehicle vehicle) {
+        final LaneMetrics.Snapshot snapshot = laneMetrics == null ? null : laneMetrics.getSnapshot();
+        if (snapshot == null) {
+            return 0;
+        }
+        final LaneMetrics.Layout layout = snapshot.getLayout();
+        final int segmentIndex = layout.segmentIndex(vehiclePopupRoadSegment);
+        if (segmentIndex < 0) {
+            return 0;
+        }
+        final int lane = Math.min(Math.max(vehicle.getLane() - Lane.LANE1, 0), layout.laneCount(segmentIndex) - 1);
+        final int laneIndex = layout.laneOffset(segmentIndex) + lane;
+        int n = 0;
+        n = appendChars(popupLaneChars, n, "lane ");
+        n = appendInt(popupLaneChars, n, Math.round(snapshot.density(laneIndex)));
+        n = appendChars(popupLaneChars, n, " veh/km  ");
+        n = appendInt(popupLaneChars, n, Math.round(snapshot.flow(laneIndex)));
+        n = appendChars(popupLaneChars, n, " veh/h  ");
+        n = appendInt(popupLaneChars, n, Math.round(snapshot.speed(laneIndex) * Units.MS_TO_KMH));
+        n = appendChars(popupLaneChars, n, " km/h");
+        return n;
+    }
+
+    private static int appendChars(char[] buffer, int n, String s) {
+        final int length = Math.min(s.length(), buffer.length - n);
+        s.getChars(0, length, buffer, n);
+        return n + length;
+    }
+
+    private static int appendInt(char[] buffer, int n, long value) {
+        if (value < 0) {
+            buffer[n++] = '-';
+            value = -value;
+        }
+        final int start = n;
+        do {
+            buffer[n++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0 && n < buffer.length);
+        for (int i = start, j = n - 1; i < j; ++i, --j) {
+            final char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        return n;
+    }
+
+    /**
+     * Selects the vehicle drawn nearest to the given view position and highlights it, or clears the selection if there is
+     * none within the tap radius.
+     */
+    private void selectVehicleAt(float viewX, float viewY) {
+        // the canvas maps world coordinates to (world + offset) * scale
+        final float x = viewX / scale - xOffset;
+        final float y = viewY / scale - yOffset;
+        final Vehicle vehicle = vehicleIndex.nearest(x, y, TAP_RADIUS / scale);
+        if (vehicle == null) {
+            clearVehicleSelection();
+        } else {
+            vehicleToHighlightId = vehicle.getId();
+            if (laneMetrics != null) {
+                laneMetrics.setActive(true);
+            }
+            if (vehicleColorMode != VehicleColorMode.HIGHLIGHT_VEHICLE) {
+                vehicleColorModeSave = vehicleColorMode;
+                vehicleColorMode = VehicleColorMode.HIGHLIGHT_VEHICLE;
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Switches the interactive element drawn at the given view position, if any.
+     * 
+     * @return true if an element was hit
+     */
+    private boolean toggleInteractiveElementAt(float viewX, float viewY) {
+        final InteractiveElements elements = interactiveElements;
+        if (elements == null) {
+            return false;
+        }
+        final float x = viewX / scale - xOffset;
+        final float y = viewY / scale - yOffset;
+        final InteractiveElements.Element element = elements.hit(x, y, TAP_RADIUS / scale);
+        if (element == null) {
+            return false;
+        }
+        submit(element);
+        return true;
+    }
+
+    /**
+     * Switches all interactive elements of the current scenario.
+     */
+    public void toggleInteractiveElements() {
+        final InteractiveElements elements = interactiveElements;
+        if (elements == null) {
+            return;
+        }
+        for (int i = 0, n = elements.size(); i < n; ++i) {
+            submit(elements.get(i));
+        }
+    }
+
+    /**
+     * Queues the command for the start of the next time step. While the simulation is not running no step will drain the
+     * queue, so it is drained here at the current simulation time.
+     */
+    public void submit(Command command) {
+        if (interventions == null) {
+            return;
+        }
+        interventions.offer(command);
+        if (simulationRunnable.isPaused() || simulationRunnable.isStopped()) {
+            synchronized (simulationRunnable.dataLock) {
+                interventions.drain(simulationRunnable.simulationTime(), simulationRunnable.iterationCount());
+            }
+            interventions.takeApplied();
+            forceRepaintBackground();
+        }
+    }
+
+    private void clearVehicleSelection() {
+        vehicleToHighlightId = -1;
+        vehiclePopup = null;
+        if (laneMetrics != null) {
+            laneMetrics.setActive(false);
+        }
+        if (vehicleColorMode == VehicleColorMode.HIGHLIGHT_VEHICLE) {
+            vehicleColorMode = vehicleColorModeSave != null ? vehicleColorModeSave : VehicleColorMode.VELOCITY_COLOR;
+        }
+    }
+
     /**
      * Draws the background: everything that does not move each timestep. The background consists of the road segments and the sources and
      * sinks, if they are visible.
@@ -257,7 +778,11 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
      */
     @Override
     protected void drawBackground(Canvas canvas) {
+        if (loading) {
+            return;
+        }
         drawTrafficLights(canvas);
+        drawVariableMessageSigns(canvas);
 
         if (drawSources) {
             drawSources(canvas);
@@ -282,45 +807,89 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     }
 
     /**
-     * Draws each road segment in the road network.
+     * Sets the loading state. While a scenario is loading in the background only the background color is drawn, the road
+     * network is neither read nor drawn.
      * 
-     * @param canvas
+     * @param loading
      */
-    private void drawRoadSegments(Canvas canvas) {
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+        if (loading) {
+            roadGeometries = null;
+            interactiveElements = null;
+            ghostSegments = null;
+            loadStartTime_ns = System.nanoTime();
+        }
+    }
 
+    /**
+     * Computes the bounding boxes of all road segments, their drawing paths are built when they are first visible. May be
+     * called off the UI thread while the view is {@link #setLoading(boolean) loading}.
+     */
+    public void buildGeometryCache() {
+        final RoadSegmentGeometry[] geometries = new RoadSegmentGeometry[roadNetwork.size()];
+        int i = 0;
         for (final RoadSegment roadSegment : roadNetwork) {
-            final RoadMapping roadMapping = roadSegment.roadMapping();
-            assert roadMapping != null;
-            drawRoadSegment(canvas, roadMapping);
-            drawRoadSegmentLines(canvas, roadMapping); // in one step (parallel or sequential update)?!
+            geometries[i++] = new RoadSegmentGeometry(roadSegment);
+        }
+        roadGeometries = geometries;
+    }
+
+    /**
+     * @return the geometries of all road segments, in the order of the road network; builds them if needed
+     */
+    private RoadSegmentGeometry[] geometries() {
+        if (roadGeometries == null) {
+            buildGeometryCache();
         }
+        return roadGeometries;
     }
 
-    private void drawRoadSegment(Canvas canvas, RoadMapping roadMapping) {
+    /**
+     * Builds the index of the traffic lights and variable message signs that can be switched by a tap, from the road
+     * network and the current view configuration.
+     */
+    public void buildInteractiveElements() {
+        final String[] signRoads = viewConfig == null ? new String[0] : viewConfig.getVariableMessageSignRoads();
+        interactiveElements = InteractiveElements.build(roadNetwork, signRoads, diversions);
+    }
 
-        roadPath.reset();
+    /**
+     * Discards the drawing paths, the interactive elements and the road segments of the ghost run, for example after the road network has been rebuilt. They
+     * are rebuilt on the next background redraw.
+     */
+    public void clearGeometryCache() {
+        roadGeometries = null;
+        interactiveElements = null;
+        ghostSegments = null;
+    }
 
-        final double lateralOffset = 0.5 * roadMapping.trafficLaneMin() * roadMapping.laneWidth();
-        final Path path = DrawRoadMapping.drawRoadMapping(roadPath, roadMapping, lateralOffset);
-        if (path == null) {
-            // default drawing splits the road into line sections and draws those
-            final double roadLength = roadMapping.roadLength();
-            final double sectionLength = 20; // draw the road in sections 20 meters long
-            double roadPos = 0.0;
-            RoadMapping.PosTheta posTheta = roadMapping.map(roadPos);
-            roadPath.moveTo((float) posTheta.x, (float) posTheta.y);
-            while (roadPos < roadLength) {
-                roadPos += sectionLength;
-                posTheta = roadMapping.map(roadPos);
-                roadPath.lineTo((float) posTheta.x, (float) posTheta.y);
+    /**
+     * Draws each visible road segment in the road network.
+     * 
+     * @param canvas
+     */
+    private void drawRoadSegments(Canvas canvas) {
+        final RoadSegmentGeometry[] geometries = geometries();
+        // the canvas maps world coordinates to (world + offset) * scale
+        visibleArea.set(-xOffset, -yOffset, getWidth() / scale - xOffset, getHeight() / scale - yOffset);
+        for (int i = 0; i < geometries.length; ++i) {
+            final RoadSegmentGeometry geometry = geometries[i];
+            if (!RectF.intersects(visibleArea, geometry.bounds)) {
+                continue;
             }
+            geometry.ensurePaths();
+            drawRoadSegment(canvas, geometry);
+            drawRoadSegmentLines(canvas, geometry); // in one step (parallel or sequential update)?!
         }
+    }
 
+    private void drawRoadSegment(Canvas canvas, RoadSegmentGeometry geometry) {
         paint.reset();
-        paint.setStrokeWidth((float) roadMapping.roadWidth());
+        paint.setStrokeWidth(geometry.roadWidth);
         paint.setColor(roadColor);
         paint.setStyle(Paint.Style.STROKE);
-        canvas.drawPath(roadPath, paint);
+        canvas.drawPath(geometry.roadPath, paint);
     }
 
     /**
@@ -328,69 +897,79 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
      * 
      * @param g
      */
-    private void drawRoadSegmentLines(Canvas canvas, RoadMapping roadMapping) {
+    private void drawRoadSegmentLines(Canvas canvas, RoadSegmentGeometry geometry) {
 
         paint.reset();
         paint.setStyle(Paint.Style.STROKE);
 
-        double offset;
         // draw the road lines
-        final int laneCount = roadMapping.laneCount();
         paint.setStrokeWidth(1.0f);
         paint.setPathEffect(roadLineDashPathEffect);
         paint.setColor(roadLineColor);
-        for (int lane = 1; lane < laneCount; ++lane) {
-            offset = roadMapping.laneInsideEdgeOffset(lane);
-            linePath.reset();
-            DrawRoadMapping.drawRoadMapping(linePath, roadMapping, offset);
+        for (final Path linePath : geometry.laneLinePaths) {
             canvas.drawPath(linePath, paint);
         }
         // draw the road edges
         paint.setPathEffect(null);
         paint.setColor(roadEdgeColor);
-        offset = roadMapping.laneInsideEdgeOffset(0);
-        linePath.reset();
-        DrawRoadMapping.drawRoadMapping(linePath, roadMapping, offset);
-        canvas.drawPath(linePath, paint);
-
-        offset = roadMapping.laneInsideEdgeOffset(laneCount);
-        linePath.reset();
-        DrawRoadMapping.drawRoadMapping(linePath, roadMapping, offset);
-        canvas.drawPath(linePath, paint);
-
+        canvas.drawPath(geometry.innerEdgePath, paint);
+        canvas.drawPath(geometry.outerEdgePath, paint);
     }
 
     private void drawTrafficLights(Canvas g) {
-        for (final RoadSegment roadSegment : roadNetwork) {
-            drawTrafficLightsOnRoad(g, roadSegment);
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            drawTrafficLightsOnRoad(g, geometries[i]);
         }
     }
 
-    private void drawTrafficLightsOnRoad(Canvas canvas, RoadSegment roadSegment) {
-        if (roadSegment.trafficLights() == null) {
+    private void drawTrafficLightsOnRoad(Canvas canvas, RoadSegmentGeometry geometry) {
+        final TrafficLight[] trafficLights = geometry.trafficLights;
+        if (trafficLights.length == 0) {
             return;
         }
-        final RoadMapping roadMapping = roadSegment.roadMapping();
+        final RoadMapping roadMapping = geometry.roadSegment.roadMapping();
         assert roadMapping != null;
         paint.reset();
         paint.setStyle(Paint.Style.FILL);
         final int offset = (int) ((roadMapping.laneCount() / 2.0 + 1.5) * roadMapping.laneWidth());
         // final int size = (int) (2 * roadMapping.laneWidth());
         final int radius = (int) (1.8 * roadMapping.laneWidth());
-        for (final TrafficLight trafficLight : roadSegment.trafficLights()) {
+        for (final TrafficLight trafficLight : trafficLights) {
             paint.setColor(Color.DKGRAY);
             final RoadMapping.PosTheta posTheta = roadMapping.map(trafficLight.position(), offset);
-            Rect rect = new Rect((int) posTheta.x + offset - radius, (int) posTheta.y + offset - radius,
+            trafficLightRect.set((int) posTheta.x + offset - radius, (int) posTheta.y + offset - radius,
                     (int) posTheta.x + offset + radius, (int) posTheta.y + offset + radius);
-            // trafficLightRegion = new Region(new Rect((int) posTheta.x + offset - radius-(int)trafficLight.position(), (int) posTheta.y +
-            // offset - radius, (int) posTheta.x + offset + radius-(int)trafficLight.position(), (int) posTheta.y + offset + radius));
-            canvas.drawRect(rect, paint);
+            canvas.drawRect(trafficLightRect, paint);
             final TrafficLightStatus status = trafficLight.status();
             setTrafficlightPaint(status);
             canvas.drawCircle((int) posTheta.x + offset, (int) posTheta.y + offset, radius, paint);
         }
     }
 
+    /**
+     * Draws the markers of the variable message signs, green while the sign is shown and grey otherwise.
+     */
+    private void drawVariableMessageSigns(Canvas canvas) {
+        if (interactiveElements == null) {
+            buildInteractiveElements();
+        }
+        final InteractiveElements elements = interactiveElements;
+        paint.reset();
+        paint.setStyle(Paint.Style.FILL);
+        for (int i = 0, n = elements.size(); i < n; ++i) {
+            final InteractiveElements.Element element = elements.get(i);
+            if (element instanceof InteractiveElements.VariableMessageSignElement) {
+                final boolean active = ((InteractiveElements.VariableMessageSignElement) element).isActive();
+                paint.setColor(Color.DKGRAY);
+                canvas.drawRect(element.bounds, paint);
+                paint.setColor(active ? Color.GREEN : Color.LTGRAY);
+                canvas.drawCircle(element.bounds.centerX(), element.bounds.centerY(), 0.35f * element.bounds.width(),
+                        paint);
+            }
+        }
+    }
+
     private void setTrafficlightPaint(final TrafficLightStatus status) {
         if (status == TrafficLightStatus.GREEN) {
             paint.setColor(Color.GREEN);
@@ -404,25 +983,28 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     }
 
     private void drawSpeedLimits(Canvas g) {
-        for (final RoadSegment roadSegment : roadNetwork) {
-            drawSpeedLimitsOnRoad(g, roadSegment);
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            drawSpeedLimitsOnRoad(g, geometries[i]);
         }
     }
 
     private void drawSlopes(Canvas g) {
-        for (final RoadSegment roadSegment : roadNetwork) {
-            drawSlopesOnRoad(g, roadSegment);
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            drawSlopesOnRoad(g, geometries[i]);
         }
     }
 
-    private void drawSpeedLimitsOnRoad(Canvas canvas, RoadSegment roadSegment) {
-        if (roadSegment.speedLimits() == null) {
+    private void drawSpeedLimitsOnRoad(Canvas canvas, RoadSegmentGeometry geometry) {
+        final SpeedLimit[] speedLimits = geometry.speedLimits;
+        if (speedLimits.length == 0) {
             return;
         }
         paint.reset();
         paint.setStyle(Paint.Style.FILL);
 
-        final RoadMapping roadMapping = roadSegment.roadMapping();
+        final RoadMapping roadMapping = geometry.roadSegment.roadMapping();
         assert roadMapping != null;
         final double offset = -(roadMapping.laneCount() / 2.0 + 1.5) * roadMapping.laneWidth();
         final int redRadius = (int) (3 * roadMapping.laneWidth()) / 2;
@@ -430,7 +1012,7 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
         final int offsetY = -40;
         final int xOffset = -14;
 
-        for (final SpeedLimit speedLimit : roadSegment.speedLimits()) {
+        for (final SpeedLimit speedLimit : speedLimits) {
 
             final RoadMapping.PosTheta posTheta = roadMapping.map(speedLimit.getPosition(), offset);
 
@@ -442,37 +1024,41 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
                 canvas.drawCircle((int) posTheta.x + xOffset, (int) posTheta.y + redRadius - offsetY, whiteRadius,
                         paint);
 
-                final String text = String.valueOf((int) (speedLimit.getSpeedLimitKmh()));
+                final int n = appendInt(textChars, 0, (int) (speedLimit.getSpeedLimitKmh()));
                 paint.setColor(Color.BLACK);
                 paint.setAntiAlias(true);
                 paint.setTextSize(14);
-                canvas.drawText(text, (int) (posTheta.x + xOffset - 7), (int) (posTheta.y + redRadius + 4 - offsetY),
-                        paint);
+                canvas.drawText(textChars, 0, n, (int) (posTheta.x + xOffset - 7),
+                        (int) (posTheta.y + redRadius + 4 - offsetY), paint);
             } else {
                 // TODO clearing sign
             }
         }
     }
 
-    private void drawSlopesOnRoad(Canvas canvas, RoadSegment roadSegment) {
-        if (roadSegment.slopes() == null) {
+    private void drawSlopesOnRoad(Canvas canvas, RoadSegmentGeometry geometry) {
+        final Slope[] slopes = geometry.slopes;
+        if (slopes.length == 0) {
             return;
         }
-        final RoadMapping roadMapping = roadSegment.roadMapping();
+        final RoadMapping roadMapping = geometry.roadSegment.roadMapping();
         final double offset = -(roadMapping.laneCount() / 2.0 + 1.5) * (roadMapping.laneWidth() + 1);
-        for (final Slope slope : roadSegment.slopes()) {
+        for (final Slope slope : slopes) {
             final RoadMapping.PosTheta posTheta = roadMapping.map(slope.getPosition(), offset);
             final double gradient = slope.getGradient() * 100;
             if (gradient != 0) {
                 paint.setColor(Color.BLACK);
-                final String text = String.valueOf((int) (gradient)) + " %";
-                canvas.drawText(text, (int) (posTheta.x - 20), (int) (posTheta.y + 20), paint);
+                int n = appendInt(textChars, 0, (int) (gradient));
+                n = appendChars(textChars, n, " %");
+                canvas.drawText(textChars, 0, n, (int) (posTheta.x - 20), (int) (posTheta.y + 20), paint);
             }
         }
     }
 
     private void drawRoadSectionIds(Canvas canvas) {
-        for (final RoadSegment roadSegment : roadNetwork) {
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            final RoadSegment roadSegment = geometries[i].roadSegment;
             final RoadMapping roadMapping = roadSegment.roadMapping();
             assert roadMapping != null;
             // final int radius = (int) ((roadMapping.laneCount() + 2) * roadMapping.laneWidth());
@@ -482,14 +1068,18 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
             paint.setColor(Color.BLACK);
             paint.setAntiAlias(true);
             paint.setTextSize(12);
-            canvas.drawText("Info: " + roadSegment.userId(), (int) (posTheta.x + 16), (int) (posTheta.y + 16), paint);
+            int n = appendChars(textChars, 0, "Info: ");
+            n = appendChars(textChars, n, roadSegment.userId());
+            canvas.drawText(textChars, 0, n, (int) (posTheta.x + 16), (int) (posTheta.y + 16), paint);
         }
     }
 
     private void drawSources(Canvas canvas) {
         paint.reset();
         paint.setStyle(Paint.Style.FILL);
-        for (final RoadSegment roadSegment : roadNetwork) {
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            final RoadSegment roadSegment = geometries[i].roadSegment;
             final RoadMapping roadMapping = roadSegment.roadMapping();
             assert roadMapping != null;
             final int radius = (int) ((roadMapping.laneCount() + 2) * roadMapping.laneWidth());
@@ -505,18 +1095,14 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
                 paint.setColor(Color.BLACK);
                 paint.setAntiAlias(true);
                 paint.setTextSize(20);
-                StringBuilder inflowStringBuilder = new StringBuilder();
-                inflowStringBuilder.append("set/target inflow: ");
-                inflowStringBuilder.append((int) (Units.INVS_TO_INVH * trafficSource
-                        .getTotalInflow(getSimulationTime())));
-                inflowStringBuilder.append("/");
-                inflowStringBuilder.append((int) (Units.INVS_TO_INVH * trafficSource.measuredInflow()));
-                inflowStringBuilder.append(" veh/h");
-                inflowStringBuilder.append(" (");
-                inflowStringBuilder.append(trafficSource.getQueueLength());
-                inflowStringBuilder.append(")");
-                canvas.drawText(inflowStringBuilder.toString(), (int) (posTheta.x) + radius, (int) (posTheta.y)
-                        + radius, paint);
+                int n = appendChars(textChars, 0, "set/target inflow: ");
+                n = appendInt(textChars, n, (int) (Units.INVS_TO_INVH * trafficSource.getTotalInflow(getSimulationTime())));
+                n = appendChars(textChars, n, "/");
+                n = appendInt(textChars, n, (int) (Units.INVS_TO_INVH * trafficSource.measuredInflow()));
+                n = appendChars(textChars, n, " veh/h (");
+                n = appendInt(textChars, n, trafficSource.getQueueLength());
+                n = appendChars(textChars, n, ")");
+                canvas.drawText(textChars, 0, n, (int) (posTheta.x) + radius, (int) (posTheta.y) + radius, paint);
             }
         }
     }
@@ -524,7 +1110,9 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
     private void drawSinks(Canvas canvas) {
         paint.reset();
         paint.setStyle(Paint.Style.FILL);
-        for (final RoadSegment roadSegment : roadNetwork) {
+        final RoadSegmentGeometry[] geometries = geometries();
+        for (int i = 0; i < geometries.length; ++i) {
+            final RoadSegment roadSegment = geometries[i].roadSegment;
             final RoadMapping roadMapping = roadSegment.roadMapping();
             assert roadMapping != null;
             final int radius = (int) ((roadMapping.laneCount() + 2) * roadMapping.laneWidth());
@@ -536,11 +1124,13 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
                 paint.setColor(Color.BLACK);
                 posTheta = roadMapping.endPos();
                 canvas.drawCircle((int) posTheta.x, (int) posTheta.y, radius, paint);
-                String outflowString = "outflow: " + (int) (Units.INVS_TO_INVH * sink.measuredOutflow()) + " veh/h";
                 // outflow text
+                int n = appendChars(textChars, 0, "outflow: ");
+                n = appendInt(textChars, n, (int) (Units.INVS_TO_INVH * sink.measuredOutflow()));
+                n = appendChars(textChars, n, " veh/h");
                 paint.setAntiAlias(true);
                 paint.setTextSize(20);
-                canvas.drawText(outflowString, (int) (posTheta.x) + radius, (int) (posTheta.y) + radius, paint);
+                canvas.drawText(textChars, 0, n, (int) (posTheta.x) + radius, (int) (posTheta.y) + radius, paint);
             }
         }
     }
@@ -552,10 +1142,22 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
      * @param simulationTime
      */
     protected int vehicleColor(Vehicle vehicle, double simulationTime) {
+        if (vehicleColorMode == VehicleColorMode.HIGHLIGHT_VEHICLE) {
+            if (vehicle.getId() == vehicleToHighlightId) {
+                return HIGHLIGHT_COLOR;
+            }
+            // all other vehicles keep the colors of the mode active before the selection
+            return vehicleColor(vehicle, simulationTime, vehicleColorModeSave != null ? vehicleColorModeSave
+                    : VehicleColorMode.VELOCITY_COLOR);
+        }
+        return vehicleColor(vehicle, simulationTime, vehicleColorMode);
+    }
+
+    private int vehicleColor(Vehicle vehicle, double simulationTime, VehicleColorMode colorMode) {
         int color;
         final int count;
 
-        switch (vehicleColorMode) {
+        switch (colorMode) {
         case VELOCITY_COLOR:
             if (vehicle.exitRoadSegmentId() != Vehicle.ROAD_SEGMENT_ID_NOT_SET) {
                 color = Color.WHITE;
@@ -605,13 +1207,14 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
         final float h = (float) (hue_vmin + vRelative * (hue_vmax - hue_vmin));
         final float s = (float) 1.0;
         final float b = (float) 0.92;
-        int[] rgbArray = hsv2rgb(h, s, b);
-
-        final int rgb = Color.rgb(rgbArray[0], rgbArray[1], rgbArray[2]);
+        final int rgb = hsv2rgb(h, s, b);
         return v > 0.1 ? rgb : Color.BLACK;
     }
 
-    private int[] hsv2rgb(float h, float s, float v) {
+    /**
+     * @return the color as packed argb, so that no array is created for each vehicle
+     */
+    private static int hsv2rgb(float h, float s, float v) {
         h = (h % 1 + 1) % 1;
         int i = (int) FloatMath.floor(h * 6);
         double f = h * 6 - i;
@@ -621,44 +1224,44 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
 
         switch (i) {
         case 0:
-            return new int[] { (int) (v * 256), (int) (t * 256), (int) (p * 256) };
+            return Color.rgb((int) (v * 256), (int) (t * 256), (int) (p * 256));
         case 1:
-            return new int[] { (int) (q * 256), (int) (v * 256), (int) (p * 256) };
+            return Color.rgb((int) (q * 256), (int) (v * 256), (int) (p * 256));
         case 2:
-            return new int[] { (int) (p * 256), (int) (v * 256), (int) (t * 256) };
+            return Color.rgb((int) (p * 256), (int) (v * 256), (int) (t * 256));
         case 3:
-            return new int[] { (int) (p * 256), (int) (q * 256), (int) (v * 256) };
+            return Color.rgb((int) (p * 256), (int) (q * 256), (int) (v * 256));
         case 4:
-            return new int[] { (int) (t * 256), (int) (p * 256), (int) (v * 256) };
+            return Color.rgb((int) (t * 256), (int) (p * 256), (int) (v * 256));
         case 5:
-            return new int[] { (int) (v * 256), (int) (p * 256), (int) (q * 256) };
+            return Color.rgb((int) (v * 256), (int) (p * 256), (int) (q * 256));
         }
-        return null;
+        return Color.BLACK;
     }
 
-    protected void initGraphicConfigFieldsFromProperties(Properties properties) {
-        setDrawRoadId(Boolean.parseBoolean(properties.getProperty("drawRoadId", "true")));
-        setDrawSinks(Boolean.parseBoolean(properties.getProperty("drawSinks", "true")));
-        setDrawSources(Boolean.parseBoolean(properties.getProperty("drawSources", "true")));
-        setDrawSlopes(Boolean.parseBoolean(properties.getProperty("drawSlopes", "true")));
-        setDrawSpeedLimits(Boolean.parseBoolean(properties.getProperty("drawSpeedLimits", "true")));
-
-        backgroundColor = Color.parseColor("#" + properties.getProperty("backgroundColor", "303030"));
-        roadColor = Color.parseColor("#" + properties.getProperty("roadColor", "808080"));
-        roadEdgeColor = Color.parseColor("#" + properties.getProperty("roadEdgeColor", "222222"));
-        roadLineColor = Color.parseColor("#" + properties.getProperty("roadLineColor", "DDDDDD"));
-        sourceColor = Color.parseColor("#" + properties.getProperty("sourceColor", "FFFFFF"));
-        sinkColor = Color.parseColor("#" + properties.getProperty("sinkColor", "000000"));
-        setVehicleColorMode(VehicleColorMode.valueOf(properties.getProperty("vehicleColorMode", "VELOCITY_COLOR")));
-        setVmaxForColorSpectrum(Double.parseDouble(properties.getProperty("vmaxForColorSpectrum", "140")));
-
-        lineWidth = Float.parseFloat(properties.getProperty("lineWidth", "1.0"));
-        lineLength = Float.parseFloat(properties.getProperty("lineLength", "5.0"));
-        gapLength = Float.parseFloat(properties.getProperty("gapLength", "15.0"));
-        gapLengthExit = Float.parseFloat(properties.getProperty("gapLengthExit", "6.0"));
-
-        scale = Float.parseFloat(properties.getProperty("initialScale", "0.707106781"));
-        setSleepTime(Integer.parseInt(properties.getProperty("initial_sleep_time", "20")));
+    protected void initGraphicConfigFields(ViewConfig viewConfig) {
+        setDrawRoadId(viewConfig.isDrawRoadId());
+        setDrawSinks(viewConfig.isDrawSinks());
+        setDrawSources(viewConfig.isDrawSources());
+        setDrawSlopes(viewConfig.isDrawSlopes());
+        setDrawSpeedLimits(viewConfig.isDrawSpeedLimits());
+
+        backgroundColor = viewConfig.getBackgroundColor();
+        roadColor = viewConfig.getRoadColor();
+        roadEdgeColor = viewConfig.getRoadEdgeColor();
+        roadLineColor = viewConfig.getRoadLineColor();
+        sourceColor = viewConfig.getSourceColor();
+        sinkColor = viewConfig.getSinkColor();
+        setVehicleColorMode(viewConfig.getVehicleColorMode());
+        setVmaxForColorSpectrum(viewConfig.getVmaxForColorSpectrum());
+
+        lineWidth = viewConfig.getLineWidth();
+        lineLength = viewConfig.getLineLength();
+        gapLength = viewConfig.getGapLength();
+        gapLengthExit = viewConfig.getGapLengthExit();
+
+        scale = viewConfig.getInitialScale();
+        setSleepTime(viewConfig.getInitialSleepTime());
     }
 
     public void setStatusControlCallbacks(StatusControlCallbacks statusCallbacks) {
@@ -745,7 +1348,8 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
 
     /**
      * <p>
-     * Touch events are used to drag and resize the view.
+     * Touch events are used to drag and resize the view. A tap switches the traffic light or variable message sign under
+     * it, otherwise it selects the vehicle under it or clears the selection.
      * </p>
      */
     @Override
@@ -763,6 +1367,14 @@ public class MovSimTrafficView extends ViewBase implements UpdateDrawingCallback
             yOffsetSave = yOffset;
             break;
         case MotionEvent.ACTION_UP:
+            if (touchMode == TOUCH_MODE_DRAG && Math.abs(event.getX() - startDragX) < touchSlop
+                    && Math.abs(event.getY() - startDragY) < touchSlop) {
+                if (!toggleInteractiveElementAt(event.getX(), event.getY())) {
+                    selectVehicleAt(event.getX(), event.getY());
+                }
+            }
+            touchMode = TOUCH_MODE_NONE;
+            break;
         case ACTION_POINTER_UP:
             touchMode = TOUCH_MODE_NONE;
             break;
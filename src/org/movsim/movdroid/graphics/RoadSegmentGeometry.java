@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.movsim.simulator.roadnetwork.RoadMapping;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.Slope;
+import org.movsim.simulator.roadnetwork.SpeedLimit;
+import org.movsim.simulator.roadnetwork.TrafficLight;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Drawing paths of a road segment: the road itself, the lane dividers and the two road edges. Only the bounding box is
+ * computed when the scenario is loaded, the paths are built the first time the road segment is visible and then reused for
+ * every redraw of the background. The traffic lights, speed limits and slopes of the road segment are copied into
+ * arrays, so that drawing them does not create an iterator each time.
+ */
+class RoadSegmentGeometry {
+
+    // sampling distance along the road for the bounding box
+    private static final double BOUNDS_SECTION_LENGTH = 20;
+
+    final RoadSegment roadSegment;
+    final float roadWidth;
+    final RectF bounds = new RectF();
+    private boolean pathsBuilt;
+    final Path roadPath = new Path();
+    Path[] laneLinePaths;
+    final Path innerEdgePath = new Path();
+    final Path outerEdgePath = new Path();
+    final TrafficLight[] trafficLights;
+    final SpeedLimit[] speedLimits;
+    final Slope[] slopes;
+
+    RoadSegmentGeometry(RoadSegment roadSegment) {
+        this.roadSegment = roadSegment;
+        trafficLights = toList(roadSegment.trafficLights()).toArray(new TrafficLight[0]);
+        speedLimits = toList(roadSegment.speedLimits()).toArray(new SpeedLimit[0]);
+        slopes = toList(roadSegment.slopes()).toArray(new Slope[0]);
+        final RoadMapping roadMapping = roadSegment.roadMapping();
+        assert roadMapping != null;
+        roadWidth = (float) roadMapping.roadWidth();
+
+        final double roadLength = roadMapping.roadLength();
+        RoadMapping.PosTheta posTheta = roadMapping.map(0.0);
+        bounds.set((float) posTheta.x, (float) posTheta.y, (float) posTheta.x, (float) posTheta.y);
+        double roadPos = 0.0;
+        while (roadPos < roadLength) {
+            roadPos = Math.min(roadPos + BOUNDS_SECTION_LENGTH, roadLength);
+            posTheta = roadMapping.map(roadPos);
+            bounds.union((float) posTheta.x, (float) posTheta.y);
+        }
+        // the mapping gives the road center line, the road extends by a road width to each side at most
+        bounds.inset(-roadWidth, -roadWidth);
+    }
+
+    /**
+     * Builds the paths on first use.
+     */
+    void ensurePaths() {
+        if (pathsBuilt) {
+            return;
+        }
+        pathsBuilt = true;
+        final RoadMapping roadMapping = roadSegment.roadMapping();
+        final double lateralOffset = 0.5 * roadMapping.trafficLaneMin() * roadMapping.laneWidth();
+        if (DrawRoadMapping.drawRoadMapping(roadPath, roadMapping, lateralOffset) == null) {
+            // default drawing splits the road into line sections and draws those
+            roadPath.reset();
+            final double roadLength = roadMapping.roadLength();
+            final double sectionLength = 20; // draw the road in sections 20 meters long
+            double roadPos = 0.0;
+            RoadMapping.PosTheta posTheta = roadMapping.map(roadPos);
+            roadPath.moveTo((float) posTheta.x, (float) posTheta.y);
+            while (roadPos < roadLength) {
+                roadPos += sectionLength;
+                posTheta = roadMapping.map(roadPos);
+                roadPath.lineTo((float) posTheta.x, (float) posTheta.y);
+            }
+        }
+
+        final int laneCount = roadMapping.laneCount();
+        laneLinePaths = new Path[Math.max(0, laneCount - 1)];
+        for (int lane = 1; lane < laneCount; ++lane) {
+            final Path linePath = new Path();
+            DrawRoadMapping.drawRoadMapping(linePath, roadMapping, roadMapping.laneInsideEdgeOffset(lane));
+            laneLinePaths[lane - 1] = linePath;
+        }
+        DrawRoadMapping.drawRoadMapping(innerEdgePath, roadMapping, roadMapping.laneInsideEdgeOffset(0));
+        DrawRoadMapping.drawRoadMapping(outerEdgePath, roadMapping, roadMapping.laneInsideEdgeOffset(laneCount));
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        final List<T> list = new ArrayList<T>();
+        if (iterable != null) {
+            for (final T t : iterable) {
+                list.add(t);
+            }
+        }
+        return list;
+    }
+}
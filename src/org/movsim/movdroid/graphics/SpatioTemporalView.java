@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.graphics;
+
+import org.movsim.movdroid.metrics.SpatioTemporalSampler;
+import org.movsim.movdroid.metrics.SpatioTemporalSampler.Grid;
+import org.movsim.simulator.SimulationRunnable;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * <p>
+ * Time-space diagram of the sampled route: time runs from left to right, the route from bottom to top, the cells are
+ * colored by mean speed with the same spectrum as the vehicles.
+ * </p>
+ * <p>
+ * The diagram is kept in a circular bitmap with one pixel column per time slice, column {@code k} of the grid is stored
+ * in the bitmap column {@code k % capacity}. When a new slice is available only its column is written, the bitmap is
+ * then blitted in two parts so that the newest slice is at the right edge. Existing pixels are never redrawn.
+ * </p>
+ */
+public class SpatioTemporalView extends View implements SimulationRunnable.UpdateStatusCallback {
+
+    private static final int PALETTE_SIZE = 64;
+    private static final int EMPTY_COLOR = 0xff202020;
+
+    private final SpatioTemporalSampler sampler;
+    private final MovSimTrafficView trafficView;
+    private final Paint paint = new Paint();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+
+    // accessed by the UI thread only
+    private final int[] palette = new int[PALETTE_SIZE];
+    private double paletteVmax = -1;
+    private Bitmap bitmap;
+    private int[] columnPixels;
+    private Grid drawnGrid;
+    private long drawnColumns;
+
+    // accessed by the simulation thread only
+    private Grid notifiedGrid;
+    private long notifiedColumns;
+
+    /**
+     * @param context
+     * @param sampler
+     *            the sampler of the route, must be registered as update status callback
+     * @param trafficView
+     *            provides the color spectrum
+     */
+    public SpatioTemporalView(Context context, SpatioTemporalSampler sampler, MovSimTrafficView trafficView) {
+        super(context);
+        this.sampler = sampler;
+        this.trafficView = trafficView;
+        // scaled columns should stay sharp
+        paint.setFilterBitmap(false);
+    }
+
+    /**
+     * Requests a redraw when the sampler has published a new column, called by the simulation thread after each time
+     * step.
+     */
+    @Override
+    public void updateStatus(double simulationTime) {
+        final Grid grid = sampler.getGrid();
+        if (grid == null) {
+            return;
+        }
+        final long columns = grid.columnCount();
+        if (grid != notifiedGrid || columns != notifiedColumns) {
+            notifiedGrid = grid;
+            notifiedColumns = columns;
+            postInvalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final Grid grid = sampler.getGrid();
+        if (grid == null) {
+            canvas.drawColor(EMPTY_COLOR);
+            return;
+        }
+        if (grid != drawnGrid) {
+            resetBitmap(grid);
+        }
+        updatePalette();
+        writeNewColumns(grid);
+
+        // oldest slice at the left edge, newest at the right edge
+        final int capacity = grid.capacity();
+        final int head = (int) (drawnColumns % capacity);
+        final int height = grid.cellCount();
+        final int viewWidth = getWidth();
+        final int split = viewWidth * (capacity - head) / capacity;
+        canvas.drawColor(EMPTY_COLOR);
+        src.set(head, 0, capacity, height);
+        dst.set(0, 0, split, getHeight());
+        canvas.drawBitmap(bitmap, src, dst, paint);
+        if (head > 0) {
+            src.set(0, 0, head, height);
+            dst.set(split, 0, viewWidth, getHeight());
+            canvas.drawBitmap(bitmap, src, dst, paint);
+        }
+    }
+
+    private void resetBitmap(Grid grid) {
+        final int capacity = grid.capacity();
+        final int height = grid.cellCount();
+        if (bitmap == null || bitmap.getWidth() != capacity || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(capacity, height, Bitmap.Config.ARGB_8888);
+            columnPixels = new int[height];
+        }
+        bitmap.eraseColor(EMPTY_COLOR);
+        drawnGrid = grid;
+        drawnColumns = 0;
+    }
+
+    private void updatePalette() {
+        final double vmax = trafficView.getVmaxForColorSpectrum();
+        if (vmax == paletteVmax) {
+            return;
+        }
+        paletteVmax = vmax;
+        for (int i = 0; i < PALETTE_SIZE; ++i) {
+            // the spectrum is in km/h
+            palette[i] = trafficView.getColorAccordingToSpectrum(0, vmax, vmax * i / (PALETTE_SIZE - 1));
+        }
+        // already written columns keep their colors
+    }
+
+    /**
+     * Writes the columns published since the last draw into the bitmap, at most one full turn of the ring.
+     */
+    private void writeNewColumns(Grid grid) {
+        final long columnCount = grid.columnCount();
+        final int capacity = grid.capacity();
+        final int height = grid.cellCount();
+        final double vmaxMs = paletteVmax / 3.6;
+        for (long column = Math.max(drawnColumns, columnCount - capacity); column < columnCount; ++column) {
+            for (int cell = 0; cell < height; ++cell) {
+                final float speed = grid.speed(column, cell);
+                final int pixel;
+                if (Float.isNaN(speed)) {
+                    pixel = EMPTY_COLOR;
+                } else {
+                    final int index = (int) (speed / vmaxMs * (PALETTE_SIZE - 1) + 0.5);
+                    pixel = palette[Math.min(Math.max(index, 0), PALETTE_SIZE - 1)];
+                }
+                // the start of the route at the bottom
+                columnPixels[height - 1 - cell] = pixel;
+            }
+            bitmap.setPixels(columnPixels, 0, 1, (int) (column % capacity), 0, 1, height);
+        }
+        drawnColumns = columnCount;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.graphics;
+
+import java.util.Arrays;
+
+import org.movsim.simulator.vehicles.Vehicle;
+
+/**
+ * <p>
+ * Spatial hash of the vehicle positions drawn in a frame, for hit-testing touches.
+ * </p>
+ * <p>
+ * The index is cleared at the start of each frame and filled with the center of each vehicle as it is drawn, so building
+ * it costs O(1) per vehicle on top of the drawing and it always matches what is on the screen. The world is divided into
+ * square cells which are hashed into a fixed table of chains; a query visits the cells within its radius only. The
+ * arrays grow with the number of vehicles and are reused, no memory is allocated per frame. Used by the UI thread only.
+ * </p>
+ */
+final class VehicleSpatialIndex {
+
+    private static final int TABLE_SIZE = 1024;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    private final float cellSize;
+    private final int[] heads = new int[TABLE_SIZE];
+    private int[] next = new int[256];
+    private float[] xs = new float[256];
+    private float[] ys = new float[256];
+    private Vehicle[] vehicles = new Vehicle[256];
+    private int size;
+
+    /**
+     * @param cellSize
+     *            cell edge length in world coordinates (m)
+     */
+    VehicleSpatialIndex(float cellSize) {
+        this.cellSize = cellSize;
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(heads, -1);
+        // drop the references to vehicles of the previous frame
+        Arrays.fill(vehicles, 0, size, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a vehicle at the given world position.
+     * 
+     * @return the index of the entry
+     */
+    int add(Vehicle vehicle, float x, float y) {
+        if (size == next.length) {
+            grow(2 * size);
+        }
+        final int entry = size++;
+        xs[entry] = x;
+        ys[entry] = y;
+        vehicles[entry] = vehicle;
+        final int bucket = bucket(cell(x), cell(y));
+        next[entry] = heads[bucket];
+        heads[bucket] = entry;
+        return entry;
+    }
+
+    // Arrays.copyOf needs API level 9
+    private void grow(int capacity) {
+        final int[] newNext = new int[capacity];
+        System.arraycopy(next, 0, newNext, 0, size);
+        next = newNext;
+        final float[] newXs = new float[capacity];
+        System.arraycopy(xs, 0, newXs, 0, size);
+        xs = newXs;
+        final float[] newYs = new float[capacity];
+        System.arraycopy(ys, 0, newYs, 0, size);
+        ys = newYs;
+        final Vehicle[] newVehicles = new Vehicle[capacity];
+        System.arraycopy(vehicles, 0, newVehicles, 0, size);
+        vehicles = newVehicles;
+    }
+
+    /**
+     * Returns the vehicle nearest to the given world position within the given radius.
+     * 
+     * @param radius
+     *            search radius in world coordinates; the cells within this distance of the position are searched, so a
+     *            radius larger than the cell size (a zoomed-out view) costs more cells
+     * @return the nearest vehicle or null if there is none within the radius
+     */
+    Vehicle nearest(float x, float y, float radius) {
+        final int minCellX = cell(x - radius);
+        final int maxCellX = cell(x + radius);
+        final int minCellY = cell(y - radius);
+        final int maxCellY = cell(y + radius);
+        float best = radius * radius;
+        Vehicle nearest = null;
+        if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > TABLE_SIZE) {
+            // more cells than buckets, each bucket would be visited repeatedly
+            for (int entry = 0; entry < size; ++entry) {
+                final float dx = xs[entry] - x;
+                final float dy = ys[entry] - y;
+                final float distance2 = dx * dx + dy * dy;
+                if (distance2 <= best) {
+                    best = distance2;
+                    nearest = vehicles[entry];
+                }
+            }
+            return nearest;
+        }
+        for (int cx = minCellX; cx <= maxCellX; ++cx) {
+            for (int cy = minCellY; cy <= maxCellY; ++cy) {
+                for (int entry = heads[bucket(cx, cy)]; entry >= 0; entry = next[entry]) {
+                    // entries of other cells hashed into the same bucket are rejected by the distance test
+                    final float dx = xs[entry] - x;
+                    final float dy = ys[entry] - y;
+                    final float distance2 = dx * dx + dy * dy;
+                    if (distance2 <= best) {
+                        best = distance2;
+                        nearest = vehicles[entry];
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    float x(int entry) {
+        return xs[entry];
+    }
+
+    float y(int entry) {
+        return ys[entry];
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static int bucket(int cellX, int cellY) {
+        return (cellX * 73856093 ^ cellY * 19349663) & TABLE_MASK;
+    }
+}
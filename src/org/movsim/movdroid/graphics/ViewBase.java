@@ -25,6 +25,9 @@
  */
 package org.movsim.movdroid.graphics;
 
+import org.movsim.movdroid.telemetry.AllocationCheck;
+import org.movsim.movdroid.telemetry.Telemetry;
+import org.movsim.movdroid.telemetry.TelemetryOverlay;
 import org.movsim.simulator.SimulationRunnable;
 
 import android.annotation.SuppressLint;
@@ -71,6 +74,8 @@ public abstract class ViewBase extends View {
 
     // drawing support
     private Bitmap backgroundBitmap;
+    // draws into the background bitmap, reused for each redraw
+    private final Canvas backgroundCanvas = new Canvas();
     protected int backgroundColor;
     private final ShapeDrawable mDrawable;
 
@@ -83,6 +88,7 @@ public abstract class ViewBase extends View {
     protected float xOffset;
     protected float yOffset;
     private Matrix transform = new Matrix();
+    private final TelemetryOverlay telemetryOverlay = new TelemetryOverlay();
 
     /**
      * <p>
@@ -112,6 +118,7 @@ public abstract class ViewBase extends View {
         super(context);
         this.simulationRunnable = simulationRunnable;
         backgroundBitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        backgroundCanvas.setBitmap(backgroundBitmap);
 
         // TODO better solution to paint background
         mDrawable = new ShapeDrawable(new RectShape());
@@ -164,6 +171,7 @@ public abstract class ViewBase extends View {
      */
     private void setSize(int width, int height) {
         backgroundBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        backgroundCanvas.setBitmap(backgroundBitmap);
         drawBackgroundBitmap();
     }
 
@@ -225,6 +233,14 @@ public abstract class ViewBase extends View {
         setTransform();
     }
 
+    /**
+     * @return the time spent drawing the foreground with the data lock held since the animation was started, in
+     *         milliseconds
+     */
+    public long getTotalAnimationTime() {
+        return totalAnimationTime;
+    }
+
     public void forceRepaintBackground() {
         drawBackgroundBitmap();
         invalidate();
@@ -240,12 +256,29 @@ public abstract class ViewBase extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         assert backgroundBitmap != null;
+        Telemetry.frameDrawn(System.nanoTime());
+        final boolean allocationCheck = AllocationCheck.isRunning();
+        if (allocationCheck && AllocationCheck.isBackgroundDue()) {
+            // count the background drawing at least once
+            drawBackgroundBitmap();
+        }
         // blit the previously drawn background bitmap
         canvas.drawBitmap(backgroundBitmap, 0, 0, paint);
         // and then draw the simulation
+        canvas.save();
         canvas.scale(scale, scale);
         canvas.translate(xOffset, yOffset);
+        if (allocationCheck) {
+            AllocationCheck.drawStarted();
+        }
         drawForeground(canvas);
+        if (allocationCheck) {
+            AllocationCheck.foregroundDrawn();
+        }
+        canvas.restore();
+        if (Telemetry.isOverlayVisible()) {
+            telemetryOverlay.draw(canvas);
+        }
     }
 
     /**
@@ -263,14 +296,25 @@ public abstract class ViewBase extends View {
      */
     protected void drawBackgroundBitmap() {
         assert backgroundBitmap != null;
-        final Canvas bitmapCanvas = new Canvas(backgroundBitmap);
+        final long start_ns = System.nanoTime();
+        final Canvas bitmapCanvas = backgroundCanvas;
+        final boolean allocationCheck = AllocationCheck.isRunning();
+        if (allocationCheck) {
+            AllocationCheck.drawStarted();
+        }
         // must clear the background before transforms
         bitmapCanvas.drawColor(backgroundColor);
         mDrawable.getPaint().setColor(backgroundColor);
         mDrawable.draw(bitmapCanvas);
+        bitmapCanvas.save();
         bitmapCanvas.scale(scale, scale);
         bitmapCanvas.translate(xOffset, yOffset);
         drawBackground(bitmapCanvas);
+        bitmapCanvas.restore();
+        if (allocationCheck) {
+            AllocationCheck.backgroundDrawn();
+        }
+        Telemetry.BACKGROUND_RENDER.record(System.nanoTime() - start_ns);
     }
 
     /**
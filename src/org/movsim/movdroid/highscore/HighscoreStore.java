@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.highscore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.movsim.movdroid.util.HighscoreEntry;
+import org.movsim.movdroid.util.HighscoreEntry.Quantity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Highscore store of a project, made of two files in the given directory:
+ * <ul>
+ * <li>{@code <project>_highscore.log}: append-only log of the entries. Each record is {@code int length, payload, int crc}
+ * of the payload, so that a record torn by a crash is detected and cut off when the store is opened.</li>
+ * <li>{@code <project>_highscore.idx}: binary index of the logged entries with one section per {@link Quantity}, each
+ * sorted by that quantity, {@code double value, long log offset} per entry, behind a header with the log length it
+ * covers.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * New entries are appended to the log and kept in a small delta, an {@link OrderStatisticTree} per quantity, until the
+ * delta is merged into the index (compaction). The sorted index sections are memory-mapped, so the rank of a value and the
+ * entry at a given rank are found in O(log n) for every quantity without reading the entries, and only the entries
+ * actually listed are read from the log. The index is replaced atomically: it is written to a temporary file, synced and
+ * renamed over the old one. If the index is missing, damaged or of an older version it is rebuilt from the log.
+ * </p>
+ * <p>
+ * Smaller values rank better for all quantities. Entries with equal value are ordered by their position in the log, so an
+ * entry ranks behind the older entries with the same value.
+ * </p>
+ */
+public class HighscoreStore {
+
+    static final Logger logger = LoggerFactory.getLogger(HighscoreStore.class);
+
+    public static final String LOG_ENDING = "_highscore.log";
+    public static final String INDEX_ENDING = "_highscore.idx";
+
+    static final int INDEX_MAGIC = 0x4D484931; // "MHI1"
+    static final short INDEX_VERSION = 2;
+    static final int INDEX_HEADER_SIZE = 24;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    /** delta size at which the delta is merged into the index */
+    static final int COMPACTION_THRESHOLD = 16;
+
+    private static final Quantity[] QUANTITIES = Quantity.values();
+
+    private final File logFile;
+    private final File indexFile;
+    private final boolean created;
+    private final RandomAccessFile log;
+
+    private ByteBuffer index;
+    private int indexCount;
+    private long indexedLogLength;
+    private final OrderStatisticTree[] delta = new OrderStatisticTree[QUANTITIES.length];
+    // entries read from the log since the store was opened, by log offset
+    private final Map<Long, HighscoreEntry> records = new HashMap<Long, HighscoreEntry>();
+
+    private HighscoreStore(File directory, String projectName) throws IOException {
+        logFile = new File(directory, projectName + LOG_ENDING);
+        indexFile = new File(directory, projectName + INDEX_ENDING);
+        created = !logFile.exists();
+        log = new RandomAccessFile(logFile, "rw");
+        for (int q = 0; q < QUANTITIES.length; ++q) {
+            delta[q] = new OrderStatisticTree();
+        }
+        readIndex();
+        scanLog(indexedLogLength);
+        if (deltaSize() >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Opens the highscore store of the given project, creating it if it does not exist.
+     * 
+     * @param directory
+     * @param projectName
+     * @return the store
+     * @throws IOException
+     */
+    public static HighscoreStore open(File directory, String projectName) throws IOException {
+        return new HighscoreStore(directory, projectName);
+    }
+
+    /**
+     * @return true if the store did not exist before it was opened
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    public synchronized int size() {
+        return indexCount + deltaSize();
+    }
+
+    private int deltaSize() {
+        return delta[0].size();
+    }
+
+    /**
+     * Returns the rank the given value would get for the given quantity, the entries already stored with the same value
+     * rank before it.
+     * 
+     * @param quantity
+     * @param value
+     * @return the rank, starting at 1
+     */
+    public synchronized int rank(Quantity quantity, double value) {
+        return 1 + indexUpperBound(quantity.ordinal(), value) + delta[quantity.ordinal()].countLessOrEqual(value);
+    }
+
+    /**
+     * Returns the rank the given entry would get for the given quantity, see {@link #rank(Quantity, double)}.
+     */
+    public int rank(Quantity quantity, HighscoreEntry entry) {
+        return rank(quantity, entry.getQuantity(quantity));
+    }
+
+    /**
+     * Appends the entry to the log and syncs the log to the storage.
+     * 
+     * @param entry
+     * @throws IOException
+     */
+    public synchronized void add(HighscoreEntry entry) throws IOException {
+        addToDelta(entry, append(entry));
+        log.getFD().sync();
+        if (deltaSize() >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Appends all entries to the log with a single sync, for example when importing old highscores.
+     */
+    public synchronized void addAll(List<HighscoreEntry> entries) throws IOException {
+        for (final HighscoreEntry entry : entries) {
+            addToDelta(entry, append(entry));
+        }
+        log.getFD().sync();
+        if (deltaSize() >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the best entries for the given quantity in rank order.
+     * 
+     * @param quantity
+     * @param count
+     *            maximum number of entries
+     * @return the entries
+     * @throws IOException
+     */
+    public synchronized List<HighscoreEntry> top(Quantity quantity, int count) throws IOException {
+        final int q = quantity.ordinal();
+        final OrderStatisticTree tree = delta[q];
+        final int n = Math.min(count, size());
+        final List<HighscoreEntry> entries = new ArrayList<HighscoreEntry>(n);
+        int i = 0;
+        int j = 0;
+        while (entries.size() < n) {
+            final long offset;
+            if (j >= tree.size()
+                    || (i < indexCount && compare(indexValue(q, i), indexOffset(q, i), tree.keyAt(j),
+                            tree.sequenceAt(j)) < 0)) {
+                offset = indexOffset(q, i++);
+            } else {
+                offset = tree.sequenceAt(j++);
+            }
+            entries.add(read(offset));
+        }
+        return entries;
+    }
+
+    /**
+     * Merges the delta into the index and replaces the index file atomically.
+     * 
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        final long start = System.nanoTime();
+        final long logLength = log.length();
+        final File tmpFile = new File(indexFile.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 8192));
+            final int count = size();
+            out.writeInt(INDEX_MAGIC);
+            out.writeShort(INDEX_VERSION);
+            out.writeShort(QUANTITIES.length);
+            out.writeInt(count);
+            out.writeInt(0);
+            out.writeLong(logLength);
+            for (int q = 0; q < QUANTITIES.length; ++q) {
+                final OrderStatisticTree tree = delta[q];
+                int i = 0;
+                int j = 0;
+                while (i + j < count) {
+                    if (j >= tree.size()
+                            || (i < indexCount && compare(indexValue(q, i), indexOffset(q, i), tree.keyAt(j),
+                                    tree.sequenceAt(j)) < 0)) {
+                        out.writeDouble(indexValue(q, i));
+                        out.writeLong(indexOffset(q, i));
+                        ++i;
+                    } else {
+                        out.writeDouble(tree.keyAt(j));
+                        out.writeLong(tree.sequenceAt(j));
+                        ++j;
+                    }
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("cannot replace highscore index " + indexFile);
+        }
+        for (final OrderStatisticTree tree : delta) {
+            tree.clear();
+        }
+        readIndex();
+        logger.info("compacted highscore index {}: {} entries in {} ms", new Object[] { indexFile.getName(),
+                Integer.valueOf(indexCount), Long.valueOf((System.nanoTime() - start) / 1000000) });
+    }
+
+    public synchronized void close() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void readIndex() throws IOException {
+        index = null;
+        indexCount = 0;
+        indexedLogLength = 0;
+        if (!indexFile.exists()) {
+            return;
+        }
+        final RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final long length = channel.size();
+            if (length < INDEX_HEADER_SIZE) {
+                logger.warn("ignoring truncated highscore index {}", indexFile.getName());
+                return;
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            final int count = buffer.getInt(8);
+            final long covered = buffer.getLong(16);
+            if (buffer.getInt(0) != INDEX_MAGIC || buffer.getShort(4) != INDEX_VERSION
+                    || buffer.getShort(6) != QUANTITIES.length || count < 0
+                    || length != INDEX_HEADER_SIZE + (long) QUANTITIES.length * count * INDEX_ENTRY_SIZE
+                    || covered > log.length()) {
+                logger.warn("ignoring damaged highscore index {}", indexFile.getName());
+                return;
+            }
+            index = buffer;
+            indexCount = count;
+            indexedLogLength = covered;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Adds the log records behind the index to the delta and cuts off a torn record at the end of the log.
+     */
+    private void scanLog(long from) throws IOException {
+        final long length = log.length();
+        long offset = from;
+        while (offset < length) {
+            final HighscoreEntry entry = readChecked(offset, length);
+            if (entry == null) {
+                logger.warn("cutting off damaged highscore record at {} of {}", Long.valueOf(offset), logFile.getName());
+                log.setLength(offset);
+                break;
+            }
+            addToDelta(entry, offset);
+            offset = log.getFilePointer();
+        }
+    }
+
+    private long append(HighscoreEntry entry) throws IOException {
+        final byte[] payload = encode(entry);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        final long offset = log.length();
+        log.seek(offset);
+        log.write(record.array());
+        return offset;
+    }
+
+    private HighscoreEntry read(long offset) throws IOException {
+        final Long key = Long.valueOf(offset);
+        HighscoreEntry entry = records.get(key);
+        if (entry == null) {
+            entry = readChecked(offset, log.length());
+            if (entry == null) {
+                throw new IOException("damaged highscore record at " + offset);
+            }
+            records.put(key, entry);
+        }
+        return entry;
+    }
+
+    private HighscoreEntry readChecked(long offset, long length) throws IOException {
+        if (offset + 8 > length) {
+            return null;
+        }
+        log.seek(offset);
+        final int payloadLength = log.readInt();
+        if (payloadLength < 0 || offset + 8 + payloadLength > length) {
+            return null;
+        }
+        final byte[] payload = new byte[payloadLength];
+        log.readFully(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (log.readInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return decode(payload);
+    }
+
+    private void addToDelta(HighscoreEntry entry, long offset) {
+        for (int q = 0; q < QUANTITIES.length; ++q) {
+            delta[q].insert(entry.getQuantity(QUANTITIES[q]), offset);
+        }
+    }
+
+    private int indexPosition(int q, int i) {
+        return INDEX_HEADER_SIZE + (q * indexCount + i) * INDEX_ENTRY_SIZE;
+    }
+
+    private double indexValue(int q, int i) {
+        return index.getDouble(indexPosition(q, i));
+    }
+
+    private long indexOffset(int q, int i) {
+        return index.getLong(indexPosition(q, i) + 8);
+    }
+
+    private static int compare(double value1, long offset1, double value2, long offset2) {
+        final int c = Double.compare(value1, value2);
+        return c != 0 ? c : (offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1));
+    }
+
+    /**
+     * @return the number of entries in the index section of the quantity with a value smaller than or equal to the given
+     *         value
+     */
+    private int indexUpperBound(int q, double value) {
+        int low = 0;
+        int high = indexCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Double.compare(indexValue(q, mid), value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] encode(HighscoreEntry entry) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final Quantity[] quantities = Quantity.values();
+        out.writeByte(quantities.length);
+        for (final Quantity quantity : quantities) {
+            out.writeDouble(entry.getQuantity(quantity));
+        }
+        out.writeUTF(entry.getPlayerName() == null ? "" : entry.getPlayerName());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static HighscoreEntry decode(byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final HighscoreEntry entry = new HighscoreEntry();
+        final Quantity[] quantities = Quantity.values();
+        final int count = in.readUnsignedByte();
+        for (int i = 0; i < count; ++i) {
+            final double value = in.readDouble();
+            if (i < quantities.length) {
+                entry.setQuantity(quantities[i], value);
+            }
+        }
+        entry.setPlayerName(in.readUTF());
+        return entry;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.highscore;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.movsim.movdroid.util.HighscoreEntry;
+import org.movsim.movdroid.util.HighscoreEntry.Quantity;
+
+/**
+ * The leaderboards of a game for all {@link Quantity}s: the best entries in rank order and the rank of the latest result,
+ * per quantity. The lists are taken from the sorted index of the {@link HighscoreStore}, so switching the metric does not
+ * sort anything.
+ */
+public final class Leaderboard {
+
+    private final Map<Quantity, List<HighscoreEntry>> top = new EnumMap<Quantity, List<HighscoreEntry>>(Quantity.class);
+    private final Map<Quantity, Integer> ranks = new EnumMap<Quantity, Integer>(Quantity.class);
+
+    /**
+     * Reads the leaderboards from the store.
+     * 
+     * @param store
+     * @param count
+     *            maximum number of entries per quantity
+     * @param ranks
+     *            ranks of the latest result, indexed by quantity ordinal
+     * @throws IOException
+     */
+    private Leaderboard(HighscoreStore store, int count, int[] ranks) throws IOException {
+        for (final Quantity quantity : Quantity.values()) {
+            top.put(quantity, store.top(quantity, count));
+            this.ranks.put(quantity, Integer.valueOf(ranks[quantity.ordinal()]));
+        }
+    }
+
+    /**
+     * Ranks the given result, which must not be in the store yet, for all quantities.
+     * 
+     * @param store
+     * @param result
+     * @return the ranks, indexed by quantity ordinal
+     */
+    public static int[] rank(HighscoreStore store, HighscoreEntry result) {
+        final Quantity[] quantities = Quantity.values();
+        final int[] ranks = new int[quantities.length];
+        for (final Quantity quantity : quantities) {
+            ranks[quantity.ordinal()] = store.rank(quantity, result);
+        }
+        return ranks;
+    }
+
+    /**
+     * Reads the leaderboards from the store with the ranks of the given result.
+     * 
+     * @param store
+     * @param count
+     *            maximum number of entries per quantity
+     * @param result
+     *            the latest result
+     * @param ranks
+     *            the ranks of the result from {@link #rank(HighscoreStore, HighscoreEntry)}
+     * @param add
+     *            if true the result is added to the store before the leaderboards are read
+     * @return the leaderboards
+     * @throws IOException
+     */
+    public static Leaderboard read(HighscoreStore store, int count, HighscoreEntry result, int[] ranks, boolean add)
+            throws IOException {
+        if (add) {
+            store.add(result);
+        }
+        return new Leaderboard(store, count, ranks);
+    }
+
+    /**
+     * @return the best entries for the quantity in rank order
+     */
+    public List<HighscoreEntry> getTop(Quantity quantity) {
+        return top.get(quantity);
+    }
+
+    /**
+     * @return the rank of the latest result for the quantity, starting at 1
+     */
+    public int getRank(Quantity quantity) {
+        return ranks.get(quantity).intValue();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.highscore;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Order-statistic tree of {@code (key, sequence)} pairs, ordered by key and, for equal keys, by sequence number. Every node
+ * stores the size of its subtree, so that the rank of a key and the element at a given rank are found in O(log n).
+ * </p>
+ * <p>
+ * Implemented as a treap: the tree is a binary search tree on the pairs and a heap on random node priorities, which keeps
+ * it balanced in expectation without rebalancing bookkeeping.
+ * </p>
+ */
+public class OrderStatisticTree {
+
+    private static final class Node {
+        final double key;
+        final long sequence;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(double key, long sequence, int priority) {
+            this.key = key;
+            this.sequence = sequence;
+            this.priority = priority;
+        }
+    }
+
+    private final Random random = new Random();
+    private Node root;
+
+    public int size() {
+        return size(root);
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * Inserts the pair. Pairs are expected to be unique, the sequence number serves as tie-breaker for equal keys.
+     */
+    public void insert(double key, long sequence) {
+        root = insert(root, new Node(key, sequence, random.nextInt()));
+    }
+
+    /**
+     * @return the number of elements with a key smaller than or equal to the given key
+     */
+    public int countLessOrEqual(double key) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (Double.compare(node.key, key) <= 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param index
+     *            zero based rank
+     * @return the key of the element at the given rank
+     */
+    public double keyAt(int index) {
+        return select(index).key;
+    }
+
+    /**
+     * @param index
+     *            zero based rank
+     * @return the sequence number of the element at the given rank
+     */
+    public long sequenceAt(int index) {
+        return select(index).sequence;
+    }
+
+    private Node select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        }
+        Node node = root;
+        int i = index;
+        while (true) {
+            final int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            } else if (i == leftSize) {
+                return node;
+            } else {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int compare(Node a, Node b) {
+        final int c = Double.compare(a.key, b.key);
+        return c != 0 ? c : (a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1));
+    }
+
+    private static Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (compare(newNode, node) < 0) {
+            node.left = insert(node.left, newNode);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        final Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.size = size(node.left) + size(node.right) + 1;
+        left.size = size(left.left) + node.size + 1;
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        final Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.size = size(node.left) + size(node.right) + 1;
+        right.size = node.size + size(right.right) + 1;
+        return right;
+    }
+}
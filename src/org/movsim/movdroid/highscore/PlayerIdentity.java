@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.highscore;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.provider.ContactsContract.Profile;
+
+/**
+ * <p>
+ * The name of the player shown in the highscores, taken from the owner profile of the device.
+ * </p>
+ * <p>
+ * The profile is queried once in the background by {@link #refreshInBackground(Context)} and the name is kept in the shared
+ * preferences, so that storing a highscore never queries a content provider. Before the first lookup has finished the name
+ * is empty.
+ * </p>
+ */
+public final class PlayerIdentity {
+
+    private static final String PREFERENCES_NAME = "player";
+    private static final String KEY_DISPLAY_NAME = "displayName";
+
+    private static String displayName;
+
+    private PlayerIdentity() {
+    }
+
+    /**
+     * Returns the cached player name. Reads the shared preferences the first time, so it should not be called on the UI
+     * thread before {@link #refreshInBackground(Context)} has run.
+     * 
+     * @param context
+     * @return the player name, empty if unknown
+     */
+    public static synchronized String getDisplayName(Context context) {
+        if (displayName == null) {
+            displayName = preferences(context).getString(KEY_DISPLAY_NAME, "");
+        }
+        return displayName;
+    }
+
+    /**
+     * Looks up the player name on a background thread and updates the cache if it has changed.
+     * 
+     * @param context
+     *            the application context
+     */
+    public static void refreshInBackground(final Context context) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final String name = queryDisplayName(context);
+                if (name == null) {
+                    return;
+                }
+                synchronized (PlayerIdentity.class) {
+                    if (!name.equals(getDisplayName(context))) {
+                        displayName = name;
+                        preferences(context).edit().putString(KEY_DISPLAY_NAME, name).commit();
+                    }
+                }
+            }
+        }, "PlayerIdentity");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the display name of the owner profile, "Me" on devices without profiles, null if it cannot be determined
+     */
+    @SuppressLint("NewApi")
+    private static String queryDisplayName(Context context) {
+        if (android.os.Build.VERSION.SDK_INT < 14) {
+            return "Me";
+        }
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(Profile.CONTENT_URI, new String[] { Profile.DISPLAY_NAME }, null,
+                    null, null);
+            if (cursor != null && cursor.getCount() == 1 && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            // no profile provider or no permission
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+}
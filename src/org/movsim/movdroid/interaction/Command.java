@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+/**
+ * <p>
+ * A user intervention in the running simulation, such as switching a traffic light.
+ * </p>
+ * <p>
+ * Commands are created on the UI thread and {@link InterventionQueue queued}; they are applied by the simulation thread at
+ * the start of a time step, with the data lock held.
+ * </p>
+ */
+public interface Command {
+
+    /**
+     * Applies the command to the road network. Called with the simulation's data lock held.
+     */
+    void apply();
+
+    /**
+     * @return a description of the command for the intervention log, for example {@code toggle trafficLight:3:0}
+     */
+    String describe();
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.TrafficLight;
+import org.movsim.simulator.roadnetwork.TrafficLight.TrafficLightStatus;
+
+/**
+ * <p>
+ * Turns the descriptions of the intervention log back into commands on a road network, for replays. The description of a
+ * parsed command is the one it was parsed from.
+ * </p>
+ * <p>
+ * Understands:
+ * <ul>
+ * <li>{@code toggle trafficLight:roadId:index}</li>
+ * <li>{@code toggle sign:roadId}</li>
+ * <li>{@code set trafficLight:roadId:index status}</li>
+ * <li>{@code set sign:roadId ON|OFF}</li>
+ * <li>{@code set sleepTime milliseconds}</li>
+ * </ul>
+ * </p>
+ */
+public class CommandParser {
+
+    private final RoadNetwork roadNetwork;
+    private final Diversions diversions;
+    private final SimulationRunnable simulationRunnable;
+
+    public CommandParser(RoadNetwork roadNetwork, Diversions diversions, SimulationRunnable simulationRunnable) {
+        this.roadNetwork = roadNetwork;
+        this.diversions = diversions;
+        this.simulationRunnable = simulationRunnable;
+    }
+
+    /**
+     * @param description
+     *            the description of the command in the intervention log
+     * @return the command
+     * @throws IllegalArgumentException
+     *             if the description is not understood or names an element the road network does not have
+     */
+    public Command parse(final String description) {
+        final String[] words = description.split(" ");
+        final String[] target = words.length > 1 ? words[1].split(":") : new String[0];
+        if (words.length == 2 && words[0].equals("toggle") && target[0].equals("trafficLight") && target.length == 3) {
+            final TrafficLight trafficLight = trafficLight(target[1], target[2]);
+            return new Command() {
+                @Override
+                public void apply() {
+                    trafficLight.nextState();
+                }
+
+                @Override
+                public String describe() {
+                    return description;
+                }
+            };
+        } else if (words.length == 2 && words[0].equals("toggle") && target[0].equals("sign") && target.length == 2) {
+            final RoadSegment roadSegment = roadSegment(target[1]);
+            return new Command() {
+                @Override
+                public void apply() {
+                    diversions.set(roadSegment, !diversions.isActive(roadSegment));
+                }
+
+                @Override
+                public String describe() {
+                    return description;
+                }
+            };
+        } else if (words.length == 3 && words[0].equals("set") && target[0].equals("trafficLight")
+                && target.length == 3) {
+            return new SetTrafficLight(words[1], trafficLight(target[1], target[2]),
+                    TrafficLightStatus.valueOf(words[2]));
+        } else if (words.length == 3 && words[0].equals("set") && target[0].equals("sign") && target.length == 2) {
+            return new SetDiversion(diversions, roadSegment(target[1]), words[2].equals("ON"));
+        } else if (words.length == 3 && words[0].equals("set") && words[1].equals("sleepTime")) {
+            return new SetSleepTime(simulationRunnable, Integer.parseInt(words[2]));
+        }
+        throw new IllegalArgumentException("unknown command: " + description);
+    }
+
+    private RoadSegment roadSegment(String roadId) {
+        final RoadSegment roadSegment = roadNetwork.findByUserId(roadId);
+        if (roadSegment == null) {
+            throw new IllegalArgumentException("no road segment " + roadId);
+        }
+        return roadSegment;
+    }
+
+    private TrafficLight trafficLight(String roadId, String index) {
+        final Iterable<TrafficLight> trafficLights = roadSegment(roadId).trafficLights();
+        if (trafficLights != null) {
+            int i = 0;
+            for (final TrafficLight trafficLight : trafficLights) {
+                if (Integer.toString(i++).equals(index)) {
+                    return trafficLight;
+                }
+            }
+        }
+        throw new IllegalArgumentException("no traffic light " + index + " on road segment " + roadId);
+    }
+}
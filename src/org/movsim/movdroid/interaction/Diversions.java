@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.VariableMessageSignBase;
+
+/**
+ * <p>
+ * The road segments on which a variable message sign is currently shown.
+ * </p>
+ * <p>
+ * The road segments do not tell whether a sign has been added to them, so the state is kept here, shared by the taps on
+ * the sign markers and by the controllers. Changed with the simulation's data lock held.
+ * </p>
+ */
+public class Diversions {
+
+    private final VariableMessageSignBase sign;
+    private final Set<RoadSegment> active = new HashSet<RoadSegment>();
+
+    public Diversions(VariableMessageSignBase sign) {
+        this.sign = sign;
+    }
+
+    public VariableMessageSignBase getSign() {
+        return sign;
+    }
+
+    public synchronized boolean isActive(RoadSegment roadSegment) {
+        return active.contains(roadSegment);
+    }
+
+    /**
+     * Shows or removes the sign on the road segment. Must be called with the simulation's data lock held.
+     */
+    public synchronized void set(RoadSegment roadSegment, boolean on) {
+        if (on == active.contains(roadSegment)) {
+            return;
+        }
+        if (on) {
+            roadSegment.addVariableMessageSign(sign);
+            active.add(roadSegment);
+        } else {
+            roadSegment.removeVariableMessageSign(sign);
+            active.remove(roadSegment);
+        }
+    }
+
+    /**
+     * Forgets all road segments, for a rebuilt road network.
+     */
+    public synchronized void clear() {
+        active.clear();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.control.ControlLoop;
+import org.movsim.movdroid.telemetry.TimedSimulator;
+
+/**
+ * <p>
+ * Simulator that applies the queued user interventions at the start of each time step, and then runs the automatic
+ * controller, if there is one.
+ * </p>
+ */
+public class InteractiveSimulator extends TimedSimulator {
+
+    private final InterventionQueue interventions = new InterventionQueue();
+    private volatile ControlLoop controlLoop;
+
+    public InteractiveSimulator(ProjectMetaData projectMetaData) {
+        super(projectMetaData);
+    }
+
+    /**
+     * Called by the simulation runnable with the data lock held.
+     */
+    @Override
+    public void timeStep(double dt, double simulationTime, long iterationCount) {
+        interventions.drain(simulationTime, iterationCount);
+        final ControlLoop loop = controlLoop;
+        if (loop != null) {
+            loop.beforeStep(simulationTime, iterationCount);
+        }
+        super.timeStep(dt, simulationTime, iterationCount);
+        if (loop != null) {
+            loop.afterStep(simulationTime);
+        }
+    }
+
+    public InterventionQueue getInterventions() {
+        return interventions;
+    }
+
+    /**
+     * Sets the automatic controller, it takes over with the next time step. Null switches the automatic control off.
+     */
+    public void setControlLoop(ControlLoop controlLoop) {
+        this.controlLoop = controlLoop;
+    }
+
+    public ControlLoop getControlLoop() {
+        return controlLoop;
+    }
+}
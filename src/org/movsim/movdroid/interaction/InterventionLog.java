@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The commands applied to the simulation, each stamped with the simulation time and iteration of the time step it was
+ * applied before.
+ * </p>
+ * <p>
+ * Entries are added by the simulation thread and may be read by any thread.
+ * </p>
+ */
+public class InterventionLog {
+
+    /**
+     * A command applied to the simulation.
+     */
+    public static final class Entry {
+        private final double simulationTime;
+        private final long iterationCount;
+        private final String command;
+
+        Entry(double simulationTime, long iterationCount, String command) {
+            this.simulationTime = simulationTime;
+            this.iterationCount = iterationCount;
+            this.command = command;
+        }
+
+        public double getSimulationTime() {
+            return simulationTime;
+        }
+
+        public long getIterationCount() {
+            return iterationCount;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    synchronized void add(double simulationTime, long iterationCount, String command) {
+        entries.add(new Entry(simulationTime, iterationCount, command));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Entry get(int index) {
+        return entries.get(index);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return a copy of the log as it is now
+     */
+    public synchronized InterventionLog snapshot() {
+        final InterventionLog snapshot = new InterventionLog();
+        snapshot.entries.addAll(entries);
+        return snapshot;
+    }
+
+    /**
+     * Writes the log, one line {@code iteration<TAB>time<TAB>command} per entry.
+     * 
+     * @param writer
+     * @throws IOException
+     */
+    public synchronized void write(Writer writer) throws IOException {
+        for (final Entry entry : entries) {
+            writer.write(Long.toString(entry.iterationCount));
+            writer.write('\t');
+            writer.write(Double.toString(entry.simulationTime));
+            writer.write('\t');
+            writer.write(entry.command);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ * Queue of the user interventions for the simulation thread.
+ * </p>
+ * <p>
+ * Any thread may {@link #offer(Command) offer} commands without taking the data lock; the queue is lock-free. The
+ * simulation thread {@link #drain(double, long) drains} it at the start of each time step with the data lock held, so a
+ * command never sees the road network in the middle of a step, and logs each command with the time it was applied at.
+ * </p>
+ */
+public class InterventionQueue {
+
+    private final ConcurrentLinkedQueue<Command> pending = new ConcurrentLinkedQueue<Command>();
+    private final InterventionLog log = new InterventionLog();
+    // set when a command has been applied, so the background can be redrawn
+    private volatile boolean applied;
+
+    /**
+     * Queues the command to be applied before the next time step.
+     */
+    public void offer(Command command) {
+        pending.offer(command);
+    }
+
+    /**
+     * Applies the queued commands in the order they were offered. Must be called with the simulation's data lock held.
+     * 
+     * @param simulationTime
+     *            the simulation time at the start of the time step
+     * @param iterationCount
+     *            the iteration of the time step
+     */
+    public void drain(double simulationTime, long iterationCount) {
+        Command command;
+        while ((command = pending.poll()) != null) {
+            command.apply();
+            log.add(simulationTime, iterationCount, command.describe());
+            applied = true;
+        }
+    }
+
+    /**
+     * Applies the command at once, bypassing the queue, and logs it. For commands issued by the simulation thread itself,
+     * which holds the data lock.
+     */
+    public void apply(Command command, double simulationTime, long iterationCount) {
+        command.apply();
+        log.add(simulationTime, iterationCount, command.describe());
+        applied = true;
+    }
+
+    /**
+     * @return true if a command has been applied since the last call
+     */
+    public boolean takeApplied() {
+        if (!applied) {
+            return false;
+        }
+        applied = false;
+        return true;
+    }
+
+    /**
+     * Discards the queued commands and the log, for a new or restarted simulation.
+     */
+    public void clear() {
+        pending.clear();
+        log.clear();
+        applied = false;
+    }
+
+    public InterventionLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * <p>
+ * What it takes to reproduce a simulation session: the scenario, the seed of its random numbers, the time step, the
+ * number of time steps run and the intervention log. The result of a completed game is kept with it, so that a replay can
+ * verify the score.
+ * </p>
+ * <p>
+ * The record is a short text file: a header of {@code key value} lines, then a line {@code log}, then the entries of the
+ * {@link InterventionLog#write(Writer) intervention log}.
+ * </p>
+ * 
+ * <pre>
+ * movsimdroid-session 1
+ * scenario ramp_metering
+ * seed 42
+ * dt 0.1
+ * iterations 3184
+ * result simulationTime=318.4 finished=true ...
+ * log
+ * 1201	120.1	toggle trafficLight:37:0
+ * </pre>
+ */
+public class SessionRecord {
+
+    /** extension of the session record files */
+    public static final String FILE_EXTENSION = ".replay";
+    private static final String MAGIC = "movsimdroid-session";
+    private static final int VERSION = 1;
+
+    private final String scenario;
+    private final Long seed;
+    private final double timeStep;
+    private final long iterationCount;
+    private final String result;
+    private final InterventionLog log;
+
+    /**
+     * @param scenario
+     *            the project name
+     * @param seed
+     *            the seed of the random numbers, null if the scenario has no fixed seed and cannot be reproduced
+     * @param timeStep
+     *            the time step in seconds
+     * @param iterationCount
+     *            the number of time steps run
+     * @param result
+     *            the result line of the completed game, null if the session was recorded before its end
+     * @param log
+     */
+    public SessionRecord(String scenario, Long seed, double timeStep, long iterationCount, String result,
+            InterventionLog log) {
+        this.scenario = scenario;
+        this.seed = seed;
+        this.timeStep = timeStep;
+        this.iterationCount = iterationCount;
+        this.result = result;
+        this.log = log;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    public long getIterationCount() {
+        return iterationCount;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public InterventionLog getLog() {
+        return log;
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write(MAGIC + " " + VERSION + "\n");
+        writer.write("scenario " + scenario + "\n");
+        writer.write("seed " + (seed == null ? "random" : seed.toString()) + "\n");
+        writer.write("dt " + timeStep + "\n");
+        writer.write("iterations " + iterationCount + "\n");
+        if (result != null) {
+            writer.write("result " + result + "\n");
+        }
+        writer.write("log\n");
+        log.write(writer);
+    }
+
+    /**
+     * Reads a record written by {@link #write(Writer)}.
+     * 
+     * @param reader
+     * @return the record
+     * @throws IOException
+     *             if the record cannot be read or is malformed
+     */
+    public static SessionRecord read(Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        String line = in.readLine();
+        if (line == null || !line.equals(MAGIC + " " + VERSION)) {
+            throw new IOException("not a session record of version " + VERSION);
+        }
+        String scenario = null;
+        Long seed = null;
+        double timeStep = 0;
+        long iterationCount = 0;
+        String result = null;
+        final InterventionLog log = new InterventionLog();
+        try {
+            while ((line = in.readLine()) != null && !line.equals("log")) {
+                final int space = line.indexOf(' ');
+                final String key = space < 0 ? line : line.substring(0, space);
+                final String value = space < 0 ? "" : line.substring(space + 1);
+                if (key.equals("scenario")) {
+                    scenario = value;
+                } else if (key.equals("seed")) {
+                    seed = value.equals("random") ? null : Long.valueOf(value);
+                } else if (key.equals("dt")) {
+                    timeStep = Double.parseDouble(value);
+                } else if (key.equals("iterations")) {
+                    iterationCount = Long.parseLong(value);
+                } else if (key.equals("result")) {
+                    result = value;
+                }
+            }
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                final String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    throw new IOException("malformed log entry: " + line);
+                }
+                log.add(Double.parseDouble(fields[1]), Long.parseLong(fields[0]), fields[2]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed session record: " + e.getMessage());
+        }
+        if (scenario == null || timeStep <= 0) {
+            throw new IOException("session record without scenario or time step");
+        }
+        return new SessionRecord(scenario, seed, timeStep, iterationCount, result, log);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import org.movsim.simulator.roadnetwork.RoadSegment;
+
+/**
+ * Command that shows or removes the variable message sign on a road segment.
+ */
+public class SetDiversion implements Command {
+
+    private final Diversions diversions;
+    private final RoadSegment roadSegment;
+    private final boolean on;
+
+    public SetDiversion(Diversions diversions, RoadSegment roadSegment, boolean on) {
+        this.diversions = diversions;
+        this.roadSegment = roadSegment;
+        this.on = on;
+    }
+
+    @Override
+    public void apply() {
+        diversions.set(roadSegment, on);
+    }
+
+    @Override
+    public String describe() {
+        return "set sign:" + roadSegment.userId() + (on ? " ON" : " OFF");
+    }
+}
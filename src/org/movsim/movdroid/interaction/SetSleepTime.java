@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import org.movsim.simulator.SimulationRunnable;
+
+/**
+ * <p>
+ * Changes the animation speed. Has no effect on the simulation results, it is logged so that a replay shows when the
+ * user changed the pace.
+ * </p>
+ */
+public class SetSleepTime implements Command {
+
+    private final SimulationRunnable simulationRunnable;
+    private final int sleepTime;
+
+    /**
+     * @param simulationRunnable
+     * @param sleepTime
+     *            the sleep time between two time steps in milliseconds
+     */
+    public SetSleepTime(SimulationRunnable simulationRunnable, int sleepTime) {
+        this.simulationRunnable = simulationRunnable;
+        this.sleepTime = sleepTime;
+    }
+
+    @Override
+    public void apply() {
+        simulationRunnable.setSleepTime(sleepTime);
+    }
+
+    @Override
+    public String describe() {
+        return "set sleepTime " + sleepTime;
+    }
+}
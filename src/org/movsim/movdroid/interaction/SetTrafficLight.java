@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.interaction;
+
+import org.movsim.simulator.roadnetwork.TrafficLight;
+import org.movsim.simulator.roadnetwork.TrafficLight.TrafficLightStatus;
+
+/**
+ * Command that switches a traffic light on to the given status.
+ */
+public class SetTrafficLight implements Command {
+
+    // GREEN, GREEN_RED, RED and RED_GREEN, a light passes through each status at most once per cycle
+    private static final int MAX_SWITCHES = TrafficLightStatus.values().length;
+
+    private final String id;
+    private final TrafficLight trafficLight;
+    private final TrafficLightStatus status;
+
+    /**
+     * @param id
+     *            the id of the traffic light for the log, {@code trafficLight:roadId:index}
+     * @param trafficLight
+     * @param status
+     */
+    public SetTrafficLight(String id, TrafficLight trafficLight, TrafficLightStatus status) {
+        this.id = id;
+        this.trafficLight = trafficLight;
+        this.status = status;
+    }
+
+    @Override
+    public void apply() {
+        for (int i = 0; i < MAX_SWITCHES && trafficLight.status() != status; ++i) {
+            trafficLight.nextState();
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "set " + id + " " + status;
+    }
+}
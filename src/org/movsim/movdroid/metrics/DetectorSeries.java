@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.metrics;
+
+/**
+ * <p>
+ * Fixed-size time series of a detector's aggregated flow and mean speed, kept in primitive ring buffers.
+ * </p>
+ * <p>
+ * Adding a sample overwrites the oldest one once the series is full, it costs O(1) regardless of the capacity. Samples are
+ * indexed by age, {@code 0} is the oldest sample kept.
+ * </p>
+ */
+public final class DetectorSeries {
+
+    private final float[] flow;
+    private final float[] speed;
+    private long count;
+
+    /**
+     * @param capacity
+     *            number of samples kept
+     */
+    public DetectorSeries(int capacity) {
+        flow = new float[capacity];
+        speed = new float[capacity];
+    }
+
+    /**
+     * Appends a sample.
+     * 
+     * @param flowPerHour
+     *            flow over all lanes in vehicles per hour
+     * @param speedMs
+     *            mean speed over all lanes in m/s, NaN if no vehicle has passed
+     */
+    public void add(double flowPerHour, double speedMs) {
+        final int slot = (int) (count % flow.length);
+        flow[slot] = (float) flowPerHour;
+        speed[slot] = (float) speedMs;
+        ++count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int capacity() {
+        return flow.length;
+    }
+
+    /**
+     * @return the number of samples kept, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(count, flow.length);
+    }
+
+    /**
+     * @return the number of samples added since the last {@link #clear()}
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @param i
+     *            age index, 0 is the oldest sample kept and {@code size() - 1} the latest
+     * @return the flow in vehicles per hour
+     */
+    public float flow(int i) {
+        return flow[slot(i)];
+    }
+
+    /**
+     * @param i
+     *            age index, 0 is the oldest sample kept and {@code size() - 1} the latest
+     * @return the mean speed in m/s or NaN if no vehicle has passed
+     */
+    public float speed(int i) {
+        return speed[slot(i)];
+    }
+
+    private int slot(int i) {
+        return (int) ((count - size() + i) % flow.length);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.metrics;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.Lane;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.ExponentialMovingAverage;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * Live macroscopic metrics of every lane of every road segment: density, mean speed and flow, exponentially smoothed.
+ * </p>
+ * <p>
+ * Registered as update status callback, the metrics are updated after every simulation step in one pass over the
+ * vehicles, O(vehicles + lanes), using primitive arrays indexed by lane. The smoothed values are written to the back
+ * buffer of a double-buffered {@link Snapshot}, which is then published through a volatile reference, so the renderer
+ * reads them without taking the simulation's data lock.
+ * </p>
+ * <p>
+ * The metrics are only updated while they are active, see {@link #setActive(boolean)}, so that the pass over the
+ * vehicles costs nothing while no view shows them. They are smoothed afresh when they are activated again.
+ * </p>
+ */
+public class LaneMetrics implements SimulationRunnable.UpdateStatusCallback {
+
+    /** default smoothing factor of the exponential moving averages, per update */
+    public static final double DEFAULT_ALPHA = 0.05;
+
+    /**
+     * The lanes of the road network, flattened: the lanes of segment {@code i} have the indices {@code laneOffset(i)} to
+     * {@code laneOffset(i) + laneCount(i) - 1}. Rebuilt only when the road network changes.
+     */
+    public static final class Layout {
+        private final RoadSegment[] segments;
+        private final int[] laneOffsets;
+        private final double[] laneLengths;
+        private final Map<RoadSegment, Integer> segmentIndices = new IdentityHashMap<RoadSegment, Integer>();
+
+        Layout(RoadNetwork roadNetwork) {
+            segments = new RoadSegment[roadNetwork.size()];
+            laneOffsets = new int[segments.length + 1];
+            int i = 0;
+            for (final RoadSegment roadSegment : roadNetwork) {
+                segments[i] = roadSegment;
+                segmentIndices.put(roadSegment, Integer.valueOf(i));
+                laneOffsets[i + 1] = laneOffsets[i] + roadSegment.laneCount();
+                ++i;
+            }
+            laneLengths = new double[laneOffsets[segments.length]];
+            for (i = 0; i < segments.length; ++i) {
+                for (int lane = laneOffsets[i]; lane < laneOffsets[i + 1]; ++lane) {
+                    laneLengths[lane] = segments[i].roadLength();
+                }
+            }
+        }
+
+        boolean matches(RoadNetwork roadNetwork) {
+            if (roadNetwork.size() != segments.length) {
+                return false;
+            }
+            int i = 0;
+            for (final RoadSegment roadSegment : roadNetwork) {
+                if (segments[i++] != roadSegment) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int segmentCount() {
+            return segments.length;
+        }
+
+        public int laneCount() {
+            return laneLengths.length;
+        }
+
+        /**
+         * @return the index of the segment or -1 if it is not part of the layout
+         */
+        public int segmentIndex(RoadSegment roadSegment) {
+            final Integer index = segmentIndices.get(roadSegment);
+            return index == null ? -1 : index.intValue();
+        }
+
+        public RoadSegment segment(int segmentIndex) {
+            return segments[segmentIndex];
+        }
+
+        public int laneOffset(int segmentIndex) {
+            return laneOffsets[segmentIndex];
+        }
+
+        public int laneCount(int segmentIndex) {
+            return laneOffsets[segmentIndex + 1] - laneOffsets[segmentIndex];
+        }
+    }
+
+    /**
+     * Smoothed metrics of all lanes, indexed as in the {@link Layout}.
+     * <p>
+     * A snapshot is rewritten two updates after it has been published, and the reader is not synchronized with the
+     * writer. A reader that holds on to a snapshot longer than an update may therefore see values of a later update
+     * mixed in; the snapshot is meant for display, where this does not matter. {@link #getSequence()} identifies the
+     * update that published it and is no guard against this.
+     * </p>
+     */
+    public static final class Snapshot {
+        private final Layout layout;
+        final double[] density;
+        final double[] speed;
+        final double[] flow;
+        volatile long sequence;
+        double simulationTime;
+
+        Snapshot(Layout layout) {
+            this.layout = layout;
+            final int lanes = layout.laneCount();
+            density = new double[lanes];
+            speed = new double[lanes];
+            flow = new double[lanes];
+        }
+
+        public Layout getLayout() {
+            return layout;
+        }
+
+        /**
+         * @return the number of the update that wrote the snapshot, -1 while it is being written
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public double getSimulationTime() {
+            return simulationTime;
+        }
+
+        /**
+         * @return the density of the lane in vehicles per km
+         */
+        public double density(int laneIndex) {
+            return density[laneIndex];
+        }
+
+        /**
+         * @return the mean speed of the lane in m/s
+         */
+        public double speed(int laneIndex) {
+            return speed[laneIndex];
+        }
+
+        /**
+         * @return the flow of the lane in vehicles per hour
+         */
+        public double flow(int laneIndex) {
+            return flow[laneIndex];
+        }
+
+        /**
+         * @return the density of the segment summed over its lanes in vehicles per km
+         */
+        public double segmentDensity(int segmentIndex) {
+            double sum = 0;
+            for (int i = layout.laneOffset(segmentIndex), end = i + layout.laneCount(segmentIndex); i < end; ++i) {
+                sum += density[i];
+            }
+            return sum;
+        }
+
+        /**
+         * @return the flow of the segment summed over its lanes in vehicles per hour
+         */
+        public double segmentFlow(int segmentIndex) {
+            double sum = 0;
+            for (int i = layout.laneOffset(segmentIndex), end = i + layout.laneCount(segmentIndex); i < end; ++i) {
+                sum += flow[i];
+            }
+            return sum;
+        }
+
+        /**
+         * @return the mean speed of the segment in m/s, the lane speeds weighted by the lane densities
+         */
+        public double segmentSpeed(int segmentIndex) {
+            double weightedSum = 0;
+            double densitySum = 0;
+            for (int i = layout.laneOffset(segmentIndex), end = i + layout.laneCount(segmentIndex); i < end; ++i) {
+                weightedSum += density[i] * speed[i];
+                densitySum += density[i];
+            }
+            return densitySum > 0 ? weightedSum / densitySum : speed[layout.laneOffset(segmentIndex)];
+        }
+    }
+
+    private final RoadNetwork roadNetwork;
+    private final double alpha;
+
+    // accessed by the simulation thread only
+    private Layout layout;
+    private int[] counts;
+    private double[] speedSums;
+    private Snapshot back;
+    private long sequence;
+    private double lastSimulationTime = -1;
+
+    private volatile Snapshot front;
+    private volatile boolean active;
+
+    public LaneMetrics(RoadNetwork roadNetwork) {
+        this(roadNetwork, DEFAULT_ALPHA);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param alpha
+     *            smoothing factor of the exponential moving averages, the weight of the newest value
+     */
+    public LaneMetrics(RoadNetwork roadNetwork, double alpha) {
+        this.roadNetwork = roadNetwork;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Starts or stops updating the metrics. Called by the view that shows them, on any thread.
+     * 
+     * @param active
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * @return the latest published metrics or null before the first update since the metrics were activated
+     */
+    public Snapshot getSnapshot() {
+        return front;
+    }
+
+    /**
+     * Updates the metrics, called by the simulation thread after each time step with the data lock held.
+     */
+    @Override
+    public void updateStatus(double simulationTime) {
+        final boolean restarted = simulationTime < lastSimulationTime;
+        lastSimulationTime = simulationTime;
+        if (!active) {
+            // smoothed afresh once activated
+            front = null;
+            return;
+        }
+        if (layout == null || restarted || !layout.matches(roadNetwork)) {
+            reset();
+        }
+        final int[] counts = this.counts;
+        final double[] speedSums = this.speedSums;
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = 0;
+            speedSums[i] = 0.0;
+        }
+        final RoadSegment[] segments = layout.segments;
+        for (int s = 0; s < segments.length; ++s) {
+            final int offset = layout.laneOffsets[s];
+            final int maxLane = layout.laneOffsets[s + 1] - offset - 1;
+            for (final Vehicle vehicle : segments[s]) {
+                if (vehicle.type() == Vehicle.Type.OBSTACLE) {
+                    continue;
+                }
+                final int lane = Math.min(Math.max(vehicle.getLane() - Lane.LANE1, 0), maxLane);
+                counts[offset + lane]++;
+                speedSums[offset + lane] += vehicle.getSpeed();
+            }
+        }
+
+        final Snapshot previous = front;
+        final Snapshot next = back;
+        next.sequence = -1;
+        final boolean first = previous == null || previous.layout != layout;
+        for (int i = 0; i < counts.length; ++i) {
+            final double density = counts[i] / (layout.laneLengths[i] * Units.M_TO_KM);
+            next.density[i] = first ? density : ExponentialMovingAverage.calc(previous.density[i], density, alpha);
+            if (counts[i] > 0) {
+                final double speed = speedSums[i] / counts[i];
+                next.speed[i] = first ? speed : ExponentialMovingAverage.calc(previous.speed[i], speed, alpha);
+            } else {
+                // mean speed is undefined on an empty lane, keep the last value
+                next.speed[i] = first ? 0.0 : previous.speed[i];
+            }
+            next.flow[i] = next.density[i] * next.speed[i] * Units.MS_TO_KMH;
+        }
+        next.simulationTime = simulationTime;
+        next.sequence = ++sequence;
+        back = previous != null && previous.layout == layout ? previous : new Snapshot(layout);
+        front = next;
+    }
+
+    private void reset() {
+        layout = new Layout(roadNetwork);
+        counts = new int[layout.laneCount()];
+        speedSums = new double[layout.laneCount()];
+        back = new Snapshot(layout);
+        front = null;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.metrics;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.TrafficSink;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * Running network-wide totals of travel time, travel distance and fuel, and their rates over a sliding time window.
+ * </p>
+ * <p>
+ * Registered as update status callback, the totals are accumulated once per {@link #SAMPLE_INTERVAL} seconds of
+ * simulation time in a single pass over the vehicles and the sinks: vehicles still on the road contribute their own
+ * totals, vehicles that have left the network are accounted for by the totals of the sinks. This gives the same numbers as
+ * {@code RoadNetwork.totalVehicleTravelTime()} and its siblings, which each walk the whole network. At the end of a run
+ * {@link #complete(double)} brings the totals up to date.
+ * </p>
+ * <p>
+ * The values of each sample are published together as an immutable {@link Snapshot} through a single volatile
+ * reference, so a reader never combines values of different samples; reading them takes O(1) and needs no lock. Rates
+ * are computed from the samples, kept in a ring buffer that spans the window.
+ * </p>
+ */
+public class NetworkTotals implements SimulationRunnable.UpdateStatusCallback {
+
+    /**
+     * The totals and rates of one sample.
+     */
+    public static final class Snapshot {
+        private final double simulationTime;
+        private final double totalTravelTime;
+        private final double totalTravelDistance;
+        private final double totalFuelUsedLiters;
+        private final double travelTimeRate;
+        private final double travelDistanceRate;
+        private final double fuelRate;
+
+        Snapshot(double simulationTime, double totalTravelTime, double totalTravelDistance, double totalFuelUsedLiters,
+                double travelTimeRate, double travelDistanceRate, double fuelRate) {
+            this.simulationTime = simulationTime;
+            this.totalTravelTime = totalTravelTime;
+            this.totalTravelDistance = totalTravelDistance;
+            this.totalFuelUsedLiters = totalFuelUsedLiters;
+            this.travelTimeRate = travelTimeRate;
+            this.travelDistanceRate = travelDistanceRate;
+            this.fuelRate = fuelRate;
+        }
+
+        /**
+         * @return the simulation time of the sample
+         */
+        public double getSimulationTime() {
+            return simulationTime;
+        }
+
+        /**
+         * @return the total travel time of all vehicles in seconds
+         */
+        public double getTotalTravelTime() {
+            return totalTravelTime;
+        }
+
+        /**
+         * @return the total travel distance of all vehicles in meters
+         */
+        public double getTotalTravelDistance() {
+            return totalTravelDistance;
+        }
+
+        /**
+         * @return the total fuel used by all vehicles in liters
+         */
+        public double getTotalFuelUsedLiters() {
+            return totalFuelUsedLiters;
+        }
+
+        /**
+         * @return the travel time accumulated per minute over the window, in vehicle seconds per minute
+         */
+        public double getTravelTimeRate() {
+            return travelTimeRate;
+        }
+
+        /**
+         * @return the travel distance accumulated per minute over the window, in vehicle kilometers per minute
+         */
+        public double getTravelDistanceRate() {
+            return travelDistanceRate;
+        }
+
+        /**
+         * @return the fuel used per minute over the window, in liters per minute
+         */
+        public double getFuelRate() {
+            return fuelRate;
+        }
+    }
+
+    /** the snapshot before the first sample, all values 0 */
+    private static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, 0);
+
+    /** sampling interval for the windowed rates, in seconds of simulation time */
+    public static final double SAMPLE_INTERVAL = 1.0;
+    /** default window for the rates, in seconds of simulation time */
+    public static final double DEFAULT_WINDOW = 60.0;
+
+    private final RoadNetwork roadNetwork;
+    private final double window;
+
+    // ring buffer of samples, accessed by the simulation thread only
+    private final double[] sampleTime;
+    private final double[] sampleTravelTime;
+    private final double[] sampleTravelDistance;
+    private final double[] sampleFuel;
+    private int head;
+    private int count;
+    private double lastSimulationTime = -1;
+
+    private volatile Snapshot snapshot = EMPTY;
+
+    public NetworkTotals(RoadNetwork roadNetwork) {
+        this(roadNetwork, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param window
+     *            length of the window for the rates in seconds of simulation time
+     */
+    public NetworkTotals(RoadNetwork roadNetwork, double window) {
+        this.roadNetwork = roadNetwork;
+        this.window = window;
+        final int capacity = (int) Math.ceil(window / SAMPLE_INTERVAL) + 2;
+        sampleTime = new double[capacity];
+        sampleTravelTime = new double[capacity];
+        sampleTravelDistance = new double[capacity];
+        sampleFuel = new double[capacity];
+    }
+
+    /**
+     * Accumulates the totals when a sample is due, called by the simulation thread after each time step with the data lock
+     * held.
+     */
+    @Override
+    public void updateStatus(double simulationTime) {
+        if (simulationTime < lastSimulationTime) {
+            // simulation has been restarted
+            count = 0;
+        }
+        lastSimulationTime = simulationTime;
+        if (count == 0 || simulationTime >= sampleTime[(head + count - 1) % sampleTime.length] + SAMPLE_INTERVAL) {
+            accumulate(simulationTime);
+        }
+    }
+
+    /**
+     * Accumulates the totals at the end of a run, whether a sample is due or not. Must be called with the data lock held.
+     * 
+     * @return the final totals
+     */
+    public Snapshot complete(double simulationTime) {
+        lastSimulationTime = simulationTime;
+        accumulate(simulationTime);
+        return snapshot;
+    }
+
+    private void accumulate(double simulationTime) {
+        double travelTime = 0.0;
+        double travelDistance = 0.0;
+        double fuel = 0.0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            for (final Vehicle vehicle : roadSegment) {
+                travelTime += vehicle.totalTravelTime();
+                travelDistance += vehicle.totalTravelDistance();
+                fuel += vehicle.totalFuelUsedLiters();
+            }
+            final TrafficSink sink = roadSegment.sink();
+            if (sink != null) {
+                travelTime += sink.totalVehicleTravelTime();
+                travelDistance += sink.totalVehicleTravelDistance();
+                fuel += sink.totalFuelUsedLiters();
+            }
+        }
+        final int capacity = sampleTime.length;
+        if (count == 0 || simulationTime >= sampleTime[(head + count - 1) % capacity] + SAMPLE_INTERVAL) {
+            if (count == capacity) {
+                head = (head + 1) % capacity;
+                --count;
+            }
+            final int index = (head + count) % capacity;
+            sampleTime[index] = simulationTime;
+            sampleTravelTime[index] = travelTime;
+            sampleTravelDistance[index] = travelDistance;
+            sampleFuel[index] = fuel;
+            ++count;
+        }
+        // drop samples that have left the window, keeping the oldest one inside it
+        while (count > 1 && sampleTime[(head + 1) % capacity] <= simulationTime - window) {
+            head = (head + 1) % capacity;
+            --count;
+        }
+        final double dt = simulationTime - sampleTime[head];
+        final double perMinute = dt > 0 ? 60.0 / dt : 0.0;
+        final double travelTimeRate = (travelTime - sampleTravelTime[head]) * perMinute;
+        final double travelDistanceRate = (travelDistance - sampleTravelDistance[head]) * Units.M_TO_KM * perMinute;
+        final double fuelRate = (fuel - sampleFuel[head]) * perMinute;
+        snapshot = new Snapshot(simulationTime, travelTime, travelDistance, fuel, travelTimeRate, travelDistanceRate,
+                fuelRate);
+    }
+
+    /**
+     * @return the totals and rates of the last sample, all 0 before the first sample
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+}
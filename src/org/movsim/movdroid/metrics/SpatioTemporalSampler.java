@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.metrics;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.Route;
+import org.movsim.simulator.vehicles.Vehicle;
+
+/**
+ * <p>
+ * Samples the mean speed along a route into a ring of time slices, the data of a time-space diagram.
+ * </p>
+ * <p>
+ * Every {@code dtOut} seconds of simulation time the vehicles of the route are binned into cells of {@code dxOut} meters
+ * and the mean speed of each cell is written to the next column of the current {@link Grid}. Unlike the core's
+ * {@code SpatioTemporal} output the positions are measured along the whole route, all lanes are sampled and no memory is
+ * allocated per slice. A column is published by incrementing the grid's volatile column count after it has been
+ * written, so the renderer reads only completed columns without taking the simulation's data lock.
+ * </p>
+ */
+public class SpatioTemporalSampler implements SimulationRunnable.UpdateStatusCallback {
+
+    /** number of time slices kept */
+    public static final int DEFAULT_CAPACITY = 240;
+
+    /**
+     * The cells of the route and the ring of sampled columns. A new grid is created whenever the route, the road network
+     * or the simulation is reset.
+     */
+    public static final class Grid {
+        private final Route route;
+        private final double[] segmentOffsets;
+        private final double dxOut;
+        private final double dtOut;
+        private final float[][] columns;
+        private final double startTime;
+        private volatile long columnCount;
+
+        Grid(Route route, double dxOut, double dtOut, int capacity, double startTime) {
+            this.route = route;
+            this.dxOut = dxOut;
+            this.dtOut = dtOut;
+            this.startTime = startTime;
+            segmentOffsets = new double[route.size()];
+            double offset = 0;
+            for (int i = 0; i < segmentOffsets.length; ++i) {
+                segmentOffsets[i] = offset;
+                offset += route.get(i).roadLength();
+            }
+            final int cellCount = Math.max(1, (int) Math.ceil(offset / dxOut));
+            columns = new float[capacity][cellCount];
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the number of cells along the route, the first cell is at the start of the route
+         */
+        public int cellCount() {
+            return columns[0].length;
+        }
+
+        /**
+         * @return the number of columns kept, older columns are overwritten
+         */
+        public int capacity() {
+            return columns.length;
+        }
+
+        /**
+         * @return the number of columns written to this grid so far, column {@code k} is stored in the slot
+         *         {@code k % capacity()}
+         */
+        public long columnCount() {
+            return columnCount;
+        }
+
+        /**
+         * Returns the mean speed of a cell in the given column.
+         * 
+         * @param column
+         *            the number of the column, must be one of the last {@link #capacity()} columns written
+         * @param cell
+         * @return the mean speed in m/s or NaN if there was no vehicle in the cell
+         */
+        public float speed(long column, int cell) {
+            return columns[(int) (column % columns.length)][cell];
+        }
+
+        public double getDxOut() {
+            return dxOut;
+        }
+
+        public double getDtOut() {
+            return dtOut;
+        }
+
+        /**
+         * @return the simulation time of the first column
+         */
+        public double getStartTime() {
+            return startTime;
+        }
+    }
+
+    private final RoadNetwork roadNetwork;
+    private final int capacity;
+
+    private volatile String[] routeRoadIds;
+    private volatile double dxOut = 10.0;
+    private volatile double dtOut = 2.0;
+
+    // accessed by the simulation thread only
+    private String[] gridRoadIds;
+    private int[] counts = new int[0];
+    private double[] speedSums = new double[0];
+    private double nextSampleTime;
+    private double lastSimulationTime = -1;
+
+    private volatile Grid grid;
+
+    public SpatioTemporalSampler(RoadNetwork roadNetwork) {
+        this(roadNetwork, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param capacity
+     *            number of time slices kept
+     */
+    public SpatioTemporalSampler(RoadNetwork roadNetwork, int capacity) {
+        this.roadNetwork = roadNetwork;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the route to sample, the grid is rebuilt with the next sample.
+     * 
+     * @param roadIds
+     *            the user ids of the consecutive road segments of the route, null or empty to stop sampling
+     * @param dxOut
+     *            cell length in meters
+     * @param dtOut
+     *            sampling interval in seconds of simulation time
+     */
+    public void setRoute(String[] roadIds, double dxOut, double dtOut) {
+        this.dxOut = dxOut;
+        this.dtOut = dtOut;
+        this.routeRoadIds = roadIds == null || roadIds.length == 0 ? null : roadIds;
+    }
+
+    /**
+     * @return the grid currently sampled or null if there is no route
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Samples the route if a sampling interval has elapsed, called by the simulation thread after each time step with the
+     * data lock held.
+     */
+    @Override
+    public void updateStatus(double simulationTime) {
+        final boolean restarted = simulationTime < lastSimulationTime;
+        lastSimulationTime = simulationTime;
+        Grid grid = this.grid;
+        if (grid != null && !restarted && simulationTime < nextSampleTime) {
+            return;
+        }
+        if (grid == null || restarted || gridRoadIds != routeRoadIds || !matches(grid.route)) {
+            grid = reset(simulationTime);
+            if (grid == null) {
+                return;
+            }
+        }
+        sample(grid);
+        nextSampleTime += grid.dtOut;
+        if (nextSampleTime <= simulationTime) {
+            // the simulation advanced by more than one interval, do not catch up with stale slices
+            nextSampleTime = simulationTime + grid.dtOut;
+        }
+    }
+
+    private boolean matches(Route route) {
+        final String[] roadIds = gridRoadIds;
+        for (int i = 0; i < route.size(); ++i) {
+            if (roadNetwork.findByUserId(roadIds[i]) != route.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Grid reset(double simulationTime) {
+        final String[] roadIds = routeRoadIds;
+        gridRoadIds = roadIds;
+        grid = null;
+        if (roadIds == null) {
+            return null;
+        }
+        final Route route = new Route("spatioTemporal");
+        for (final String roadId : roadIds) {
+            final RoadSegment roadSegment = roadNetwork.findByUserId(roadId);
+            if (roadSegment == null) {
+                // road network not (yet) loaded or route not part of it
+                return null;
+            }
+            route.add(roadSegment);
+        }
+        final Grid newGrid = new Grid(route, dxOut, dtOut, capacity, simulationTime);
+        if (counts.length != newGrid.cellCount()) {
+            counts = new int[newGrid.cellCount()];
+            speedSums = new double[newGrid.cellCount()];
+        }
+        nextSampleTime = simulationTime;
+        grid = newGrid;
+        return newGrid;
+    }
+
+    private void sample(Grid grid) {
+        final int[] counts = this.counts;
+        final double[] speedSums = this.speedSums;
+        final int maxCell = counts.length - 1;
+        for (int i = 0; i <= maxCell; ++i) {
+            counts[i] = 0;
+            speedSums[i] = 0.0;
+        }
+        final Route route = grid.route;
+        for (int s = 0; s < route.size(); ++s) {
+            final double offset = grid.segmentOffsets[s];
+            for (final Vehicle vehicle : route.get(s)) {
+                if (vehicle.type() == Vehicle.Type.OBSTACLE) {
+                    continue;
+                }
+                final int cell = Math.min(Math.max((int) ((offset + vehicle.getFrontPosition()) / grid.dxOut), 0),
+                        maxCell);
+                counts[cell]++;
+                speedSums[cell] += vehicle.getSpeed();
+            }
+        }
+        final long column = grid.columnCount;
+        final float[] speeds = grid.columns[(int) (column % grid.columns.length)];
+        for (int i = 0; i <= maxCell; ++i) {
+            speeds[i] = counts[i] > 0 ? (float) (speedSums[i] / counts[i]) : Float.NaN;
+        }
+        grid.columnCount = column + 1;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.movsim.output.detector.LoopDetector;
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.utilities.Units;
+
+/**
+ * <p>
+ * Virtual loop detectors placed by the viewer, independent of the detectors configured in the scenario.
+ * </p>
+ * <p>
+ * Each detector is a core {@link LoopDetector} advanced after every simulation step. Whenever it has aggregated a sample
+ * interval, its flow and mean speed over all lanes are appended to a {@link DetectorSeries}, so the cost per step is that
+ * of the loop detector plus O(1) per detector, independent of the length of the history. The series are written by the
+ * simulation thread with the data lock held, readers must hold the lock as well.
+ * </p>
+ * <p>
+ * A loop detector takes its first sample as soon as its sample interval has elapsed since time 0. Detectors placed
+ * during a run would therefore start with a sample over a fraction of the interval; it is discarded, so that every
+ * sample in a series covers a full interval.
+ * </p>
+ */
+public class VirtualDetectors implements SimulationRunnable.UpdateStatusCallback {
+
+    /** number of samples kept per detector */
+    public static final int DEFAULT_CAPACITY = 60;
+
+    // tolerance of the loop detector's sample test for the summed up simulation time
+    private static final double SAMPLE_TIME_TOLERANCE = 1e-7;
+
+    /**
+     * A detector at a position on a road segment and its time series.
+     */
+    public static final class Detector {
+        private final RoadSegment roadSegment;
+        private final String roadId;
+        private final double position;
+        private final LoopDetector loopDetector;
+        private final DetectorSeries series;
+        // the loop detector's time of its last sample, it starts at 0 as well
+        private double lastSampleTime;
+        // set for a detector placed during a run, its first sample covers only part of the interval
+        private boolean discardSample;
+
+        Detector(RoadSegment roadSegment, String roadId, double position, double dtSample, int capacity,
+                boolean placedDuringRun) {
+            this.roadSegment = roadSegment;
+            this.roadId = roadId;
+            this.position = position;
+            loopDetector = new LoopDetector(roadSegment, position, dtSample, false, false);
+            series = new DetectorSeries(capacity);
+            discardSample = placedDuringRun;
+        }
+
+        /**
+         * @return true if the loop detector aggregates a sample in the time step ending at the given time; the same test
+         *         as in {@link LoopDetector#timeStep(double, double, long)}, to be evaluated before it
+         */
+        boolean isSampleDue(double simulationTime) {
+            return simulationTime - lastSampleTime + SAMPLE_TIME_TOLERANCE >= loopDetector.getDtSample();
+        }
+
+        public String getRoadId() {
+            return roadId;
+        }
+
+        public RoadSegment getRoadSegment() {
+            return roadSegment;
+        }
+
+        /**
+         * @return the position of the detector on its road segment in meters
+         */
+        public double getPosition() {
+            return position;
+        }
+
+        public DetectorSeries getSeries() {
+            return series;
+        }
+    }
+
+    private final RoadNetwork roadNetwork;
+    private final int capacity;
+
+    private volatile String[] specs;
+    private volatile double dtSample = 10.0;
+
+    // accessed by the simulation thread only
+    private String[] detectorSpecs;
+    private double lastSimulationTime = -1;
+    private long iteration;
+
+    private volatile List<Detector> detectors = Collections.emptyList();
+
+    public VirtualDetectors(RoadNetwork roadNetwork) {
+        this(roadNetwork, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param capacity
+     *            number of samples kept per detector
+     */
+    public VirtualDetectors(RoadNetwork roadNetwork, int capacity) {
+        this.roadNetwork = roadNetwork;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the detectors, they are created with the next simulation step.
+     * 
+     * @param specs
+     *            one {@code roadId:position} per detector, null or empty for none
+     * @param dtSample
+     *            sample interval in seconds of simulation time
+     * @throws IllegalArgumentException
+     *             if a spec is malformed, see {@link #checkSpec(String)}
+     */
+    public void setDetectors(String[] specs, double dtSample) {
+        if (specs != null) {
+            for (final String spec : specs) {
+                checkSpec(spec);
+            }
+        }
+        this.dtSample = dtSample;
+        this.specs = specs == null || specs.length == 0 ? null : specs;
+    }
+
+    /**
+     * @return the current detectors, their series must be read with the simulation's data lock held
+     */
+    public List<Detector> getDetectors() {
+        return detectors;
+    }
+
+    /**
+     * Advances the detectors, called by the simulation thread after each time step with the data lock held.
+     */
+    @Override
+    public void updateStatus(double simulationTime) {
+        final double dt = simulationTime - lastSimulationTime;
+        final boolean restarted = dt < 0 || lastSimulationTime < 0;
+        lastSimulationTime = simulationTime;
+        if (restarted || detectorSpecs != specs) {
+            // the detectors count from the next step on
+            reset(!restarted);
+            return;
+        }
+        final List<Detector> detectors = this.detectors;
+        for (int i = 0, size = detectors.size(); i < size; ++i) {
+            final Detector detector = detectors.get(i);
+            final boolean sampleDue = detector.isSampleDue(simulationTime);
+            detector.loopDetector.timeStep(dt, simulationTime, iteration);
+            if (sampleDue) {
+                if (roadNetwork.findByUserId(detector.roadId) != detector.roadSegment) {
+                    // the road network has been rebuilt
+                    reset(true);
+                    return;
+                }
+                detector.lastSampleTime = simulationTime;
+                if (detector.discardSample) {
+                    detector.discardSample = false;
+                    continue;
+                }
+                final LoopDetector loopDetector = detector.loopDetector;
+                // the loop detector's flow over all lanes is the mean flow per lane, the series keeps the total
+                // the mean speed is undefined if no vehicle has passed
+                detector.series.add(Units.INVS_TO_INVH * loopDetector.getVehCountOutputAllLanes()
+                        / loopDetector.getDtSample(),
+                        loopDetector.getVehCountOutputAllLanes() > 0 ? loopDetector.getMeanSpeedAllLanes() : Double.NaN);
+            }
+        }
+        ++iteration;
+    }
+
+    /**
+     * Checks that the detector spec has the form {@code roadId:position} with a numeric position.
+     * 
+     * @param spec
+     * @throws IllegalArgumentException
+     *             naming the spec if it is malformed
+     */
+    public static void checkSpec(String spec) {
+        final int colon = spec.indexOf(':');
+        if (colon <= 0 || spec.substring(0, colon).trim().length() == 0) {
+            throw new IllegalArgumentException("detector \"" + spec + "\" is not of the form roadId:position");
+        }
+        try {
+            Double.parseDouble(spec.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("detector \"" + spec + "\" has no numeric position");
+        }
+    }
+
+    /**
+     * @param duringRun
+     *            true if the detectors are placed during a run rather than at its start
+     */
+    private void reset(boolean duringRun) {
+        final String[] specs = this.specs;
+        detectorSpecs = specs;
+        iteration = 0;
+        if (specs == null) {
+            detectors = Collections.emptyList();
+            return;
+        }
+        final List<Detector> newDetectors = new ArrayList<Detector>(specs.length);
+        for (final String spec : specs) {
+            // checked by setDetectors
+            final int colon = spec.indexOf(':');
+            final String roadId = spec.substring(0, colon).trim();
+            final double position = Double.parseDouble(spec.substring(colon + 1).trim());
+            final RoadSegment roadSegment = roadNetwork.findByUserId(roadId);
+            if (roadSegment != null && position >= 0 && position <= roadSegment.roadLength()) {
+                newDetectors.add(new Detector(roadSegment, roadId, position, dtSample, capacity, duringRun));
+            }
+        }
+        detectors = newDetectors;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.recording;
+
+import java.util.Arrays;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.vehicles.PhysicalQuantities;
+import org.movsim.simulator.vehicles.Vehicle;
+
+/**
+ * <p>
+ * Records the current run as a {@link GhostRun}: the positions of all vehicles, sampled once per sample interval of
+ * simulation time and quantized into the packed array of the ghost run.
+ * </p>
+ * <p>
+ * Registered as update status callback, it records every run from its start; a restart, seen as simulation time going
+ * back, starts the recording anew. A run that does not fit the packed format, or that exceeds the maximum number of frames,
+ * gives no ghost.
+ * </p>
+ */
+public class GhostRecorder implements SimulationRunnable.UpdateStatusCallback {
+
+    /** default sample interval in seconds of simulation time */
+    public static final double DEFAULT_SAMPLE_INTERVAL = 1.0;
+    /** two hours at the default sample interval */
+    public static final int DEFAULT_MAX_FRAMES = 7200;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final RoadNetwork roadNetwork;
+    private final SimulationRunnable simulationRunnable;
+    private final double sampleInterval;
+    private final int maxFrames;
+
+    // guarded by this
+    private boolean valid;
+    private double lastSimulationTime = -1;
+    private double nextSampleTime;
+    private String[] roadIds;
+    private int frameCount;
+    private double[] frameTimes = new double[0];
+    private int[] frameOffsets = new int[1];
+    private int[] data = new int[0];
+    private int size;
+    // id << 16 | index of the vehicles of the previous frame, sorted, to link them to the next frame
+    private long[] previousKeys = new long[0];
+    private long[] currentKeys = new long[0];
+    private int previousCount;
+
+    public GhostRecorder(RoadNetwork roadNetwork, SimulationRunnable simulationRunnable) {
+        this(roadNetwork, simulationRunnable, DEFAULT_SAMPLE_INTERVAL, DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param simulationRunnable
+     * @param sampleInterval
+     *            seconds of simulation time between two frames
+     * @param maxFrames
+     *            the number of frames after which the recording is given up
+     */
+    public GhostRecorder(RoadNetwork roadNetwork, SimulationRunnable simulationRunnable, double sampleInterval,
+            int maxFrames) {
+        this.roadNetwork = roadNetwork;
+        this.simulationRunnable = simulationRunnable;
+        this.sampleInterval = sampleInterval;
+        this.maxFrames = maxFrames;
+        reset();
+    }
+
+    /**
+     * Discards the recording, the next run is recorded from its start.
+     */
+    public synchronized void reset() {
+        valid = true;
+        lastSimulationTime = -1;
+        nextSampleTime = 0;
+        roadIds = null;
+        frameCount = 0;
+        size = 0;
+        previousCount = 0;
+    }
+
+    /**
+     * Ends the recording of the run.
+     * 
+     * @param score
+     *            the simulation time of the game
+     * @return the ghost of the run, null if the run could not be recorded
+     */
+    public synchronized GhostRun finish(String projectName, double score) {
+        final GhostRun ghostRun;
+        if (!valid || frameCount == 0) {
+            ghostRun = null;
+        } else {
+            final double[] times = new double[frameCount];
+            System.arraycopy(frameTimes, 0, times, 0, frameCount);
+            final int[] offsets = new int[frameCount + 1];
+            System.arraycopy(frameOffsets, 0, offsets, 0, frameCount);
+            offsets[frameCount] = size;
+            final int[] packed = new int[size];
+            System.arraycopy(data, 0, packed, 0, size);
+            ghostRun = new GhostRun(projectName, score, roadIds, times, offsets, packed);
+        }
+        valid = false;
+        return ghostRun;
+    }
+
+    /**
+     * Samples the vehicles once per sample interval, called by the simulation thread after each time step with the data
+     * lock held.
+     */
+    @Override
+    public synchronized void updateStatus(double simulationTime) {
+        if (simulationTime < lastSimulationTime) {
+            // simulation has been restarted
+            reset();
+        }
+        lastSimulationTime = simulationTime;
+        final double dt = simulationRunnable.timeStep();
+        // half a time step of tolerance for the rounding of the summed time steps
+        if (!valid || simulationTime + 0.5 * dt < nextSampleTime) {
+            return;
+        }
+        if (frameCount == 0 && simulationTime >= sampleInterval) {
+            // the start of the run was missed
+            valid = false;
+            return;
+        }
+        if (frameCount == maxFrames) {
+            valid = false;
+            return;
+        }
+        if (roadIds == null && !indexRoadSegments()) {
+            valid = false;
+            return;
+        }
+        nextSampleTime += sampleInterval;
+        // the vehicles have been moved by the time step that started at the given time
+        valid = sample(simulationTime + dt);
+    }
+
+    private boolean indexRoadSegments() {
+        if (roadNetwork.size() > GhostRun.MAX_SEGMENTS) {
+            return false;
+        }
+        roadIds = new String[roadNetwork.size()];
+        int index = 0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            roadIds[index++] = roadSegment.userId();
+        }
+        return true;
+    }
+
+    private boolean sample(double frameTime) {
+        int vehicleCount = 0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            for (final Vehicle vehicle : roadSegment) {
+                if (vehicle.type() != Vehicle.Type.OBSTACLE) {
+                    ++vehicleCount;
+                }
+            }
+        }
+        if (vehicleCount >= GhostRun.NO_NEXT) {
+            return false;
+        }
+        ensureCapacity(vehicleCount);
+        final int start = size;
+        int segment = 0;
+        int index = 0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            for (final Vehicle vehicle : roadSegment) {
+                if (vehicle.type() == Vehicle.Type.OBSTACLE) {
+                    continue;
+                }
+                final PhysicalQuantities physical = vehicle.physicalQuantities();
+                final int lane = vehicle.getLane();
+                final double position = Math.max(0, physical.getMidPosition());
+                if (lane < GhostRun.MIN_LANE || lane > GhostRun.MAX_LANE
+                        || position / GhostRun.RESOLUTION > GhostRun.MAX_POSITION) {
+                    return false;
+                }
+                final double maxSize = GhostRun.MAX_SIZE * GhostRun.RESOLUTION;
+                data[size++] = GhostRun.pack(segment, lane, position);
+                data[size++] = GhostRun.packSize(Math.min(maxSize, physical.getLength()),
+                        Math.min(maxSize, physical.getWidth()));
+                currentKeys[index] = vehicle.getId() << 16 | index;
+                link(vehicle.getId(), index);
+                ++index;
+            }
+            ++segment;
+        }
+        Arrays.sort(currentKeys, 0, vehicleCount);
+        final long[] keys = previousKeys;
+        previousKeys = currentKeys;
+        currentKeys = keys;
+        previousCount = vehicleCount;
+        frameTimes[frameCount] = frameTime;
+        frameOffsets[frameCount] = start;
+        ++frameCount;
+        return true;
+    }
+
+    /**
+     * Points the vehicle's entry in the previous frame to its index in the current frame.
+     */
+    private void link(long id, int index) {
+        if (frameCount == 0) {
+            return;
+        }
+        int low = 0;
+        int high = previousCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midId = previousKeys[mid] >>> 16;
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                final int entry = frameOffsets[frameCount - 1] + 2 * (int) (previousKeys[mid] & 0xffff) + 1;
+                data[entry] = data[entry] & 0xffff | index << 16;
+                return;
+            }
+        }
+    }
+
+    private void ensureCapacity(int vehicleCount) {
+        if (frameTimes.length == frameCount) {
+            final int frames = Math.max(64, 2 * frameCount);
+            final double[] times = new double[frames];
+            System.arraycopy(frameTimes, 0, times, 0, frameCount);
+            frameTimes = times;
+            final int[] offsets = new int[frames + 1];
+            System.arraycopy(frameOffsets, 0, offsets, 0, frameCount);
+            frameOffsets = offsets;
+        }
+        if (data.length < size + 2 * vehicleCount) {
+            final int[] packed = new int[Math.max(Math.max(INITIAL_CAPACITY, 2 * data.length), size + 2 * vehicleCount)];
+            System.arraycopy(data, 0, packed, 0, size);
+            data = packed;
+        }
+        if (currentKeys.length < vehicleCount) {
+            currentKeys = new long[Math.max(256, 2 * vehicleCount)];
+        }
+    }
+}
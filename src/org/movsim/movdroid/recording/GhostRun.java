@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.recording;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * The decimated, quantized trajectories of all vehicles of a recorded game, to be drawn as a ghost next to a new run. Built
+ * by the {@link GhostRecorder}.
+ * </p>
+ * <p>
+ * The frames are held in one packed int array, two ints per vehicle and frame:
+ * 
+ * <pre>
+ * int 0: road segment index (8 bits) | lane + 2 (4 bits) | mid position on the road segment in 0.1 m (20 bits)
+ * int 1: index of the vehicle in the next frame, 0xffff if none (16 bits) | length in 0.1 m (8 bits) | width in 0.1 m (8 bits)
+ * </pre>
+ * 
+ * The road segment index refers to the user ids of the road segments in the header, so a ghost survives a rebuilt road
+ * network. With the link to the next frame a vehicle is interpolated between two frames without a search.
+ * </p>
+ * <p>
+ * Stored gzipped: magic, version, project name, score, road segment user ids, frame times, frame offsets and the packed
+ * array.
+ * </p>
+ */
+public final class GhostRun {
+
+    /** "MVGH" */
+    public static final int MAGIC = 0x4D564748;
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".ghost";
+
+    /** quantization of positions and vehicle sizes in m */
+    public static final double RESOLUTION = 0.1;
+    static final int MAX_SEGMENTS = 0xff;
+    // movsim lanes start at -2, the off-road lane
+    static final int MIN_LANE = -2;
+    static final int MAX_LANE = 0xf + MIN_LANE;
+    static final int MAX_POSITION = 0xfffff;
+    static final int MAX_SIZE = 0xff;
+    static final int NO_NEXT = 0xffff;
+
+    private final String projectName;
+    private final double score;
+    private final String[] roadIds;
+    private final double[] frameTimes;
+    // frame i is data[frameOffsets[i]] until data[frameOffsets[i + 1]]
+    private final int[] frameOffsets;
+    private final int[] data;
+
+    GhostRun(String projectName, double score, String[] roadIds, double[] frameTimes, int[] frameOffsets, int[] data) {
+        this.projectName = projectName;
+        this.score = score;
+        this.roadIds = roadIds;
+        this.frameTimes = frameTimes;
+        this.frameOffsets = frameOffsets;
+        this.data = data;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * @return the simulation time of the game in seconds, lower is better
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the user ids of the road segments, by road segment index
+     */
+    public String[] getRoadIds() {
+        return roadIds;
+    }
+
+    public int getFrameCount() {
+        return frameTimes.length;
+    }
+
+    /**
+     * @return the packed vehicle data of all frames
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the offset of the first vehicle of the frame in the packed data
+     */
+    public int frameStart(int frame) {
+        return frameOffsets[frame];
+    }
+
+    /**
+     * @return the offset after the last vehicle of the frame in the packed data
+     */
+    public int frameEnd(int frame) {
+        return frameOffsets[frame + 1];
+    }
+
+    /**
+     * @return the last frame at or before the simulation time, -1 if the time is before the first or after the last frame
+     */
+    public int frameAt(double simulationTime) {
+        final int last = frameTimes.length - 1;
+        if (last < 0 || simulationTime < frameTimes[0] || simulationTime > frameTimes[last]) {
+            return -1;
+        }
+        int low = 0;
+        int high = last;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (frameTimes[mid] <= simulationTime) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the fraction of the way from the frame to the next one at the simulation time, 0 for the last frame
+     */
+    public double fraction(int frame, double simulationTime) {
+        if (frame + 1 >= frameTimes.length) {
+            return 0;
+        }
+        return (simulationTime - frameTimes[frame]) / (frameTimes[frame + 1] - frameTimes[frame]);
+    }
+
+    static int pack(int segment, int lane, double position) {
+        return segment << 24 | (lane - MIN_LANE) << 20 | (int) Math.round(position / RESOLUTION);
+    }
+
+    static int packSize(double length, double width) {
+        return NO_NEXT << 16 | (int) Math.round(length / RESOLUTION) << 8 | (int) Math.round(width / RESOLUTION);
+    }
+
+    public static int segment(int packed) {
+        return packed >>> 24;
+    }
+
+    public static int lane(int packed) {
+        return (packed >>> 20 & 0xf) + MIN_LANE;
+    }
+
+    public static double position(int packed) {
+        return (packed & MAX_POSITION) * RESOLUTION;
+    }
+
+    /**
+     * @return the offset of the vehicle in the packed data of the next frame, -1 if it is not in the next frame
+     */
+    public static int next(int nextFrameStart, int packedSize) {
+        final int index = packedSize >>> 16;
+        return index == NO_NEXT ? -1 : nextFrameStart + 2 * index;
+    }
+
+    public static double length(int packedSize) {
+        return (packedSize >>> 8 & MAX_SIZE) * RESOLUTION;
+    }
+
+    public static double width(int packedSize) {
+        return (packedSize & MAX_SIZE) * RESOLUTION;
+    }
+
+    /**
+     * Writes the ghost run to the given file. The file is replaced atomically: the run is written to a temporary file,
+     * synced and renamed, so a crash while saving leaves the previous ghost intact.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmpFile);
+        final GZIPOutputStream gzip = new GZIPOutputStream(fos);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(projectName);
+            out.writeDouble(score);
+            out.writeInt(roadIds.length);
+            for (final String roadId : roadIds) {
+                out.writeUTF(roadId);
+            }
+            out.writeInt(frameTimes.length);
+            for (int i = 0; i < frameTimes.length; ++i) {
+                out.writeDouble(frameTimes[i]);
+                out.writeInt(frameOffsets[i]);
+            }
+            out.writeInt(data.length);
+            for (final int value : data) {
+                out.writeInt(value);
+            }
+            out.flush();
+            gzip.finish();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("cannot replace ghost run " + file);
+        }
+    }
+
+    /**
+     * Reads the ghost run from the file.
+     * 
+     * @param file
+     * @return the ghost run
+     * @throws IOException
+     *             if the file cannot be read or is no ghost run of this version
+     */
+    public static GhostRun read(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a ghost run of version " + VERSION + ": " + file);
+            }
+            final String projectName = in.readUTF();
+            final double score = in.readDouble();
+            final String[] roadIds = new String[in.readInt()];
+            for (int i = 0; i < roadIds.length; ++i) {
+                roadIds[i] = in.readUTF();
+            }
+            final int frameCount = in.readInt();
+            final double[] frameTimes = new double[frameCount];
+            final int[] frameOffsets = new int[frameCount + 1];
+            for (int i = 0; i < frameCount; ++i) {
+                frameTimes[i] = in.readDouble();
+                frameOffsets[i] = in.readInt();
+            }
+            final int[] data = new int[in.readInt()];
+            for (int i = 0; i < data.length; ++i) {
+                data[i] = in.readInt();
+            }
+            frameOffsets[frameCount] = data.length;
+            return new GhostRun(projectName, score, roadIds, frameTimes, frameOffsets, data);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.recording;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Converts a recording in the binary {@link TrajectoryFormat} to CSV with one line per vehicle and step:
+ * </p>
+ * 
+ * <pre>
+ * step,time,id,road,lane,position,speed,acceleration
+ * </pre>
+ * <p>
+ * where road is the user id of the road segment. Runs on the desktop as well:
+ * {@code java TrajectoryCsvConverter recording.mtr [recording.csv]}.
+ * </p>
+ */
+public final class TrajectoryCsvConverter {
+
+    private TrajectoryCsvConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: TrajectoryCsvConverter <recording" + TrajectoryFormat.FILE_EXTENSION
+                    + "> [output.csv]");
+            System.exit(1);
+        }
+        final File in = new File(args[0]);
+        final File out;
+        if (args.length > 1) {
+            out = new File(args[1]);
+        } else {
+            final String name = in.getName();
+            final int dot = name.lastIndexOf('.');
+            out = new File(in.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".csv");
+        }
+        final long frames = convert(in, out);
+        System.out.println("converted " + frames + " steps to " + out);
+    }
+
+    /**
+     * Converts the recording in file {@code in} to the CSV file {@code out}.
+     * 
+     * @return the number of steps converted
+     */
+    public static long convert(File in, File out) throws IOException {
+        final InputStream input = new FileInputStream(in);
+        try {
+            final Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"));
+            try {
+                return convert(input, output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Converts a recording to CSV. A truncated last frame is ignored.
+     * 
+     * @return the number of steps converted
+     * @throws IOException
+     *             if reading or writing fails or the input is not a recording
+     */
+    public static long convert(InputStream in, Writer out) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (data.readInt() != TrajectoryFormat.MAGIC) {
+            throw new IOException("not a trajectory recording");
+        }
+        final int version = data.readInt();
+        if (version != TrajectoryFormat.VERSION) {
+            throw new IOException("unsupported trajectory format version " + version);
+        }
+        readString(data); // project name
+        final int segmentCount = data.readInt();
+        final Map<Integer, String> roadIds = new HashMap<Integer, String>();
+        for (int i = 0; i < segmentCount; ++i) {
+            final int id = data.readInt();
+            roadIds.put(Integer.valueOf(id), readString(data));
+        }
+
+        out.write("step,time,id,road,lane,position,speed,acceleration\n");
+        final StringBuilder line = new StringBuilder(128);
+        long frames = 0;
+        byte[] frame = new byte[0];
+        while (true) {
+            final int frameBytes;
+            try {
+                frameBytes = data.readInt();
+                if (frame.length < frameBytes) {
+                    frame = new byte[frameBytes];
+                }
+                data.readFully(frame, 0, frameBytes);
+            } catch (EOFException e) {
+                break;
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(frame, 0, frameBytes);
+            final long step = buffer.getLong();
+            final double time = buffer.getDouble();
+            final int n = buffer.getInt();
+            final int ids = buffer.position();
+            final int segments = ids + 4 * n;
+            final int lanes = segments + 4 * n;
+            final int positions = lanes + n;
+            final int speeds = positions + 4 * n;
+            final int accelerations = speeds + 4 * n;
+            for (int i = 0; i < n; ++i) {
+                final int segmentId = buffer.getInt(segments + 4 * i);
+                final String roadId = roadIds.get(Integer.valueOf(segmentId));
+                line.setLength(0);
+                line.append(step).append(',').append(time).append(',').append(buffer.getInt(ids + 4 * i)).append(',')
+                        .append(roadId != null ? roadId : String.valueOf(segmentId)).append(',')
+                        .append(buffer.get(lanes + i)).append(',').append(buffer.getFloat(positions + 4 * i))
+                        .append(',').append(buffer.getFloat(speeds + 4 * i)).append(',')
+                        .append(buffer.getFloat(accelerations + 4 * i)).append('\n');
+                out.write(line.toString());
+            }
+            ++frames;
+        }
+        out.flush();
+        return frames;
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        final byte[] bytes = new byte[data.readUnsignedShort()];
+        data.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
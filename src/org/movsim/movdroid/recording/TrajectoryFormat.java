@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.recording;
+
+/**
+ * <p>
+ * Binary columnar trajectory format written by the {@link TrajectoryRecorder}.
+ * </p>
+ * <p>
+ * All values are big-endian. The file starts with a header:
+ * 
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * string project name
+ * int    road segment count, then per road segment: int id, string user id
+ * </pre>
+ * 
+ * followed by one frame per recorded simulation step. The columns of a frame are stored one after the other:
+ * 
+ * <pre>
+ * int    frame length in bytes, excluding this field
+ * long   step number since the start of the recording
+ * double simulation time in s
+ * int    vehicle count n
+ * int[n]   vehicle id
+ * int[n]   road segment id
+ * byte[n]  lane
+ * float[n] front position on the road segment in m
+ * float[n] speed in m/s
+ * float[n] acceleration in m/s^2
+ * </pre>
+ * 
+ * A string is a short length followed by that many bytes of UTF-8. Steps that could not be recorded are missing, they
+ * show as gaps in the step numbers. A truncated last frame is ignored by readers.
+ * </p>
+ */
+public final class TrajectoryFormat {
+
+    /** "MVTR" */
+    public static final int MAGIC = 0x4D565452;
+    public static final int VERSION = 1;
+
+    /** fixed part of a frame after the length field: step number, time and vehicle count */
+    public static final int FRAME_HEADER_BYTES = 8 + 8 + 4;
+    /** bytes per vehicle and frame */
+    public static final int VEHICLE_BYTES = 4 + 4 + 1 + 4 + 4 + 4;
+
+    public static final String FILE_EXTENSION = ".mtr";
+
+    private TrajectoryFormat() {
+    }
+
+    /**
+     * @return the size of a frame with the given number of vehicles, including the length field
+     */
+    public static int frameBytes(int vehicleCount) {
+        return 4 + FRAME_HEADER_BYTES + vehicleCount * VEHICLE_BYTES;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.recording;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.movsim.simulator.SimulationRunnable;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Process;
+
+/**
+ * <p>
+ * Records the trajectories of all vehicles, one frame per simulation step, in the binary {@link TrajectoryFormat}.
+ * </p>
+ * <p>
+ * Registered as update status callback, the simulation thread writes each frame into a direct byte buffer taken from a
+ * fixed pool. Full buffers are handed to a writer thread which writes them to a file channel and returns them to the pool.
+ * The memory used is bounded by the pool. The simulation thread never waits for the writer: if no buffer is free, frames
+ * are dropped and counted until the writer has caught up.
+ * </p>
+ */
+public class TrajectoryRecorder implements SimulationRunnable.UpdateStatusCallback {
+
+    static final Logger logger = LoggerFactory.getLogger(TrajectoryRecorder.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 8;
+
+    // marks the end of a recording in the queue of full buffers
+    private static final ByteBuffer END_OF_RECORDING = ByteBuffer.allocate(0);
+
+    private final RoadNetwork roadNetwork;
+    private final int bufferSize;
+    private final int bufferCount;
+
+    // pool of buffers, allocated with the first recording
+    private BlockingQueue<ByteBuffer> freeBuffers;
+    // buffers to be written by the writer of the current recording
+    private BlockingQueue<ByteBuffer> fullBuffers;
+
+    // guarded by this
+    private boolean recording;
+    private String projectName;
+    private ByteBuffer current;
+    private boolean headerWritten;
+    private long step;
+    private long droppedFrames;
+
+    public TrajectoryRecorder(RoadNetwork roadNetwork) {
+        this(roadNetwork, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param roadNetwork
+     * @param bufferSize
+     *            size of each buffer in bytes, a frame larger than a buffer is dropped
+     * @param bufferCount
+     *            number of buffers in the pool
+     */
+    public TrajectoryRecorder(RoadNetwork roadNetwork, int bufferSize, int bufferCount) {
+        this.roadNetwork = roadNetwork;
+        this.bufferSize = bufferSize;
+        this.bufferCount = bufferCount;
+    }
+
+    /**
+     * Starts a recording, the file is opened and written by the writer thread. Does nothing if a recording is in progress.
+     * 
+     * @param file
+     * @param projectName
+     *            written to the header
+     */
+    public synchronized void start(File file, String projectName) {
+        if (recording) {
+            return;
+        }
+        if (freeBuffers == null) {
+            freeBuffers = new ArrayBlockingQueue<ByteBuffer>(bufferCount);
+            for (int i = 0; i < bufferCount; ++i) {
+                freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+            }
+        }
+        // a queue per recording, the writer of the previous recording may still be draining its own; one more slot for
+        // the end marker
+        fullBuffers = new ArrayBlockingQueue<ByteBuffer>(bufferCount + 1);
+        this.projectName = projectName;
+        current = freeBuffers.poll();
+        headerWritten = false;
+        step = 0;
+        droppedFrames = 0;
+        recording = true;
+        new Thread(new Writer(file, fullBuffers, freeBuffers), "TrajectoryWriter").start();
+        logger.info("recording trajectories to {}", file);
+    }
+
+    /**
+     * Stops the recording. The frames recorded so far are written and the file is closed by the writer thread.
+     */
+    public synchronized void stop() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        if (current != null) {
+            handOff(current);
+            current = null;
+        }
+        fullBuffers.add(END_OF_RECORDING);
+        logger.info("recorded {} steps, dropped {}", Long.valueOf(step), Long.valueOf(droppedFrames));
+    }
+
+    public synchronized boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return the number of steps of the current or last recording that were dropped because no buffer was free
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Records a frame, called by the simulation thread after each time step with the data lock held.
+     */
+    @Override
+    public synchronized void updateStatus(double simulationTime) {
+        if (!recording) {
+            return;
+        }
+        final long frameStep = step++;
+        if (!headerWritten) {
+            if (!ensureCapacity(headerBytes())) {
+                ++droppedFrames;
+                return;
+            }
+            writeHeader(current);
+            headerWritten = true;
+        }
+        int vehicleCount = 0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            for (final Vehicle vehicle : roadSegment) {
+                if (vehicle.type() != Vehicle.Type.OBSTACLE) {
+                    ++vehicleCount;
+                }
+            }
+        }
+        if (!ensureCapacity(TrajectoryFormat.frameBytes(vehicleCount))) {
+            ++droppedFrames;
+            return;
+        }
+        writeFrame(current, frameStep, simulationTime, vehicleCount);
+    }
+
+    /**
+     * Makes sure the current buffer has the given number of bytes left, handing it off and taking a free one if necessary.
+     * 
+     * @return false if the bytes do not fit, the frame must be dropped
+     */
+    private boolean ensureCapacity(int bytes) {
+        if (bytes > bufferSize) {
+            return false;
+        }
+        if (current != null && current.remaining() >= bytes) {
+            return true;
+        }
+        if (current != null) {
+            handOff(current);
+        }
+        // never wait for the writer
+        current = freeBuffers.poll();
+        return current != null;
+    }
+
+    private void handOff(ByteBuffer buffer) {
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            fullBuffers.add(buffer);
+        } else {
+            buffer.clear();
+            freeBuffers.add(buffer);
+        }
+    }
+
+    private int headerBytes() {
+        int bytes = 4 + 4 + stringBytes(projectName) + 4;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            bytes += 4 + stringBytes(roadSegment.userId());
+        }
+        return bytes;
+    }
+
+    private void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(TrajectoryFormat.MAGIC);
+        buffer.putInt(TrajectoryFormat.VERSION);
+        putString(buffer, projectName);
+        buffer.putInt(roadNetwork.size());
+        for (final RoadSegment roadSegment : roadNetwork) {
+            buffer.putInt(roadSegment.id());
+            putString(buffer, roadSegment.userId());
+        }
+    }
+
+    /**
+     * Writes the columns with absolute puts, so that the vehicles are iterated only once.
+     */
+    private void writeFrame(ByteBuffer buffer, long frameStep, double simulationTime, int vehicleCount) {
+        final int start = buffer.position();
+        final int frameBytes = TrajectoryFormat.frameBytes(vehicleCount);
+        buffer.putInt(frameBytes - 4);
+        buffer.putLong(frameStep);
+        buffer.putDouble(simulationTime);
+        buffer.putInt(vehicleCount);
+        final int ids = buffer.position();
+        final int segments = ids + 4 * vehicleCount;
+        final int lanes = segments + 4 * vehicleCount;
+        final int positions = lanes + vehicleCount;
+        final int speeds = positions + 4 * vehicleCount;
+        final int accelerations = speeds + 4 * vehicleCount;
+        int i = 0;
+        for (final RoadSegment roadSegment : roadNetwork) {
+            final int segmentId = roadSegment.id();
+            for (final Vehicle vehicle : roadSegment) {
+                if (vehicle.type() == Vehicle.Type.OBSTACLE) {
+                    continue;
+                }
+                buffer.putInt(ids + 4 * i, (int) vehicle.getId());
+                buffer.putInt(segments + 4 * i, segmentId);
+                buffer.put(lanes + i, (byte) vehicle.getLane());
+                buffer.putFloat(positions + 4 * i, (float) vehicle.getFrontPosition());
+                buffer.putFloat(speeds + 4 * i, (float) vehicle.getSpeed());
+                buffer.putFloat(accelerations + 4 * i, (float) vehicle.getAcc());
+                ++i;
+            }
+        }
+        buffer.position(start + frameBytes);
+    }
+
+    private static int stringBytes(String s) {
+        return 2 + utf8(s).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        final byte[] bytes = utf8(s);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return (s == null ? "" : s).getBytes("UTF-8");
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the full buffers of one recording to the file and returns them to the pool.
+     */
+    private static final class Writer implements Runnable {
+        private final File file;
+        private final BlockingQueue<ByteBuffer> fullBuffers;
+        private final BlockingQueue<ByteBuffer> freeBuffers;
+
+        Writer(File file, BlockingQueue<ByteBuffer> fullBuffers, BlockingQueue<ByteBuffer> freeBuffers) {
+            this.file = file;
+            this.fullBuffers = fullBuffers;
+            this.freeBuffers = freeBuffers;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            FileOutputStream out = null;
+            FileChannel channel = null;
+            try {
+                final File dir = file.getParentFile();
+                if (dir != null) {
+                    dir.mkdirs();
+                }
+                out = new FileOutputStream(file);
+                channel = out.getChannel();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                while (true) {
+                    final ByteBuffer buffer = fullBuffers.take();
+                    if (buffer == END_OF_RECORDING) {
+                        break;
+                    }
+                    try {
+                        while (channel != null && buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        // keep draining, so that the buffers return to the pool
+                        channel = null;
+                    }
+                    buffer.clear();
+                    freeBuffers.add(buffer);
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.util.ByteBufferInputStream;
+
+/**
+ * <p>
+ * Precompiled scenario: the movsim xml, the OpenDRIVE network and the view properties of one project packed into a single
+ * binary asset.
+ * </p>
+ * <p>
+ * Layout (big endian):
+ * 
+ * <pre>
+ * int    magic ('MSB1')
+ * short  format version
+ * short  section count
+ * long   fingerprint of the source files
+ * n * { int type, int offset, int length }   section table, offsets relative to the start of the bundle
+ * ...    section payloads
+ * </pre>
+ * 
+ * </p>
+ * <p>
+ * The MovSim core builds its road network and vehicle types only through its own xml readers, so the sections hold the
+ * compacted xml documents (comments and formatting whitespace removed) rather than decoded objects. The bundle is read in
+ * place from a memory-mapped or direct buffer and replaces the three separate asset streams.
+ * </p>
+ * <p>
+ * Projects without a precompiled asset are represented by an uncompiled bundle holding the three xml files as read, so
+ * that loading and caching handle both cases alike.
+ * </p>
+ */
+public class ScenarioBundle {
+
+    public static final String FILE_ENDING = ".msb";
+
+    static final int MAGIC = 0x4D534231; // "MSB1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int SECTION_ENTRY_SIZE = 12;
+
+    static final int SECTION_MOVSIM_XML = 1;
+    static final int SECTION_NETWORK_XML = 2;
+    static final int SECTION_VIEW_PROPERTIES = 3;
+
+    private final ByteBuffer buffer;
+    private final long fingerprint;
+    private final boolean compiled;
+    private ByteBuffer movsimXml;
+    private ByteBuffer networkXml;
+    private ByteBuffer viewProperties;
+
+    private ScenarioBundle(ByteBuffer movsimXml, ByteBuffer networkXml, ByteBuffer viewProperties, long fingerprint) {
+        this.buffer = null;
+        this.compiled = false;
+        this.movsimXml = movsimXml;
+        this.networkXml = networkXml;
+        this.viewProperties = viewProperties;
+        this.fingerprint = fingerprint;
+    }
+
+    private ScenarioBundle(ByteBuffer buffer) throws IOException {
+        this.compiled = true;
+        this.buffer = buffer.duplicate();
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+        if (this.buffer.remaining() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a scenario bundle");
+        }
+        final short version = this.buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported scenario bundle version " + version);
+        }
+        final int sectionCount = this.buffer.getShort(6);
+        fingerprint = this.buffer.getLong(8);
+        for (int i = 0; i < sectionCount; ++i) {
+            final int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            final int type = this.buffer.getInt(entry);
+            final ByteBuffer section = slice(this.buffer.getInt(entry + 4), this.buffer.getInt(entry + 8));
+            switch (type) {
+            case SECTION_MOVSIM_XML:
+                movsimXml = section;
+                break;
+            case SECTION_NETWORK_XML:
+                networkXml = section;
+                break;
+            case SECTION_VIEW_PROPERTIES:
+                viewProperties = section;
+                break;
+            default:
+                // unknown sections are skipped, newer compilers may add them
+            }
+        }
+        if (movsimXml == null || networkXml == null) {
+            throw new IOException("scenario bundle without movsim or network section");
+        }
+    }
+
+    /**
+     * Wraps the given buffer, which must hold a complete bundle starting at its current position. The buffer content is not
+     * copied.
+     * 
+     * @param buffer
+     * @return the bundle
+     * @throws IOException
+     *             if the buffer does not hold a valid bundle
+     */
+    public static ScenarioBundle wrap(ByteBuffer buffer) throws IOException {
+        return new ScenarioBundle(buffer.slice());
+    }
+
+    /**
+     * Creates an uncompiled bundle from the separately read scenario files.
+     * 
+     * @param movsimXml
+     * @param networkXml
+     * @param viewProperties
+     *            may be null
+     * @param fingerprint
+     *            fingerprint of the source files, 0 if it has not been computed
+     * @return the bundle
+     */
+    public static ScenarioBundle fromSources(ByteBuffer movsimXml, ByteBuffer networkXml, ByteBuffer viewProperties,
+            long fingerprint) {
+        return new ScenarioBundle(movsimXml.slice(), networkXml.slice(), viewProperties == null ? null
+                : viewProperties.slice(), fingerprint);
+    }
+
+    private ByteBuffer slice(int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IOException("corrupt scenario bundle section table");
+        }
+        final ByteBuffer section = buffer.duplicate();
+        section.position(offset);
+        section.limit(offset + length);
+        return section.slice();
+    }
+
+    /**
+     * @return the fingerprint of the source files the bundle was compiled from
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return true if the bundle was read from a precompiled asset, false if it was assembled from the xml files
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * @return the total size of the bundle in bytes
+     */
+    public int size() {
+        if (buffer != null) {
+            return buffer.limit();
+        }
+        return movsimXml.limit() + networkXml.limit() + (viewProperties == null ? 0 : viewProperties.limit());
+    }
+
+    public InputStream movsimXml() {
+        return new ByteBufferInputStream(movsimXml.duplicate());
+    }
+
+    public InputStream networkXml() {
+        return new ByteBufferInputStream(networkXml.duplicate());
+    }
+
+    /**
+     * @return the view properties or null if the project has none
+     */
+    public InputStream viewProperties() {
+        return viewProperties == null ? null : new ByteBufferInputStream(viewProperties.duplicate());
+    }
+
+    /**
+     * Hands the bundle's streams to the project meta data, in place of the xml assets.
+     * 
+     * @param projectMetaData
+     */
+    public void applyTo(ProjectMetaData projectMetaData) {
+        projectMetaData.setMovsimXml(movsimXml());
+        projectMetaData.setNetworkXml(networkXml());
+        projectMetaData.setProjectProperties(viewProperties());
+    }
+}
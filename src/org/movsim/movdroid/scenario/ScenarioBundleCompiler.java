@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Build-time compiler for {@link ScenarioBundle}s. Has no Android dependencies and is run on the development machine
+ * before packaging, for example:
+ * 
+ * <pre>
+ * java -cp bin/classes:libs/movsim-1.2.jar org.movsim.movdroid.scenario.ScenarioBundleCompiler assets/sim
+ * </pre>
+ * 
+ * </p>
+ * <p>
+ * Every movsim xml file below the given directories is compiled together with its OpenDRIVE file (the <code>.xodr</code>
+ * of the same name, else the one referenced by the <code>network_filename</code> attribute) and the
+ * <code>.properties</code> file of the same name into a
+ * <code>.msb</code> bundle next to the sources. The xml files remain in place as fallback for projects without a bundle.
+ * </p>
+ * <p>
+ * The app reads a bundle without comparing it with the xml files, the assets cannot change without a new package. The
+ * compiler therefore checks it at build time: with <code>--check</code> it writes nothing and exits with status 1 if
+ * any bundle no longer matches the fingerprint of its sources, so a stale bundle fails the build.
+ * </p>
+ */
+public class ScenarioBundleCompiler {
+
+    private static final Pattern NETWORK_FILENAME = Pattern.compile("network_filename\\s*=\\s*\"([^\"]+)\"");
+    private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern WHITESPACE_BETWEEN_TAGS = Pattern.compile(">\\s+<");
+    private static final String CHARSET = "UTF-8";
+
+    public static void main(String[] args) throws IOException {
+        final boolean check = args.length > 0 && args[0].equals("--check");
+        if (args.length == (check ? 1 : 0)) {
+            System.err.println("usage: ScenarioBundleCompiler [--check] <assets directory>...");
+            System.exit(1);
+        }
+        if (check) {
+            checkBundles(args);
+            return;
+        }
+        int count = 0;
+        for (final String arg : args) {
+            for (final File xml : findScenarios(new File(arg), new ArrayList<File>())) {
+                final File bundle = compile(xml);
+                if (bundle != null) {
+                    System.out.println(xml.getPath() + " -> " + bundle.getPath() + " (" + bundle.length() + " bytes)");
+                    ++count;
+                }
+            }
+        }
+        System.out.println(count + " scenario bundles written");
+    }
+
+    private static void checkBundles(String[] args) throws IOException {
+        int stale = 0;
+        for (int i = 1; i < args.length; ++i) {
+            for (final File xml : findScenarios(new File(args[i]), new ArrayList<File>())) {
+                final File bundle = bundleFile(xml);
+                if (bundle.exists() && !isUpToDate(xml)) {
+                    System.err.println("stale scenario bundle " + bundle.getPath() + ", recompile it");
+                    ++stale;
+                }
+            }
+        }
+        if (stale > 0) {
+            System.exit(1);
+        }
+        System.out.println("scenario bundles up to date");
+    }
+
+    private static List<File> findScenarios(File dir, List<File> result) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                findScenarios(file, result);
+            } else if (file.getName().endsWith(".xml")) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the scenario given by its movsim xml file.
+     * 
+     * @param xmlFile
+     * @return the written bundle or null if the xml file is not a scenario with network
+     * @throws IOException
+     */
+    public static File compile(File xmlFile) throws IOException {
+        final byte[] movsimXmlBytes = readFully(xmlFile);
+        final String movsimXml = new String(movsimXmlBytes, CHARSET);
+        final File networkFile = networkFile(xmlFile, movsimXml);
+        if (networkFile == null) {
+            return null;
+        }
+        final File propertiesFile = propertiesFile(xmlFile);
+
+        final byte[] network = readFully(networkFile);
+        final byte[] properties = propertiesFile.exists() ? readFully(propertiesFile) : null;
+
+        final List<int[]> sections = new ArrayList<int[]>();
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        addSection(sections, payload, ScenarioBundle.SECTION_MOVSIM_XML, compactXml(movsimXml).getBytes(CHARSET));
+        addSection(sections, payload, ScenarioBundle.SECTION_NETWORK_XML,
+                compactXml(new String(network, CHARSET)).getBytes(CHARSET));
+        if (properties != null) {
+            addSection(sections, payload, ScenarioBundle.SECTION_VIEW_PROPERTIES, compactProperties(properties));
+        }
+
+        final File bundleFile = bundleFile(xmlFile);
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(bundleFile));
+        try {
+            final int payloadOffset = ScenarioBundle.HEADER_SIZE + sections.size() * ScenarioBundle.SECTION_ENTRY_SIZE;
+            out.writeInt(ScenarioBundle.MAGIC);
+            out.writeShort(ScenarioBundle.VERSION);
+            out.writeShort(sections.size());
+            out.writeLong(fingerprint(movsimXmlBytes, network, properties));
+            for (final int[] section : sections) {
+                out.writeInt(section[0]);
+                out.writeInt(payloadOffset + section[1]);
+                out.writeInt(section[2]);
+            }
+            payload.writeTo(out);
+        } finally {
+            out.close();
+        }
+        return bundleFile;
+    }
+
+    /**
+     * Checks whether the bundle of the scenario given by its movsim xml file was compiled from the current sources.
+     * 
+     * @param xmlFile
+     * @return true if the bundle exists and its fingerprint matches the sources
+     * @throws IOException
+     */
+    public static boolean isUpToDate(File xmlFile) throws IOException {
+        final File bundleFile = bundleFile(xmlFile);
+        if (!bundleFile.exists()) {
+            return false;
+        }
+        final byte[] movsimXmlBytes = readFully(xmlFile);
+        final File networkFile = networkFile(xmlFile, new String(movsimXmlBytes, CHARSET));
+        if (networkFile == null) {
+            return false;
+        }
+        final File propertiesFile = propertiesFile(xmlFile);
+        final long fingerprint = fingerprint(movsimXmlBytes, readFully(networkFile),
+                propertiesFile.exists() ? readFully(propertiesFile) : null);
+        final DataInputStream in = new DataInputStream(new FileInputStream(bundleFile));
+        try {
+            if (in.readInt() != ScenarioBundle.MAGIC || in.readShort() != ScenarioBundle.VERSION) {
+                return false;
+            }
+            in.readShort();
+            return in.readLong() == fingerprint;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String baseName(File xmlFile) {
+        return xmlFile.getName().substring(0, xmlFile.getName().length() - ".xml".length());
+    }
+
+    private static File bundleFile(File xmlFile) {
+        return new File(xmlFile.getParentFile(), baseName(xmlFile) + ScenarioBundle.FILE_ENDING);
+    }
+
+    private static File propertiesFile(File xmlFile) {
+        return new File(xmlFile.getParentFile(), baseName(xmlFile) + ".properties");
+    }
+
+    /**
+     * @return the OpenDRIVE file of the scenario or null if the xml file is not a scenario with network
+     */
+    private static File networkFile(File xmlFile, String movsimXml) {
+        // the app opens the network by project name, the network_filename attribute is the fallback
+        File networkFile = new File(xmlFile.getParentFile(), baseName(xmlFile) + ".xodr");
+        if (!networkFile.exists()) {
+            final Matcher matcher = NETWORK_FILENAME.matcher(movsimXml);
+            if (!matcher.find()) {
+                return null;
+            }
+            networkFile = new File(xmlFile.getParentFile(), new File(matcher.group(1)).getName());
+            if (!networkFile.exists()) {
+                System.err.println("skipping " + xmlFile + ": network file " + networkFile + " not found");
+                return null;
+            }
+        }
+        return networkFile;
+    }
+
+    /**
+     * @return the fingerprint over the source file contents as stored
+     */
+    private static long fingerprint(byte[] movsimXml, byte[] network, byte[] properties) {
+        final CRC32 crc = new CRC32();
+        crc.update(movsimXml);
+        crc.update(network);
+        if (properties != null) {
+            crc.update(properties);
+        }
+        return crc.getValue();
+    }
+
+    private static void addSection(List<int[]> sections, ByteArrayOutputStream payload, int type, byte[] data) {
+        sections.add(new int[] { type, payload.size(), data.length });
+        payload.write(data, 0, data.length);
+    }
+
+    /**
+     * Removes comments and the formatting whitespace between tags. Movsim and OpenDRIVE files carry their data in
+     * attributes only, so this does not change the document content.
+     */
+    static String compactXml(String xml) {
+        final String withoutComments = COMMENT.matcher(xml).replaceAll("");
+        return WHITESPACE_BETWEEN_TAGS.matcher(withoutComments).replaceAll("><").trim();
+    }
+
+    /**
+     * Removes comment and blank lines from a properties file. The remaining lines are kept verbatim, trailing whitespace
+     * can be part of a value, and so are the continuation lines of a value ending with a backslash.
+     */
+    static byte[] compactProperties(byte[] properties) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        boolean continuation = false;
+        for (final String line : new String(properties, "ISO-8859-1").split("\r?\n")) {
+            final String trimmed = line.trim();
+            if (continuation || trimmed.length() > 0 && !trimmed.startsWith("#") && !trimmed.startsWith("!")) {
+                sb.append(line).append('\n');
+                continuation = endsWithContinuation(line);
+            }
+        }
+        return sb.toString().getBytes("ISO-8859-1");
+    }
+
+    /**
+     * @return true if the line ends with an odd number of backslashes, which continues the value on the next line
+     */
+    private static boolean endsWithContinuation(String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; --i) {
+            ++backslashes;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+/**
+ * Loads {@link ScenarioBundle}s from the assets. Precompiled bundles are memory-mapped if the asset is stored uncompressed
+ * and inflated once into a direct buffer otherwise. Projects without a precompiled bundle are assembled from their xml
+ * files.
+ * <p>
+ * Only the bundle is read if there is one, the xml files are not compared with it: the assets cannot change without a
+ * new package, and {@link ScenarioBundleCompiler} checks at build time that no bundle is stale.
+ * </p>
+ */
+public class ScenarioBundleLoader {
+
+    static final Logger logger = LoggerFactory.getLogger(ScenarioBundleLoader.class);
+
+    private ScenarioBundleLoader() {
+    }
+
+    /**
+     * Opens the bundle of the given project.
+     * 
+     * @param assets
+     * @param projectPath
+     * @param projectName
+     * @return the bundle or null if the project cannot be read
+     */
+    public static ScenarioBundle load(AssetManager assets, String projectPath, String projectName) {
+        final String full = projectPath + projectName;
+        final long start = System.nanoTime();
+        ScenarioBundle bundle = loadCompiled(assets, full + ScenarioBundle.FILE_ENDING);
+        if (bundle == null) {
+            try {
+                bundle = loadXml(assets, full);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        logger.info("scenario {} ({} bytes, {}) read in {} ms",
+                new Object[] { full, Integer.valueOf(bundle.size()), bundle.isCompiled() ? "bundle" : "xml",
+                        Long.valueOf((System.nanoTime() - start) / 1000000) });
+        return bundle;
+    }
+
+    private static ScenarioBundle loadCompiled(AssetManager assets, String filename) {
+        ByteBuffer buffer;
+        try {
+            buffer = map(assets, filename);
+        } catch (FileNotFoundException e) {
+            // either no bundle at all or a compressed asset, which cannot be mapped
+            try {
+                buffer = readDirect(assets, filename);
+            } catch (IOException e1) {
+                return null;
+            }
+        } catch (IOException e) {
+            logger.warn("cannot map scenario bundle {}: {}", filename, e.getMessage());
+            return null;
+        }
+        try {
+            return ScenarioBundle.wrap(buffer);
+        } catch (IOException e) {
+            logger.warn("ignoring scenario bundle {}: {}", filename, e.getMessage());
+            return null;
+        }
+    }
+
+    private static ScenarioBundle loadXml(AssetManager assets, String full) throws IOException {
+        final ByteBuffer movsimXml = readDirect(assets, full + ".xml");
+        final ByteBuffer networkXml = readDirect(assets, full + ".xodr");
+        ByteBuffer viewProperties = null;
+        try {
+            viewProperties = readDirect(assets, full + ".properties");
+        } catch (FileNotFoundException e) {
+            // properties are optional
+        }
+        // the assets of a project do not change while the app runs, so its sources need no fingerprint
+        return ScenarioBundle.fromSources(movsimXml, networkXml, viewProperties, 0);
+    }
+
+    private static ByteBuffer map(AssetManager assets, String filename) throws IOException {
+        final AssetFileDescriptor afd = assets.openFd(filename);
+        try {
+            final FileChannel channel = afd.createInputStream().getChannel();
+            // the mapping stays valid after the descriptor is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+        } finally {
+            afd.close();
+        }
+    }
+
+    private static ByteBuffer readDirect(AssetManager assets, String filename) throws IOException {
+        final InputStream in = assets.open(filename, AssetManager.ACCESS_STREAMING);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(in.available(), 8192));
+            final byte[] chunk = new byte[8192];
+            int count;
+            while ((count = in.read(chunk)) != -1) {
+                if (buffer.remaining() < count) {
+                    final ByteBuffer larger = ByteBuffer.allocateDirect(2 * buffer.capacity() + count);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                buffer.put(chunk, 0, count);
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            in.close();
+        }
+    }
+}
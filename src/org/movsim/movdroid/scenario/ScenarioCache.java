@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of {@link ScenarioBundle}s, bounded by the total bundle size in bytes. Thread safe, it is filled
+ * by the {@link ScenarioPrefetcher} and read by the {@link ScenarioLoader}.
+ */
+public class ScenarioCache {
+
+    private final int budgetBytes;
+    private final LinkedHashMap<String, ScenarioBundle> bundles = new LinkedHashMap<String, ScenarioBundle>(8, 0.75f,
+            true);
+    private int sizeBytes;
+
+    /**
+     * @param budgetBytes
+     *            upper limit of the summed size of the cached bundles
+     */
+    public ScenarioCache(int budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    static String key(String projectPath, String projectName) {
+        return projectPath + projectName;
+    }
+
+    /**
+     * @return the cached bundle, or null if the project is not cached
+     */
+    public synchronized ScenarioBundle get(String projectPath, String projectName) {
+        return bundles.get(key(projectPath, projectName));
+    }
+
+    public synchronized boolean contains(String projectPath, String projectName) {
+        return bundles.containsKey(key(projectPath, projectName));
+    }
+
+    /**
+     * Adds the bundle and evicts the least recently used bundles until the cache is within its budget again. Bundles larger
+     * than the whole budget are not cached.
+     */
+    public synchronized void put(String projectPath, String projectName, ScenarioBundle bundle) {
+        final int size = bundle.size();
+        if (size > budgetBytes) {
+            return;
+        }
+        final ScenarioBundle previous = bundles.put(key(projectPath, projectName), bundle);
+        if (previous != null) {
+            sizeBytes -= previous.size();
+        }
+        sizeBytes += size;
+        final Iterator<Map.Entry<String, ScenarioBundle>> iterator = bundles.entrySet().iterator();
+        while (sizeBytes > budgetBytes && iterator.hasNext()) {
+            final Map.Entry<String, ScenarioBundle> eldest = iterator.next();
+            if (eldest.getValue() != bundle) {
+                sizeBytes -= eldest.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        bundles.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized int sizeBytes() {
+        return sizeBytes;
+    }
+}
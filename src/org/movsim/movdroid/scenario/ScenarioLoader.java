@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.movdroid.R;
+import org.movsim.movdroid.graphics.MovSimTrafficView;
+import org.movsim.movdroid.util.ViewConfig;
+import org.movsim.simulator.Simulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * <p>
+ * Loads scenarios in the background so that the UI thread is not blocked while a large network is parsed.
+ * </p>
+ * <p>
+ * Loading runs through the {@link Stage}s in order, each stage is reported to the {@link Callback} on the UI thread. Loads
+ * are executed one after the other on a single worker thread. Starting a new load cancels the current one: a cancelled
+ * load skips its remaining stages and never reports completion. Stages themselves are not interrupted, the parser of the
+ * MovSim core cannot be stopped midway.
+ * </p>
+ * <p>
+ * Scenario input is taken from a {@link ScenarioCache}, which the {@link ScenarioPrefetcher} keeps warm with the neighbours
+ * of the current scenario.
+ * </p>
+ */
+public class ScenarioLoader {
+
+    static final Logger logger = LoggerFactory.getLogger(ScenarioLoader.class);
+
+    // upper limit of the cached scenario input, the largest bundled network (vasa) takes about 0.6 MB
+    private static final int CACHE_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The stages of a scenario load, with the progress (in percent) reached when the stage begins.
+     */
+    public enum Stage {
+        OPEN_ASSETS(0, R.string.loading_open_assets), PARSE_NETWORK(10, R.string.loading_parse_network), BUILD_GEOMETRY(
+                85, R.string.loading_build_geometry), RENDER_BACKGROUND(90, R.string.loading_render_background);
+
+        private final int progress;
+        private final int label;
+
+        private Stage(int progress, int label) {
+            this.progress = progress;
+            this.label = label;
+        }
+
+        public int getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return the string resource describing the stage
+         */
+        public int getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Callbacks to the UI, always invoked on the UI thread.
+     */
+    public interface Callback {
+        public void loadingProgress(Stage stage);
+
+        /**
+         * Called when the scenario is loaded and its first background has been drawn.
+         */
+        public void scenarioLoaded(String projectName, String projectPath);
+
+        /**
+         * Called when the scenario cannot be read. The simulator still holds the road network of the scenario loaded
+         * before, but the state the caller reset for the new scenario is not restored.
+         */
+        public void scenarioLoadFailed(String projectName, String projectPath);
+    }
+
+    private final AssetManager assets;
+    private final Simulator simulator;
+    private final ProjectMetaData projectMetaData;
+    private final MovSimTrafficView trafficView;
+    private final Callback callback;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile LoadRequest current;
+    private volatile ViewConfig viewConfig;
+    private final ScenarioCache cache = new ScenarioCache(CACHE_BUDGET_BYTES);
+    private final ScenarioPrefetcher prefetcher;
+
+    public ScenarioLoader(AssetManager assets, Simulator simulator, MovSimTrafficView trafficView, Callback callback) {
+        this.assets = assets;
+        this.prefetcher = new ScenarioPrefetcher(assets, cache);
+        this.simulator = simulator;
+        this.projectMetaData = simulator.getProjectMetaData();
+        this.trafficView = trafficView;
+        this.callback = callback;
+    }
+
+    /**
+     * Runs the task on the loader's worker thread, before any scenario whose load is started afterwards.
+     * 
+     * @param task
+     */
+    public void runOnWorker(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Starts loading the given scenario, cancelling any load in progress. Must be called on the UI thread with the
+     * simulation paused.
+     * 
+     * @param projectName
+     * @param projectPath
+     */
+    public void load(String projectName, String projectPath) {
+        cancel();
+        trafficView.setLoading(true);
+        final LoadRequest request = new LoadRequest(projectName, projectPath);
+        current = request;
+        executor.execute(request);
+    }
+
+    /**
+     * Cancels the load in progress, if any.
+     */
+    public void cancel() {
+        final LoadRequest request = current;
+        if (request != null) {
+            request.cancelled = true;
+            current = null;
+        }
+    }
+
+    public boolean isLoading() {
+        return current != null;
+    }
+
+    /**
+     * Cancels the load in progress and stops the worker thread.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+        prefetcher.shutdown();
+        cache.clear();
+    }
+
+    /**
+     * Prefetches the scenarios next to the given position of the scenario list once the UI thread is idle. Must be called
+     * on the UI thread.
+     */
+    public void prefetchNeighbours(int position, String[] projectNames, String[] projectPaths) {
+        prefetcher.prefetchNeighbours(position, projectNames, projectPaths);
+    }
+
+    /**
+     * Hands the scenario input to the project meta data, from the cache if the scenario has been read before and from the
+     * assets otherwise.
+     * 
+     * @return the bundle or null if the scenario cannot be read
+     * @throws IllegalArgumentException
+     *             if the view properties of the scenario are malformed; the project meta data and the cache are left
+     *             unchanged then
+     */
+    public ScenarioBundle openInputStreams(String projectPath, String projectName) {
+        ScenarioBundle bundle = cache.get(projectPath, projectName);
+        final boolean cached = bundle != null;
+        if (cached) {
+            logger.info("scenario {} taken from cache", projectName);
+        } else {
+            bundle = ScenarioBundleLoader.load(assets, projectPath, projectName);
+            if (bundle == null) {
+                return null;
+            }
+        }
+        // checked before the bundle is cached and handed to the simulator
+        final ViewConfig newViewConfig = ViewConfig.forProject(projectName, bundle);
+        if (!cached) {
+            cache.put(projectPath, projectName, bundle);
+        }
+        bundle.applyTo(projectMetaData);
+        viewConfig = newViewConfig;
+        return bundle;
+    }
+
+    /**
+     * @return the view configuration of the scenario last opened, null before the first scenario is opened
+     */
+    public ViewConfig getViewConfig() {
+        return viewConfig;
+    }
+
+    private final class LoadRequest implements Runnable {
+        private final String projectName;
+        private final String projectPath;
+        volatile boolean cancelled;
+
+        LoadRequest(String projectName, String projectPath) {
+            this.projectName = projectName;
+            this.projectPath = projectPath;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            publish(Stage.OPEN_ASSETS);
+            final long loadStart = System.nanoTime();
+            ScenarioBundle bundle;
+            try {
+                bundle = openInputStreams(projectPath, projectName);
+            } catch (IllegalArgumentException e) {
+                // malformed view properties, reported like an unreadable scenario
+                logger.error("invalid view properties of scenario {}: {}", projectName, e.getMessage());
+                bundle = null;
+            }
+            if (bundle == null) {
+                logger.error("cannot read scenario {}{}", projectPath, projectName);
+                cancelled = true;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (current == LoadRequest.this) {
+                            // nothing was parsed, the simulator still holds the previous road network and the view
+                            // draws it again; the interventions and recorders were already reset by the caller
+                            current = null;
+                            trafficView.setLoading(false);
+                            callback.scenarioLoadFailed(projectName, projectPath);
+                        }
+                    }
+                });
+                return;
+            }
+            if (cancelled) {
+                return;
+            }
+            publish(Stage.PARSE_NETWORK);
+            final long parseStart = System.nanoTime();
+            synchronized (simulator.getSimulationRunnable().dataLock) {
+                simulator.loadScenarioFromXml(projectName, projectPath);
+            }
+            logger.info("scenario {} loaded from {}: open {} ms, parse {} ms", new Object[] { projectName,
+                    bundle.isCompiled() ? "bundle" : "xml", Long.valueOf((parseStart - loadStart) / 1000000),
+                    Long.valueOf((System.nanoTime() - parseStart) / 1000000) });
+            if (cancelled) {
+                return;
+            }
+            publish(Stage.BUILD_GEOMETRY);
+            trafficView.buildGeometryCache();
+            if (cancelled) {
+                return;
+            }
+            publish(Stage.RENDER_BACKGROUND);
+            final ViewConfig config = viewConfig;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled || current != LoadRequest.this) {
+                        return;
+                    }
+                    current = null;
+                    trafficView.setLoading(false);
+                    trafficView.setViewConfig(config);
+                    trafficView.buildInteractiveElements();
+                    trafficView.resetGraphicproperties();
+                    trafficView.forceRepaintBackground();
+                    callback.scenarioLoaded(projectName, projectPath);
+                }
+            });
+        }
+
+        private void publish(final Stage stage) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        callback.loadingProgress(stage);
+                    }
+                }
+            });
+        }
+    }
+}
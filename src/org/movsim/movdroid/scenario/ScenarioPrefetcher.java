@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.res.AssetManager;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+
+/**
+ * <p>
+ * Reads the scenarios next to the current one in the scenario list into the {@link ScenarioCache}, so that switching to
+ * them does not start with a cold asset read.
+ * </p>
+ * <p>
+ * Prefetching starts when the UI thread becomes idle and runs on a single background priority thread.
+ * </p>
+ */
+public class ScenarioPrefetcher {
+
+    private final AssetManager assets;
+    private final ScenarioCache cache;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ScenarioPrefetcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public ScenarioPrefetcher(AssetManager assets, ScenarioCache cache) {
+        this.assets = assets;
+        this.cache = cache;
+    }
+
+    /**
+     * Schedules prefetching of the neighbours of the given position once the UI thread is idle. Must be called on the UI
+     * thread.
+     * 
+     * @param position
+     *            position of the current scenario
+     * @param projectNames
+     *            the project names of the scenario list
+     * @param projectPaths
+     *            the project paths of the scenario list
+     */
+    public void prefetchNeighbours(final int position, final String[] projectNames, final String[] projectPaths) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                prefetch(position + 1, projectNames, projectPaths);
+                prefetch(position - 1, projectNames, projectPaths);
+                // run once
+                return false;
+            }
+        });
+    }
+
+    private void prefetch(int position, String[] projectNames, String[] projectPaths) {
+        if (position < 0 || position >= projectNames.length) {
+            return;
+        }
+        final String projectName = projectNames[position];
+        final String projectPath = projectPaths[position];
+        if (cache.contains(projectPath, projectName)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cache.contains(projectPath, projectName)) {
+                    return;
+                }
+                final ScenarioBundle bundle = ScenarioBundleLoader.load(assets, projectPath, projectName);
+                if (bundle != null) {
+                    cache.put(projectPath, projectName, bundle);
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
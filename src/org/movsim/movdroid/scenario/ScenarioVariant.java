@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.scenario;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Variants of a movsim xml scenario with changed model parameters, built in memory. Has no Android dependencies.
+ * </p>
+ * <p>
+ * A parameter is named {@code ELEMENT.attribute}, for example {@code ACC.v0} or {@code MOBIL.politeness}, and is set on
+ * every element of that name. A vehicle label in front, {@code ACC1/ACC.a}, restricts it to the elements within the
+ * {@code VEHICLE} of that label. As in the {@link ScenarioBundleCompiler}, the xml is edited as text: movsim files carry
+ * their data in attributes only, so only the start tags of the elements are rewritten and everything else, comments and
+ * formatting included, is kept.
+ * </p>
+ */
+public final class ScenarioVariant {
+
+    private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern PARAMETER = Pattern.compile("(?:([^/]+)/)?(\\w+)\\.(\\w+)");
+
+    private ScenarioVariant() {
+    }
+
+    /**
+     * Sets a parameter of the scenario.
+     * 
+     * @param movsimXml
+     *            the movsim xml of the scenario
+     * @param parameter
+     *            {@code [vehicleLabel/]ELEMENT.attribute}
+     * @param value
+     * @return the movsim xml with the parameter set
+     * @throws IllegalArgumentException
+     *             if the parameter is malformed or names no element of the scenario
+     */
+    public static String set(String movsimXml, String parameter, String value) {
+        final Matcher name = PARAMETER.matcher(parameter);
+        if (!name.matches()) {
+            throw new IllegalArgumentException("parameter must be [vehicleLabel/]ELEMENT.attribute: " + parameter);
+        }
+        final String label = name.group(1);
+        final String element = name.group(2);
+        final String attribute = name.group(3);
+        final List<int[]> comments = ranges(COMMENT, movsimXml, 0, movsimXml.length());
+
+        int from = 0;
+        int to = movsimXml.length();
+        if (label != null) {
+            final Matcher vehicle = Pattern.compile(
+                    "<VEHICLE\\b[^>]*\\blabel=\"" + Pattern.quote(label) + "\"[^>]*>.*?</VEHICLE>", Pattern.DOTALL)
+                    .matcher(movsimXml);
+            if (!vehicle.find()) {
+                throw new IllegalArgumentException("no vehicle " + label + " for parameter " + parameter);
+            }
+            from = vehicle.start();
+            to = vehicle.end();
+        }
+
+        final Pattern tag = Pattern.compile("<" + element + "\\b[^>]*>");
+        final Pattern existing = Pattern.compile("\\b" + attribute + "=\"[^\"]*\"");
+        final StringBuilder result = new StringBuilder(movsimXml.length() + 64);
+        int copied = 0;
+        int count = 0;
+        for (final int[] range : ranges(tag, movsimXml, from, to)) {
+            if (inside(comments, range[0])) {
+                continue;
+            }
+            String startTag = movsimXml.substring(range[0], range[1]);
+            final Matcher matcher = existing.matcher(startTag);
+            if (matcher.find()) {
+                startTag = startTag.substring(0, matcher.start()) + attribute + "=\"" + value + "\""
+                        + startTag.substring(matcher.end());
+            } else {
+                final int end = startTag.endsWith("/>") ? startTag.length() - 2 : startTag.length() - 1;
+                startTag = startTag.substring(0, end) + " " + attribute + "=\"" + value + "\"" + startTag.substring(end);
+            }
+            result.append(movsimXml, copied, range[0]).append(startTag);
+            copied = range[1];
+            ++count;
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("no element " + element + " for parameter " + parameter);
+        }
+        return result.append(movsimXml, copied, movsimXml.length()).toString();
+    }
+
+    private static List<int[]> ranges(Pattern pattern, String text, int from, int to) {
+        final List<int[]> ranges = new ArrayList<int[]>();
+        final Matcher matcher = pattern.matcher(text).region(from, to);
+        while (matcher.find()) {
+            ranges.add(new int[] { matcher.start(), matcher.end() });
+        }
+        return ranges;
+    }
+
+    private static boolean inside(List<int[]> ranges, int position) {
+        for (final int[] range : ranges) {
+            if (position >= range[0] && position < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
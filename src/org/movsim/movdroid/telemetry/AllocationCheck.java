@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.telemetry;
+
+import android.os.Debug;
+
+/**
+ * <p>
+ * Counts the objects allocated by the UI thread while it draws the traffic view, to check that drawing does not allocate
+ * once the view has warmed up. Drawing the background and the foreground are counted separately.
+ * </p>
+ * <p>
+ * A check is started with {@link #start(int, int, Listener)}. The first frames are not counted: they build the drawing
+ * paths of the road segments and grow the scratch buffers. The view redraws its background once when counting starts,
+ * see {@link #isBackgroundDue()}, and whenever it changes. Used on the UI thread only.
+ * </p>
+ * <p>
+ * The check is a development tool: it can only be started once it has been enabled, which the app does for debuggable
+ * builds only. The view calls the drawing hooks only while a check is running.
+ * </p>
+ */
+public final class AllocationCheck {
+
+    /**
+     * Receives the result of a check.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the UI thread after the last counted frame.
+         * 
+         * @param frames
+         *            the number of frames counted
+         * @param foregroundAllocations
+         *            objects allocated while drawing the foreground
+         * @param backgroundAllocations
+         *            objects allocated while drawing the background
+         */
+        void allocationsCounted(int frames, int foregroundAllocations, int backgroundAllocations);
+    }
+
+    /**
+     * Receives the results of a check of all bundled scenarios, see
+     * {@link org.movsim.movdroid.MovSimDroidActivity#checkAllocations(Report)}. Called on the UI thread; nothing is
+     * reported after the check has been cancelled.
+     */
+    public interface Report {
+
+        /**
+         * Called after the frames of a scenario have been counted.
+         * 
+         * @param projectName
+         * @param frames
+         *            the number of frames counted
+         * @param foregroundAllocations
+         *            objects allocated while drawing the foreground
+         * @param backgroundAllocations
+         *            objects allocated while drawing the background
+         */
+        void scenarioChecked(String projectName, int frames, int foregroundAllocations, int backgroundAllocations);
+
+        /**
+         * Called after the last scenario has been checked.
+         * 
+         * @param failed
+         *            true if drawing any scenario allocated objects
+         */
+        void checkCompleted(boolean failed);
+    }
+
+    private static boolean enabled;
+    private static Listener listener;
+    private static int warmUpFrames;
+    private static int frames;
+    private static int frame;
+    private static boolean counting;
+    private static int foregroundAllocations;
+    private static int backgroundAllocations;
+    private static int backgroundDraws;
+
+    private AllocationCheck() {
+    }
+
+    /**
+     * Enables the check, for debuggable builds.
+     * 
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        AllocationCheck.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a check, replacing one still running.
+     * 
+     * @param warmUpFrames
+     *            frames drawn before counting starts
+     * @param frames
+     *            frames counted
+     * @param listener
+     * @throws IllegalStateException
+     *             if the check is not enabled
+     */
+    public static void start(int warmUpFrames, int frames, Listener listener) {
+        if (!enabled) {
+            throw new IllegalStateException("allocation check not enabled");
+        }
+        stopCounting();
+        // counting starts at the end of the last warm-up frame
+        AllocationCheck.warmUpFrames = Math.max(1, warmUpFrames);
+        AllocationCheck.frames = frames;
+        AllocationCheck.listener = listener;
+        frame = 0;
+        foregroundAllocations = 0;
+        backgroundAllocations = 0;
+        backgroundDraws = 0;
+    }
+
+    /**
+     * Cancels the running check, its listener is not called.
+     */
+    public static void cancel() {
+        stopCounting();
+        listener = null;
+    }
+
+    public static boolean isRunning() {
+        return listener != null;
+    }
+
+    /**
+     * @return true if counting has started but no background has been drawn since, the view then redraws its background
+     *         so that it is counted at least once
+     */
+    public static boolean isBackgroundDue() {
+        return counting && backgroundDraws == 0;
+    }
+
+    /**
+     * Called before the background or the foreground is drawn.
+     */
+    public static void drawStarted() {
+        if (counting) {
+            Debug.resetThreadAllocCount();
+        }
+    }
+
+    public static void backgroundDrawn() {
+        if (counting) {
+            backgroundAllocations += Debug.getThreadAllocCount();
+            ++backgroundDraws;
+        }
+    }
+
+    /**
+     * Called after the foreground is drawn, the last step of a frame.
+     */
+    public static void foregroundDrawn() {
+        if (listener == null) {
+            return;
+        }
+        if (counting) {
+            foregroundAllocations += Debug.getThreadAllocCount();
+        }
+        ++frame;
+        if (frame == warmUpFrames) {
+            Debug.startAllocCounting();
+            counting = true;
+        } else if (frame == warmUpFrames + frames) {
+            stopCounting();
+            final Listener finished = listener;
+            listener = null;
+            finished.allocationsCounted(frames, foregroundAllocations, backgroundAllocations);
+        }
+    }
+
+    private static void stopCounting() {
+        if (counting) {
+            Debug.stopAllocCounting();
+            counting = false;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.telemetry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>
+ * Histogram of non-negative long values with logarithmic buckets, four per power of two, so a percentile is overestimated
+ * by at most 25%.
+ * </p>
+ * <p>
+ * Recording is O(1) and does not allocate. A histogram is written by one thread only; other threads may read it while it
+ * is written and then see counts that are off by the values being recorded, which is good enough for monitoring.
+ * </p>
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS buckets per power of two
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final int[] counts = new int[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * @param name
+     * @param unit
+     *            unit of the recorded values, for the dump
+     */
+    public Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        ++counts[bucket(value)];
+        ++count;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public long mean() {
+        final long n = count;
+        return n == 0 ? 0 : sum / n;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile.
+     * 
+     * @param percentile
+     *            between 0 and 100
+     * @return the upper bound of the bucket that contains the percentile, at most the maximum, or 0 if nothing has been
+     *         recorded
+     */
+    public long percentile(double percentile) {
+        final long n = count;
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Writes the summary and the non-empty buckets.
+     */
+    public void dump(Writer out) throws IOException {
+        out.write(name + " [" + unit + "]: count " + count + ", mean " + mean() + ", p50 " + percentile(50) + ", p90 "
+                + percentile(90) + ", p99 " + percentile(99) + ", max " + max + "\n");
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            if (counts[i] != 0) {
+                out.write("  <= " + upperBound(i) + ": " + counts[i] + "\n");
+            }
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        final long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
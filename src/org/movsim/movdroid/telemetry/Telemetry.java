@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Performance telemetry of the simulation and drawing loop, recorded as {@link Histogram}s:
+ * <ul>
+ * <li>{@link #STEP}: simulation time step, written by the simulation thread.</li>
+ * <li>{@link #SIMULATION_LOCK_WAIT}: time the simulation thread waited for the data lock, estimated as the time from the
+ * end of its sleep to the start of the step. Written by the simulation thread.</li>
+ * <li>{@link #UI_LOCK_WAIT}: time the UI thread waited for the data lock before drawing the vehicles.</li>
+ * <li>{@link #FOREGROUND_DRAW}: drawing of the vehicles and other moving elements, with the lock held.</li>
+ * <li>{@link #BACKGROUND_RENDER}: rendering of the background bitmap.</li>
+ * <li>{@link #INVALIDATIONS}: redraws requested by the simulation per second.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Times are in nanoseconds. Recording does not allocate. The histograms are written by a single thread each, so
+ * {@link #reset()} is only approximate while the simulation is running.
+ * </p>
+ */
+public final class Telemetry {
+
+    public static final Histogram STEP = new Histogram("simulation step", "ns");
+    public static final Histogram SIMULATION_LOCK_WAIT = new Histogram("simulation dataLock wait (estimated)", "ns");
+    public static final Histogram UI_LOCK_WAIT = new Histogram("ui dataLock wait", "ns");
+    public static final Histogram FOREGROUND_DRAW = new Histogram("foreground draw", "ns");
+    public static final Histogram BACKGROUND_RENDER = new Histogram("background render", "ns");
+    public static final Histogram INVALIDATIONS = new Histogram("invalidations", "1/s");
+
+    private static final Histogram[] histograms = { STEP, SIMULATION_LOCK_WAIT, UI_LOCK_WAIT, FOREGROUND_DRAW,
+            BACKGROUND_RENDER, INVALIDATIONS };
+
+    private static final long RATE_WINDOW_NS = 1000000000L;
+
+    private static volatile boolean overlayVisible;
+
+    // written by the simulation thread only
+    private static long lastFrameRequest_ns;
+    private static final AtomicInteger frameRequests = new AtomicInteger();
+
+    // written by the UI thread only
+    private static long rateWindowStart_ns;
+
+    private Telemetry() {
+    }
+
+    /**
+     * @return all histograms in display order
+     */
+    public static Histogram[] histograms() {
+        return histograms.clone();
+    }
+
+    public static boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+
+    public static void setOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+    }
+
+    /**
+     * Called by the simulation thread when it requests a redraw after a step, the last thing it does before it sleeps.
+     */
+    public static void frameRequested() {
+        lastFrameRequest_ns = System.nanoTime();
+        frameRequests.incrementAndGet();
+    }
+
+    /**
+     * Called by the simulation thread at the start of a step, with the data lock held.
+     * 
+     * @param sleepTime_ms
+     *            the sleep time of the simulation thread between steps
+     * @return the start time of the step, to be passed to {@link #stepEnded(long)}
+     */
+    public static long stepStarted(int sleepTime_ms) {
+        final long now = System.nanoTime();
+        final long sinceFrameRequest = now - lastFrameRequest_ns;
+        // a longer gap means the simulation was paused
+        if (lastFrameRequest_ns != 0 && sinceFrameRequest < RATE_WINDOW_NS) {
+            SIMULATION_LOCK_WAIT.record(sinceFrameRequest - sleepTime_ms * 1000000L);
+        }
+        return now;
+    }
+
+    public static void stepEnded(long start_ns) {
+        STEP.record(System.nanoTime() - start_ns);
+    }
+
+    /**
+     * Called by the UI thread for each frame, records the number of redraw requests once per second.
+     */
+    public static void frameDrawn(long now_ns) {
+        if (rateWindowStart_ns == 0) {
+            rateWindowStart_ns = now_ns;
+            frameRequests.set(0);
+            return;
+        }
+        final long elapsed = now_ns - rateWindowStart_ns;
+        if (elapsed >= 2 * RATE_WINDOW_NS) {
+            // no frames for a while, the simulation was paused: start a new window
+            frameRequests.set(0);
+            rateWindowStart_ns = now_ns;
+        } else if (elapsed >= RATE_WINDOW_NS) {
+            INVALIDATIONS.record(frameRequests.getAndSet(0) * RATE_WINDOW_NS / elapsed);
+            rateWindowStart_ns = now_ns;
+        }
+    }
+
+    public static void reset() {
+        for (final Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        rateWindowStart_ns = 0;
+    }
+
+    /**
+     * Writes all histograms.
+     */
+    public static void dump(Writer out) throws IOException {
+        for (final Histogram histogram : histograms) {
+            histogram.dump(out);
+        }
+    }
+
+    /**
+     * Writes all histograms to the given file.
+     * 
+     * @param header
+     *            written before the histograms, may be null
+     */
+    public static void dump(File file, String header) throws IOException {
+        final File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        final Writer out = new BufferedWriter(new FileWriter(file));
+        try {
+            if (header != null) {
+                out.write(header);
+                out.write("\n");
+            }
+            dump(out);
+        } finally {
+            out.close();
+        }
+    }
+}
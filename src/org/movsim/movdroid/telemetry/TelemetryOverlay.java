@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.telemetry;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * <p>
+ * Draws the telemetry percentiles as text in the top left corner of a view. Numbers are formatted into a preallocated
+ * character buffer, so drawing the overlay does not allocate either.
+ * </p>
+ */
+public final class TelemetryOverlay {
+
+    private static final float TEXT_SIZE = 16;
+    private static final float LINE_HEIGHT = 20;
+    private static final float LEFT = 8;
+    // below the action bar overlay
+    private static final float TOP = 64;
+
+    private static final char[][] LABELS = { "step      ".toCharArray(), "sim wait  ".toCharArray(),
+            "ui wait   ".toCharArray(), "draw      ".toCharArray(), "background".toCharArray(),
+            "redraws/s ".toCharArray() };
+    private final Histogram[] histograms = Telemetry.histograms();
+    private final Paint paint = new Paint();
+    private final char[] line = new char[96];
+
+    public TelemetryOverlay() {
+        paint.setAntiAlias(true);
+        paint.setTextSize(TEXT_SIZE);
+        paint.setTypeface(Typeface.MONOSPACE);
+    }
+
+    /**
+     * Draws the overlay, the canvas must not be transformed.
+     */
+    public void draw(Canvas canvas) {
+        paint.setColor(0xa0000000);
+        paint.setStyle(Paint.Style.FILL);
+        canvas.drawRect(LEFT - 4, TOP - LINE_HEIGHT, LEFT + 30 * TEXT_SIZE, TOP + (histograms.length - 1) * LINE_HEIGHT
+                + 6, paint);
+        paint.setColor(Color.WHITE);
+        for (int i = 0; i < histograms.length; ++i) {
+            final Histogram histogram = histograms[i];
+            final boolean time = histogram != Telemetry.INVALIDATIONS;
+            int n = append(line, 0, LABELS[i]);
+            n = append(line, n, " p50 ");
+            n = appendValue(line, n, histogram.percentile(50), time);
+            n = append(line, n, " p95 ");
+            n = appendValue(line, n, histogram.percentile(95), time);
+            n = append(line, n, " max ");
+            n = appendValue(line, n, histogram.max(), time);
+            if (time) {
+                n = append(line, n, " ms");
+            }
+            canvas.drawText(line, 0, n, LEFT, TOP + i * LINE_HEIGHT, paint);
+        }
+    }
+
+    private static int append(char[] buffer, int n, char[] chars) {
+        System.arraycopy(chars, 0, buffer, n, chars.length);
+        return n + chars.length;
+    }
+
+    private static int append(char[] buffer, int n, String s) {
+        s.getChars(0, s.length(), buffer, n);
+        return n + s.length();
+    }
+
+    /**
+     * Appends nanoseconds as milliseconds with two decimals, or a plain count.
+     */
+    private static int appendValue(char[] buffer, int n, long value, boolean nanos) {
+        if (!nanos) {
+            return appendLong(buffer, n, value);
+        }
+        final long hundredths = (value + 5000) / 10000;
+        n = appendLong(buffer, n, hundredths / 100);
+        buffer[n++] = '.';
+        final long fraction = hundredths % 100;
+        buffer[n++] = (char) ('0' + fraction / 10);
+        buffer[n++] = (char) ('0' + fraction % 10);
+        return n;
+    }
+
+    private static int appendLong(char[] buffer, int n, long value) {
+        if (value == 0) {
+            buffer[n++] = '0';
+            return n;
+        }
+        final int start = n;
+        while (value > 0 && n < buffer.length) {
+            buffer[n++] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        // reverse the digits
+        for (int i = start, j = n - 1; i < j; ++i, --j) {
+            final char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.telemetry;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.simulator.Simulator;
+
+/**
+ * <p>
+ * Simulator that records the duration of each time step and the estimated wait for the data lock before it in the
+ * {@link Telemetry}.
+ * </p>
+ */
+public class TimedSimulator extends Simulator {
+
+    public TimedSimulator(ProjectMetaData projectMetaData) {
+        super(projectMetaData);
+    }
+
+    /**
+     * Called by the simulation runnable with the data lock held.
+     */
+    @Override
+    public void timeStep(double dt, double simulationTime, long iterationCount) {
+        final long start_ns = Telemetry.stepStarted(getSimulationRunnable().sleepTime());
+        super.timeStep(dt, simulationTime, iterationCount);
+        Telemetry.stepEnded(start_ns);
+    }
+}
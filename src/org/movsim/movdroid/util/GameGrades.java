@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The grading of the games by their simulation time: the time until the last vehicle has left the network.
+ * </p>
+ * <p>
+ * Each game has ascending thresholds; a result below the first threshold gets the best grade 0, a result not below the
+ * last one the worst grade, {@code thresholds.length}. The ensemble runner reports the distribution of results against
+ * these thresholds, so they can be recalibrated here.
+ * </p>
+ */
+public final class GameGrades {
+
+    private static final Map<String, double[]> THRESHOLDS = new HashMap<String, double[]>();
+
+    static {
+        THRESHOLDS.put("routing", new double[] { 260, 285, 315, 360 });
+        THRESHOLDS.put("ramp_metering", new double[] { 280, 290, 300, 310 });
+    }
+
+    private GameGrades() {
+    }
+
+    /**
+     * @return the grade thresholds of the game in seconds of simulation time, null if the project is not a graded game
+     */
+    public static double[] getThresholds(String projectName) {
+        final double[] thresholds = THRESHOLDS.get(projectName);
+        return thresholds == null ? null : thresholds.clone();
+    }
+
+    /**
+     * @return the grade of the result, 0 is best, or -1 if the project is not a graded game
+     */
+    public static int grade(String projectName, double simulationTime) {
+        final double[] thresholds = THRESHOLDS.get(projectName);
+        if (thresholds == null) {
+            return -1;
+        }
+        int grade = 0;
+        while (grade < thresholds.length && simulationTime >= thresholds[grade]) {
+            ++grade;
+        }
+        return grade;
+    }
+}
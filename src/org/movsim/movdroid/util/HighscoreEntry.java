@@ -35,18 +35,24 @@ public final class HighscoreEntry implements Serializable{
     private static final String CSV_SEPARATOR = ";";
     
     public enum Quantity {
-        totalSimulationTime("Time (s)"), totalTravelTime("Total Traveltime (s)"), totalTravelDistance(
-                "Total Distance (km)"), totalFuelUsedLiters("Fuel (liters)");
+        totalSimulationTime("Time (s)", "s"), totalTravelTime("Total Traveltime (s)", "s"), totalTravelDistance(
+                "Total Distance (km)", "km"), totalFuelUsedLiters("Fuel (liters)", "l");
 
         final String label;
+        final String unit;
 
-        private Quantity(String label) {
+        private Quantity(String label, String unit) {
             this.label = label;
+            this.unit = unit;
         }
 
         public String getLabel() {
             return label;
         }
+
+        public String getUnit() {
+            return unit;
+        }
     }
 
     private double[] quantities = new double[Quantity.values().length];
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Records the named phases of the application start and the time to the first frame and to the first interactive frame,
+ * that is the first frame showing the loaded scenario.
+ * </p>
+ * <p>
+ * Times are measured from the first use of this class, which is the start of {@code MovSimDroidActivity.onCreate}. The
+ * phases are logged together once the first interactive frame has been drawn. The metrics are also available through
+ * {@link #getTimeToFirstFrameMillis()} and {@link #getTimeToFirstInteractiveFrameMillis()}, for example for a startup
+ * benchmark. All methods are thread safe.
+ * </p>
+ */
+public final class StartupTrace {
+
+    static final Logger logger = LoggerFactory.getLogger(StartupTrace.class);
+
+    public static final String LOGGING = "logging";
+    public static final String SIMULATOR = "simulator";
+    public static final String ACTION_BAR = "actionBar";
+    public static final String VIEW = "view";
+    public static final String SCENARIO = "scenario";
+
+    private static final long start_ns = System.nanoTime();
+    private static final List<Phase> phases = new ArrayList<Phase>();
+    private static volatile long firstFrame_ns;
+    private static volatile long firstInteractiveFrame_ns;
+
+    private static final class Phase {
+        final String name;
+        final String thread;
+        final long begin_ns;
+        long end_ns;
+
+        Phase(String name, long begin_ns) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.begin_ns = begin_ns;
+        }
+    }
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Marks the beginning of the given phase. Only the first occurrence of a phase is recorded.
+     */
+    public static void begin(String name) {
+        final long now = System.nanoTime();
+        synchronized (phases) {
+            if (find(name) == null && firstInteractiveFrame_ns == 0) {
+                phases.add(new Phase(name, now));
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the given phase.
+     */
+    public static void end(String name) {
+        final long now = System.nanoTime();
+        synchronized (phases) {
+            final Phase phase = find(name);
+            if (phase != null && phase.end_ns == 0) {
+                phase.end_ns = now;
+            }
+        }
+    }
+
+    private static Phase find(String name) {
+        for (final Phase phase : phases) {
+            if (phase.name.equals(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called on each frame until the first one has been recorded.
+     */
+    public static void frameDrawn() {
+        if (firstFrame_ns == 0) {
+            firstFrame_ns = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called when a frame showing a loaded scenario has been drawn. The first call records the time to the first
+     * interactive frame and logs the startup phases.
+     */
+    public static void interactiveFrameDrawn() {
+        if (firstInteractiveFrame_ns != 0) {
+            return;
+        }
+        synchronized (phases) {
+            if (firstInteractiveFrame_ns != 0) {
+                return;
+            }
+            firstInteractiveFrame_ns = System.nanoTime();
+            for (final Phase phase : phases) {
+                logger.info("startup phase {} [{}]: {} ms at {} ms", new Object[] { phase.name, phase.thread,
+                        phase.end_ns == 0 ? "-" : Long.valueOf(millis(phase.end_ns - phase.begin_ns)),
+                        Long.valueOf(millis(phase.begin_ns - start_ns)) });
+            }
+            logger.info("time to first frame: {} ms, time to first interactive frame: {} ms",
+                    Long.valueOf(getTimeToFirstFrameMillis()), Long.valueOf(getTimeToFirstInteractiveFrameMillis()));
+        }
+    }
+
+    /**
+     * @return the time from the start of the application to its first frame in milliseconds, -1 if no frame has been drawn
+     *         yet
+     */
+    public static long getTimeToFirstFrameMillis() {
+        final long frame_ns = firstFrame_ns;
+        return frame_ns == 0 ? -1 : millis(frame_ns - start_ns);
+    }
+
+    /**
+     * @return the time from the start of the application to the first frame showing the loaded scenario in milliseconds, -1
+     *         if no such frame has been drawn yet
+     */
+    public static long getTimeToFirstInteractiveFrameMillis() {
+        final long frame_ns = firstInteractiveFrame_ns;
+        return frame_ns == 0 ? -1 : millis(frame_ns - start_ns);
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.movsim.movdroid.graphics.VehicleColorMode;
+import org.movsim.movdroid.metrics.VirtualDetectors;
+import org.movsim.movdroid.scenario.ScenarioBundle;
+
+import android.graphics.Color;
+
+/**
+ * <p>
+ * Typed view configuration of a project: the default viewer properties overwritten by the project's properties.
+ * </p>
+ * <p>
+ * Instances are immutable and cached by project name. A cached configuration is reused as long as the fingerprint of the
+ * project's scenario bundle is unchanged, so the properties are parsed once per project and not on every reset.
+ * </p>
+ */
+public final class ViewConfig {
+
+    private static final String CONTROLLER_PARAMETER_PREFIX = "controller.";
+
+    private static final Map<String, ViewConfig> cache = new HashMap<String, ViewConfig>();
+
+    private final long fingerprint;
+
+    private final boolean game;
+
+    private final boolean drawRoadId;
+    private final boolean drawSources;
+    private final boolean drawSinks;
+    private final boolean drawSlopes;
+    private final boolean drawSpeedLimits;
+
+    private final int backgroundColor;
+    private final int roadColor;
+    private final int roadEdgeColor;
+    private final int roadLineColor;
+    private final int sourceColor;
+    private final int sinkColor;
+    private final VehicleColorMode vehicleColorMode;
+    private final double vmaxForColorSpectrum;
+
+    private final float lineWidth;
+    private final float lineLength;
+    private final float gapLength;
+    private final float gapLengthExit;
+
+    private final float initialScale;
+    private final int initialSleepTime;
+    private final int xOffset;
+    private final int yOffset;
+
+    private final String[] spatioTemporalRoute;
+    private final double spatioTemporalDx;
+    private final double spatioTemporalDt;
+
+    private final String[] detectors;
+    private final double detectorSampleInterval;
+
+    private final String[] variableMessageSignRoads;
+
+    private final String controller;
+    private final int controlInterval;
+    private final Properties controllerParameters = new Properties();
+
+    private ViewConfig(long fingerprint, Properties properties) {
+        this.fingerprint = fingerprint;
+        game = Boolean.parseBoolean(properties.getProperty("isGame"));
+
+        drawRoadId = Boolean.parseBoolean(properties.getProperty("drawRoadId", "true"));
+        drawSinks = Boolean.parseBoolean(properties.getProperty("drawSinks", "true"));
+        drawSources = Boolean.parseBoolean(properties.getProperty("drawSources", "true"));
+        drawSlopes = Boolean.parseBoolean(properties.getProperty("drawSlopes", "true"));
+        drawSpeedLimits = Boolean.parseBoolean(properties.getProperty("drawSpeedLimits", "true"));
+
+        backgroundColor = Color.parseColor("#" + properties.getProperty("backgroundColor", "303030"));
+        roadColor = Color.parseColor("#" + properties.getProperty("roadColor", "808080"));
+        roadEdgeColor = Color.parseColor("#" + properties.getProperty("roadEdgeColor", "222222"));
+        roadLineColor = Color.parseColor("#" + properties.getProperty("roadLineColor", "DDDDDD"));
+        sourceColor = Color.parseColor("#" + properties.getProperty("sourceColor", "FFFFFF"));
+        sinkColor = Color.parseColor("#" + properties.getProperty("sinkColor", "000000"));
+        vehicleColorMode = VehicleColorMode.valueOf(properties.getProperty("vehicleColorMode", "VELOCITY_COLOR"));
+        vmaxForColorSpectrum = Double.parseDouble(properties.getProperty("vmaxForColorSpectrum", "140"));
+
+        lineWidth = Float.parseFloat(properties.getProperty("lineWidth", "1.0"));
+        lineLength = Float.parseFloat(properties.getProperty("lineLength", "5.0"));
+        gapLength = Float.parseFloat(properties.getProperty("gapLength", "15.0"));
+        gapLengthExit = Float.parseFloat(properties.getProperty("gapLengthExit", "6.0"));
+
+        initialScale = Float.parseFloat(properties.getProperty("initialScale", "0.707106781"));
+        initialSleepTime = Integer.parseInt(properties.getProperty("initial_sleep_time", "20"));
+        xOffset = Integer.parseInt(properties.getProperty("xOffset", "0"));
+        yOffset = Integer.parseInt(properties.getProperty("yOffset", "0"));
+
+        final String route = properties.getProperty("spatioTemporalRoute", "").trim();
+        spatioTemporalRoute = route.length() == 0 ? new String[0] : route.split("\\s*,\\s*");
+        spatioTemporalDx = Double.parseDouble(properties.getProperty("spatioTemporalDx", "10"));
+        spatioTemporalDt = Double.parseDouble(properties.getProperty("spatioTemporalDt", "2"));
+
+        final String detectorList = properties.getProperty("detectors", "").trim();
+        detectors = detectorList.length() == 0 ? new String[0] : detectorList.split("\\s*,\\s*");
+        for (final String detector : detectors) {
+            VirtualDetectors.checkSpec(detector);
+        }
+        detectorSampleInterval = Double.parseDouble(properties.getProperty("detectorSampleInterval", "10"));
+
+        final String signRoads = properties.getProperty("variableMessageSignRoads", "").trim();
+        variableMessageSignRoads = signRoads.length() == 0 ? new String[0] : signRoads.split("\\s*,\\s*");
+
+        controller = properties.getProperty("controller", "").trim();
+        controlInterval = Integer.parseInt(properties.getProperty("controlInterval", "10"));
+        for (final Enumeration<?> names = properties.propertyNames(); names.hasMoreElements();) {
+            final String name = (String) names.nextElement();
+            if (name.startsWith(CONTROLLER_PARAMETER_PREFIX)) {
+                controllerParameters.setProperty(name.substring(CONTROLLER_PARAMETER_PREFIX.length()),
+                        properties.getProperty(name).trim());
+            }
+        }
+    }
+
+    /**
+     * Returns the view configuration of the given project, parsing the bundle's view properties only if the project has not
+     * been seen before or its bundle has changed since.
+     * 
+     * @param projectName
+     * @param bundle
+     *            the project's scenario bundle
+     * @return the view configuration
+     */
+    public static ViewConfig forProject(String projectName, ScenarioBundle bundle) {
+        synchronized (cache) {
+            final ViewConfig cached = cache.get(projectName);
+            if (cached != null && cached.fingerprint == bundle.fingerprint()) {
+                return cached;
+            }
+        }
+        final ViewConfig viewConfig = new ViewConfig(bundle.fingerprint(), load(bundle.viewProperties()));
+        synchronized (cache) {
+            cache.put(projectName, viewConfig);
+        }
+        return viewConfig;
+    }
+
+    private static Properties load(InputStream in) {
+        // a fresh layer on top of the defaults, so that projects do not see each other's properties
+        final Properties properties = new Properties(ViewProperties.loadDefaultProperties());
+        if (in != null) {
+            try {
+                properties.load(in);
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return properties;
+    }
+
+    public boolean isGame() {
+        return game;
+    }
+
+    public boolean isDrawRoadId() {
+        return drawRoadId;
+    }
+
+    public boolean isDrawSources() {
+        return drawSources;
+    }
+
+    public boolean isDrawSinks() {
+        return drawSinks;
+    }
+
+    public boolean isDrawSlopes() {
+        return drawSlopes;
+    }
+
+    public boolean isDrawSpeedLimits() {
+        return drawSpeedLimits;
+    }
+
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public int getRoadColor() {
+        return roadColor;
+    }
+
+    public int getRoadEdgeColor() {
+        return roadEdgeColor;
+    }
+
+    public int getRoadLineColor() {
+        return roadLineColor;
+    }
+
+    public int getSourceColor() {
+        return sourceColor;
+    }
+
+    public int getSinkColor() {
+        return sinkColor;
+    }
+
+    public VehicleColorMode getVehicleColorMode() {
+        return vehicleColorMode;
+    }
+
+    public double getVmaxForColorSpectrum() {
+        return vmaxForColorSpectrum;
+    }
+
+    public float getLineWidth() {
+        return lineWidth;
+    }
+
+    public float getLineLength() {
+        return lineLength;
+    }
+
+    public float getGapLength() {
+        return gapLength;
+    }
+
+    public float getGapLengthExit() {
+        return gapLengthExit;
+    }
+
+    public float getInitialScale() {
+        return initialScale;
+    }
+
+    /**
+     * @return the initial sleep time of the simulation thread in milliseconds
+     */
+    public int getInitialSleepTime() {
+        return initialSleepTime;
+    }
+
+    public int getXOffset() {
+        return xOffset;
+    }
+
+    public int getYOffset() {
+        return yOffset;
+    }
+
+    /**
+     * @return the user ids of the consecutive road segments shown in the time-space diagram, empty if there is none
+     */
+    public String[] getSpatioTemporalRoute() {
+        return spatioTemporalRoute.clone();
+    }
+
+    public boolean hasSpatioTemporalRoute() {
+        return spatioTemporalRoute.length > 0;
+    }
+
+    /**
+     * @return the cell length of the time-space diagram in meters
+     */
+    public double getSpatioTemporalDx() {
+        return spatioTemporalDx;
+    }
+
+    /**
+     * @return the sampling interval of the time-space diagram in seconds of simulation time
+     */
+    public double getSpatioTemporalDt() {
+        return spatioTemporalDt;
+    }
+
+    /**
+     * @return the virtual detectors, one {@code roadId:position} each, empty if there are none
+     */
+    public String[] getDetectors() {
+        return detectors.clone();
+    }
+
+    /**
+     * @return the sample interval of the virtual detectors in seconds of simulation time
+     */
+    public double getDetectorSampleInterval() {
+        return detectorSampleInterval;
+    }
+
+    /**
+     * @return the user ids of the road segments on which the variable message sign can be switched by a tap, empty if
+     *         there are none
+     */
+    public String[] getVariableMessageSignRoads() {
+        return variableMessageSignRoads.clone();
+    }
+
+    public boolean hasVariableMessageSign() {
+        return variableMessageSignRoads.length > 0;
+    }
+
+    /**
+     * @return the class name of the automatic controller of the scenario, empty if there is none
+     */
+    public String getController() {
+        return controller;
+    }
+
+    public boolean hasController() {
+        return controller.length() > 0;
+    }
+
+    /**
+     * @return the number of simulation steps between two calls of the controller
+     */
+    public int getControlInterval() {
+        return controlInterval;
+    }
+
+    /**
+     * @return the parameters of the controller, the properties prefixed with {@code controller.}, without the prefix
+     */
+    public Properties getControllerParameters() {
+        return (Properties) controllerParameters.clone();
+    }
+}
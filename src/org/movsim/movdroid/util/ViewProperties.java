@@ -25,33 +25,22 @@
  */
 package org.movsim.movdroid.util;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
-import org.movsim.input.ProjectMetaData;
-
 public class ViewProperties {
 
     final static String defaultPropertyName = "/config/defaultviewerconfig.properties";
     private static Properties defaultProperties;
-    private static Properties applicationProps;
-
-    /**
-     * @return the applicationProps
-     */
-    public static Properties getApplicationProps() {
-        return applicationProps;
-    }
 
     /**
      * Load default properties from the {code /config/defaultviewerconfig.properties} path. Needed for initialization.
      * 
      * @return the properties
      */
-    public static Properties loadDefaultProperties() {
+    public static synchronized Properties loadDefaultProperties() {
         if (defaultProperties == null) {
             defaultProperties = new Properties();
             try {
@@ -69,41 +58,4 @@ public class ViewProperties {
         }
         return defaultProperties;
     }
-
-    /**
-     * Load default properties and overwrites them with project specific properties if available
-     * 
-     * @param projectName
-     * @param path
-     * @return properties
-     */
-    public static Properties loadProperties(String projectName, String path) {
-        applicationProps = loadDefaultProperties();
-        try {
-            final File file = new File(path + projectName + ".properties");
-            System.out.println("try to read from file=" + file.getName() + ", path=" + file.getAbsolutePath());
-            if (ProjectMetaData.getInstance().isXmlFromResources()) {
-                final InputStream inputStream = ViewProperties.class.getResourceAsStream(file.toString());
-                if (inputStream != null) {
-                    applicationProps.load(inputStream);
-                    inputStream.close();
-                }
-            } else {
-                final InputStream in = ProjectMetaData.getInstance().getProjectProperties();
-                if (in == null) {
-                    System.out.println("   InputStream  ist null");
-                } else {
-                    applicationProps.load(in);
-                    in.close();
-                }
-                
-            }
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace(); // do not ignore
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return applicationProps;
-    }
 }
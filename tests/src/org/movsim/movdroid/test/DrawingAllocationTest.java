@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012, 2013 by Ralph Germ, Martin Budden, Arne Kesting, Martin Treiber
+ * <ralph.germ@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSimDroid.
+ * 
+ * MovSimDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSimDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.movdroid.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.movsim.movdroid.MovSimDroidActivity;
+import org.movsim.movdroid.telemetry.AllocationCheck;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * <p>
+ * Runs the allocation check over all bundled scenarios and fails if drawing the traffic view allocates any object in the
+ * foreground or the background once it has warmed up. Run on a device with the debug build installed:
+ * 
+ * <pre>
+ * adb shell am instrument -w org.movsim.movdroid.test/android.test.InstrumentationTestRunner
+ * </pre>
+ * 
+ * </p>
+ */
+public class DrawingAllocationTest extends ActivityInstrumentationTestCase2<MovSimDroidActivity> {
+
+    // loading and drawing all scenarios takes a few minutes on a slow device
+    private static final long TIMEOUT_MINUTES = 15;
+
+    public DrawingAllocationTest() {
+        super(MovSimDroidActivity.class);
+    }
+
+    public void testDrawingDoesNotAllocate() throws Throwable {
+        final MovSimDroidActivity activity = getActivity();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final StringBuilder counts = new StringBuilder();
+        final boolean[] failed = new boolean[1];
+        final int[] scenarios = new int[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                activity.checkAllocations(new AllocationCheck.Report() {
+                    @Override
+                    public void scenarioChecked(String projectName, int frames, int foregroundAllocations,
+                            int backgroundAllocations) {
+                        ++scenarios[0];
+                        counts.append('\n').append(projectName).append(": ").append(foregroundAllocations)
+                                .append(" / ").append(backgroundAllocations);
+                    }
+
+                    @Override
+                    public void checkCompleted(boolean allocated) {
+                        failed[0] = allocated;
+                        completed.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue("allocation check did not complete, counted so far:" + counts,
+                completed.await(TIMEOUT_MINUTES, TimeUnit.MINUTES));
+        assertTrue("no scenario checked", scenarios[0] > 0);
+        assertFalse("drawing allocates, objects per scenario (foreground / background):" + counts, failed[0]);
+    }
+}